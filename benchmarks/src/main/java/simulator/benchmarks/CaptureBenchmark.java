@@ -0,0 +1,81 @@
+package simulator.benchmarks;
+
+import com.domain.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import simulator.capture.CaptureDirection;
+import simulator.capture.CaptureWriter;
+import simulator.core.PacketEncoder;
+import simulator.domain.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures appending a DATA frame to a memory mapped
+ * capture, from one thread and from several threads which all
+ * reserve their records at the end of the same file
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CaptureBenchmark {
+    private Path captureFile;
+    private CaptureWriter captureWriter;
+
+    @State(Scope.Thread)
+    public static class Frame {
+        private ByteBuffer frame;
+        private long timestampNanos;
+
+        @Setup
+        public void setUp() {
+            Packet packet = Packet.builder().magicBytes(0x1234).messageType(MessageType.DATA)
+                    .messageSourceId(7).messageDestinationId(42)
+                    .message(" This is message from source with Id 42").build();
+            frame = ByteBuffer.allocateDirect(PacketEncoder.encodedLength(packet));
+            PacketEncoder.encode(packet, frame);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        captureFile = Files.createTempFile("capture", ".bin");
+        captureWriter = CaptureWriter.create(captureFile);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        captureWriter.close();
+        Files.delete(captureFile);
+    }
+
+    @Benchmark
+    public void appendFrame(Frame frame) {
+        captureWriter.append(CaptureDirection.SENT, 7, ++frame.timestampNanos, frame.frame, 0, frame.frame.limit());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendFrameFromFourThreads(Frame frame) {
+        captureWriter.append(CaptureDirection.SENT, 7, ++frame.timestampNanos, frame.frame, 0, frame.frame.limit());
+    }
+}
@@ -0,0 +1,135 @@
+package simulator.benchmarks;
+
+import com.domain.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import simulator.core.FrameDecoder;
+import simulator.core.FrameTemplate;
+import simulator.core.PacketEncoder;
+import simulator.core.UserState;
+import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.properties.Constants;
+import simulator.schedule.PayloadSizes;
+import simulator.utility.UtilityClass;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures encoding of a DATA packet into a frame
+ * and decoding of a frame back, both the byte array helpers of
+ * {@link UserState} and the buffer based codec used on hot paths,
+ * as well as sending from a pre-encoded {@link FrameTemplate}
+ * with a fixed size or a size drawn from a distribution
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private final UserState userState = new UserState();
+    private final PacketView packetView = new PacketView();
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocateDirect(1024);
+
+    private Packet packet;
+    private Packet fixedSizePacket;
+    private FrameTemplate frameTemplate;
+    private PayloadSizes payloadSizes;
+    private long sequence;
+    private byte[] frame;
+    private ByteBuffer frameBuffer;
+
+    @Setup
+    public void setUp() {
+        packet = Packet.builder().magicBytes(0x1234).messageType(MessageType.DATA)
+                .messageSourceId(7).messageDestinationId(42)
+                .message(" This is message from source with Id 42").build();
+        frame = userState.getBytesArrayFromPacket(packet);
+        frameBuffer = ByteBuffer.wrap(frame);
+
+        String fixedSizeMessage = new String(new char[256]).replace('\0', 'x');
+        fixedSizePacket = Packet.builder().magicBytes(0x1234).messageType(MessageType.DATA)
+                .messageSourceId(7).messageDestinationId(42).message(fixedSizeMessage).build();
+        frameTemplate = new FrameTemplate(fixedSizeMessage, true);
+        payloadSizes = PayloadSizes.logNormal(64, 1.0, 256);
+    }
+
+    @Benchmark
+    public byte[] encodeToByteArray() {
+        return userState.getBytesArrayFromPacket(packet);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeIntoReusedBuffer() {
+        encodeBuffer.clear();
+        PacketEncoder.encode(packet, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeFixedSizeWithTimestamp() {
+        encodeBuffer.clear();
+        PacketEncoder.encodeWithTimestamp(fixedSizePacket, System.nanoTime(), ++sequence, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer writeFixedSizeFromTemplate() {
+        encodeBuffer.clear();
+        frameTemplate.writeTo(encodeBuffer, 0x1234, 7, 42, System.nanoTime(), ++sequence);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer writeLogNormalSizeFromTemplate() {
+        encodeBuffer.clear();
+        frameTemplate.writeTo(encodeBuffer, payloadSizes.nextSize(), 0x1234, 7, 42, System.nanoTime(), ++sequence);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public Packet decodeToPacket() {
+        return userState.getPacketFromByteArray(frame);
+    }
+
+    @Benchmark
+    public void decodeHeaderInPlace(Blackhole blackhole) throws IOException {
+        blackhole.consume(FrameDecoder.completeFrameLength(frameBuffer));
+        PacketView view = packetView.wrap(frameBuffer, 0);
+        blackhole.consume(view.getMagicBytes());
+        blackhole.consume(view.getMessageType());
+        blackhole.consume(view.getMessageSourceId());
+        blackhole.consume(view.getMessageDestinationId());
+    }
+
+    @Benchmark
+    public String decodeMessageInPlace() {
+        return packetView.wrap(frameBuffer, 0).getMessage();
+    }
+
+    @Benchmark
+    public void decodeWithUtilityClass(Blackhole blackhole) {
+        blackhole.consume(UtilityClass.getIntFromByteArray(frame,
+                Constants.START_OF_MAGIC_BYTES_INCLUSIVE, Constants.END_OF_MAGIC_BYTES_EXCLUSIVE));
+        blackhole.consume(UtilityClass.getStringFromByteArray(frame,
+                Constants.START_OF_MESSAGE_TYPE_INCLUSIVE, Constants.END_OF_MESSAGE_TYPE_EXCLUSIVE));
+        blackhole.consume(UtilityClass.getIntFromByteArray(frame,
+                Constants.START_OF_SOURCE_ID_INCLUSIVE, Constants.END_OF_SOURCE_ID_EXCLUSIVE));
+        blackhole.consume(UtilityClass.getIntFromByteArray(frame,
+                Constants.START_OF_DEST_ID_INCLUSIVE, Constants.END_OF_DEST_ID_EXCLUSIVE));
+    }
+}
@@ -0,0 +1,65 @@
+package simulator.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import simulator.core.DeliveryTracker;
+import simulator.core.DestinationSequences;
+import simulator.core.PeerDirectory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the per message cost of delivery checks,
+ * handing out a sequence per destination on the sending side and
+ * checking it in the window of its source on the receiving side.
+ * Peers are visited round robin, so every message moves the window
+ * of its pair by one
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeliveryBenchmark {
+    @Param({"1", "1000"})
+    private int numberOfPeers;
+
+    private final PeerDirectory peerDirectory = new PeerDirectory();
+    private final DestinationSequences destinationSequences = new DestinationSequences(peerDirectory);
+    private final DeliveryTracker deliveryTracker = new DeliveryTracker(peerDirectory);
+    private int nextPeer;
+
+    @Setup
+    public void logInPeers() {
+        for (int peerId = 1; peerId <= numberOfPeers; peerId++) {
+            peerDirectory.add(peerId);
+        }
+    }
+
+    @Benchmark
+    public long nextSequence() {
+        return destinationSequences.next(nextPeerId());
+    }
+
+    @Benchmark
+    public void sequenceAndCheck() {
+        int peerId = nextPeerId();
+        deliveryTracker.received(peerId, destinationSequences.next(peerId));
+    }
+
+    private int nextPeerId() {
+        nextPeer = nextPeer == numberOfPeers ? 1 : nextPeer + 1;
+        return nextPeer;
+    }
+}
@@ -0,0 +1,56 @@
+package simulator.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import simulator.journal.EventJournal;
+import simulator.journal.JournalEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares the per packet log statements the hot
+ * path used to have, with logging switched off as in a load run,
+ * with recording the same packet in the {@link EventJournal},
+ * reading the clock for the record or reusing a time taken anyway
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(JournalBenchmark.class);
+
+    private int clientNumber = 7;
+    private int destinationId = 42;
+    private long sequence;
+
+    @Benchmark
+    public void logInfoPerPacket() {
+        log.info("Execution of writingMessageToServer started");
+        log.info("Sending message to the server");
+        log.info("Allocated client id is: " + destinationId);
+        log.info("Execution of sendMessageToServer ended");
+    }
+
+    @Benchmark
+    public void recordEvent() {
+        EventJournal.record(JournalEvent.DATA_SENT, clientNumber, 75, destinationId, ++sequence);
+    }
+
+    @Benchmark
+    public void recordEventAtTakenTime() {
+        EventJournal.recordAt(sequence, JournalEvent.DATA_SENT, clientNumber, 75, destinationId, ++sequence);
+    }
+}
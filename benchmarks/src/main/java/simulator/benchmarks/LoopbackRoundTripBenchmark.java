@@ -0,0 +1,144 @@
+package simulator.benchmarks;
+
+import com.domain.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import simulator.core.FrameDecoder;
+import simulator.core.PacketEncoder;
+import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.properties.Constants;
+import simulator.server.ChatServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures one DATA message from being encoded by a
+ * sender until it is decoded by its receiver, through the bundled
+ * chat server over loopback. Sender and receiver sit on the same
+ * or on different server loops depending on the parameter
+ */
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoopbackRoundTripBenchmark {
+
+    @Param({"1", "2"})
+    private int serverLoops;
+
+    private ChatServer chatServer;
+    private LoopbackClient sender;
+    private LoopbackClient receiver;
+    private Packet packet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        chatServer = new ChatServer(0, serverLoops, 128);
+        chatServer.start();
+
+        sender = new LoopbackClient(chatServer.getPort());
+        receiver = new LoopbackClient(chatServer.getPort());
+        packet = Packet.builder().magicBytes(sender.magicNumber).messageType(MessageType.DATA)
+                .messageSourceId(sender.id).messageDestinationId(receiver.id)
+                .message(" This is message from source with Id " + sender.id).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        chatServer.shutdown();
+    }
+
+    @Benchmark
+    public int sendAndReceive() throws IOException {
+        sender.send(packet);
+        return receiver.receive().getMessageLength();
+    }
+
+    /**
+     * Blocking client which logs in like a simulated user and
+     * then sends and receives frames one at a time
+     */
+
+    private static final class LoopbackClient {
+        private final SocketChannel socketChannel;
+        private final FrameDecoder frameDecoder = new FrameDecoder(256 * 256);
+        private final ByteBuffer lastFrame = ByteBuffer.allocate(256 * 256);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1024);
+        private final PacketView packetView = new PacketView();
+        private final int id;
+        private final int magicNumber;
+
+        private LoopbackClient(int port) throws IOException {
+            socketChannel = SocketChannel.open(new InetSocketAddress("localhost", port));
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            id = receive().getMessageDestinationId();
+            send(Packet.builder().magicBytes(Constants.NO_MAGIC_NUMBER).messageType(MessageType.LOGIN)
+                    .messageSourceId(id).messageDestinationId(Constants.SERVER_SOURCE_ID)
+                    .message(Constants.LOGIN_MESSAGE).build());
+            magicNumber = receive().getMagicBytes();
+        }
+
+        private void send(Packet packet) throws IOException {
+            writeBuffer.clear();
+            PacketEncoder.encode(packet, writeBuffer);
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                socketChannel.write(writeBuffer);
+            }
+        }
+
+        /**
+         * This method blocks until a complete frame has arrived.
+         * Frame is copied out of the decoder so the returned view
+         * stays valid until next receive
+         */
+
+        private PacketView receive() throws IOException {
+            while (true) {
+                ByteBuffer buffer = frameDecoder.beginDecoding();
+                try {
+                    int frameLength = frameDecoder.nextFrameLength();
+                    if (frameLength != FrameDecoder.NO_COMPLETE_FRAME) {
+                        lastFrame.clear();
+                        FrameDecoder.copyFrame(buffer, buffer.position(), frameLength, lastFrame);
+                        buffer.position(buffer.position() + frameLength);
+                        return packetView.wrap(lastFrame, 0);
+                    }
+                } finally {
+                    frameDecoder.endDecoding();
+                }
+
+                if (frameDecoder.readFrom(socketChannel) == -1) {
+                    throw new IOException("Server closed connection");
+                }
+            }
+        }
+
+        private void close() throws IOException {
+            socketChannel.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package simulator.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import simulator.domain.MessageType;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class compares lookup of message type from its text,
+ * which streams over all types, with lookup from the two code
+ * bytes of a frame
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageTypeBenchmark {
+
+    @Param({"LI", "DT"})
+    private String code;
+
+    private byte first;
+    private byte second;
+
+    @Setup
+    public void setUp() {
+        first = (byte) code.charAt(0);
+        second = (byte) code.charAt(1);
+    }
+
+    @Benchmark
+    public Optional<MessageType> fromText() {
+        return MessageType.fromTextGetMessageType(code);
+    }
+
+    @Benchmark
+    public MessageType fromCode() {
+        return MessageType.fromCode(first, second);
+    }
+}
@@ -0,0 +1,70 @@
+package simulator.benchmarks;
+
+import com.domain.Packet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import simulator.core.UserState;
+import simulator.load.LoadSimulator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures picking a random peer and building the
+ * DATA packet for it, the way writers and connections do for
+ * every message. Contended variant runs on four threads picking
+ * from the same peer directory
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeerSelectionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Peers {
+        @Param({"100", "100000"})
+        private int numberOfPeers;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (int id = 1; id <= numberOfPeers; id++) {
+                LoadSimulator.getPeerDirectory().add(id);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            LoadSimulator.getPeerDirectory().clear();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sender {
+        private final UserState userState = new UserState();
+    }
+
+    @Benchmark
+    public Packet getMessageToSend(Peers peers, Sender sender) {
+        return sender.userState.getMessageToSend();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Packet getMessageToSendContended(Peers peers, Sender sender) {
+        return sender.userState.getMessageToSend();
+    }
+}
@@ -0,0 +1,25 @@
+package simulator.capture;
+
+/**
+ * This enum tells whether a captured frame has been
+ * sent to the server or received from it
+ */
+
+public enum CaptureDirection {
+    SENT(1),
+    RECEIVED(2);
+
+    private final int code;
+
+    CaptureDirection(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static CaptureDirection fromCode(int code) {
+        return code == SENT.code ? SENT : RECEIVED;
+    }
+}
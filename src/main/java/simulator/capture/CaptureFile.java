@@ -0,0 +1,213 @@
+package simulator.capture;
+
+import simulator.domain.PacketView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is a traffic capture opened for reading. Capture
+ * files are written by {@link CaptureWriter} and have this layout:
+ * <pre>
+ * header  magic, version, wall clock millis and nanoTime of the start,
+ *         end of data which is 0 until the capture has been closed
+ * records length, connection, nanoTime, frame length, direction, frame
+ * </pre>
+ * Records are aligned to eight bytes and never span two segments
+ * of {@link #SEGMENT_SIZE} bytes, the rest of a segment is skipped
+ * by a record with negative length. Zero length ends the records,
+ * which is where a capture that was not closed stops.
+ */
+
+public class CaptureFile {
+    static final int MAGIC = 0x53434150;
+    static final int VERSION = 1;
+    static final int SEGMENT_SIZE = 64 << 20;
+    static final int MAX_SEGMENTS = 4096;
+    static final long MAX_LENGTH = (long) SEGMENT_SIZE * MAX_SEGMENTS;
+
+    static final int HEADER_LENGTH = 32;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int WALL_CLOCK_OFFSET = 8;
+    static final int START_NANOS_OFFSET = 16;
+    static final int DATA_END_OFFSET = 24;
+
+    static final int RECORD_HEADER_LENGTH = 24;
+    static final int RECORD_LENGTH_OFFSET = 0;
+    static final int CONNECTION_OFFSET = 4;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int FRAME_LENGTH_OFFSET = 16;
+    static final int DIRECTION_OFFSET = 20;
+    private static final int RECORD_ALIGNMENT = 8;
+
+    private final MappedByteBuffer[] segments;
+    private final long wallClockMillis;
+    private final long startNanos;
+    private final long dataEnd;
+
+    private CaptureFile(MappedByteBuffer[] segments, long wallClockMillis, long startNanos, long dataEnd) {
+        this.segments = segments;
+        this.wallClockMillis = wallClockMillis;
+        this.startNanos = startNanos;
+        this.dataEnd = dataEnd;
+    }
+
+    /**
+     * This method maps a capture file for reading
+     *
+     * @param file capture to read
+     * @return opened capture
+     * @throws IOException if file can not be read or is no capture
+     */
+
+    public static CaptureFile open(Path file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            if (size < HEADER_LENGTH) {
+                throw new IOException(file + " is not a capture file");
+            }
+
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long segmentStart = (long) i * SEGMENT_SIZE;
+                segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                        Math.min(SEGMENT_SIZE, size - segmentStart));
+            }
+
+            MappedByteBuffer header = segments[0];
+            if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException(file + " is not a capture file");
+            }
+            if (header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Unsupported capture version " + header.getInt(VERSION_OFFSET));
+            }
+            long dataEnd = header.getLong(DATA_END_OFFSET);
+            return new CaptureFile(segments, header.getLong(WALL_CLOCK_OFFSET), header.getLong(START_NANOS_OFFSET),
+                    dataEnd > 0 ? Math.min(dataEnd, size) : size);
+        }
+    }
+
+    static int recordLength(int frameLength) {
+        return (RECORD_HEADER_LENGTH + frameLength + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+
+    public long getWallClockMillis() {
+        return wallClockMillis;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * This method returns views of all segments. Views are used
+     * to copy frames and belong to a single thread
+     *
+     * @return one view per segment
+     */
+
+    public ByteBuffer[] newViews() {
+        ByteBuffer[] views = new ByteBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            views[i] = segments[i].duplicate();
+        }
+        return views;
+    }
+
+    public long timestampAt(long recordPosition) {
+        return segment(recordPosition).getLong(offset(recordPosition) + TIMESTAMP_OFFSET);
+    }
+
+    public int frameLengthAt(long recordPosition) {
+        return segment(recordPosition).getInt(offset(recordPosition) + FRAME_LENGTH_OFFSET);
+    }
+
+    /**
+     * This method copies the frame of a record to the current
+     * position of target and moves that position behind it
+     *
+     * @param views          views of this capture owned by calling thread
+     * @param recordPosition position of the record
+     * @param target         buffer with enough bytes remaining
+     */
+
+    public void copyFrame(ByteBuffer[] views, long recordPosition, ByteBuffer target) {
+        ByteBuffer view = views[(int) (recordPosition / SEGMENT_SIZE)];
+        int frameStart = offset(recordPosition) + RECORD_HEADER_LENGTH;
+        view.limit(frameStart + frameLengthAt(recordPosition)).position(frameStart);
+        target.put(view);
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)];
+    }
+
+    private static int offset(long position) {
+        return (int) (position % SEGMENT_SIZE);
+    }
+
+    /**
+     * This class walks the records of the capture in file order,
+     * which is the order in which they have been written
+     */
+
+    public final class Cursor {
+        private long nextPosition = HEADER_LENGTH;
+        private long position = -1;
+
+        public boolean next() {
+            while (nextPosition + RECORD_HEADER_LENGTH <= dataEnd) {
+                int recordLength = segment(nextPosition).getInt(offset(nextPosition) + RECORD_LENGTH_OFFSET);
+                if (recordLength == 0) {
+                    break;
+                }
+                if (recordLength < 0) {
+                    nextPosition -= recordLength;
+                    continue;
+                }
+                position = nextPosition;
+                nextPosition += recordLength;
+                return true;
+            }
+            return false;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public int getConnectionId() {
+            return segment(position).getInt(offset(position) + CONNECTION_OFFSET);
+        }
+
+        public long getTimestampNanos() {
+            return timestampAt(position);
+        }
+
+        public int getFrameLength() {
+            return frameLengthAt(position);
+        }
+
+        public CaptureDirection getDirection() {
+            return CaptureDirection.fromCode(segment(position).getInt(offset(position) + DIRECTION_OFFSET));
+        }
+
+        /**
+         * @param packetView view to wrap around the frame
+         * @return view of the frame of current record
+         */
+
+        public PacketView frame(PacketView packetView) {
+            return packetView.wrap(segment(position), offset(position) + RECORD_HEADER_LENGTH);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package simulator.capture;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.engine.ConnectionRamp;
+import simulator.engine.EventLoopGroup;
+import simulator.properties.SimulatorProperties;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class replays a traffic capture against the server. Every
+ * captured connection gets a replay connection of its own, which
+ * logs in like any client and then sends the DATA and LOGOUT frames
+ * the captured connection has sent, at their captured times or
+ * faster by the replay speed. Connections that sent nothing are
+ * opened as well and stay idle.
+ * <p>
+ * Frames are sent at their intended time by the scheduler of the
+ * event loops. A connection which logs in after its first frames
+ * were due sends them at once and catches up with the capture.
+ */
+
+@Slf4j
+public class CaptureReplay {
+    private static final long DRAIN_MILLIS = 1000;
+
+    private final double speed;
+    private final List<ReplayScript> replayScripts = new ArrayList<>();
+    private final CountDownLatch unfinishedScripts;
+    private long firstFrameNanos = Long.MAX_VALUE;
+    private long lastFrameNanos = Long.MIN_VALUE;
+    private long frames;
+
+    private volatile long startNanos;
+
+    /**
+     * @param captureFile capture to replay
+     * @param speed       factor captured time is divided by, 1 replays at original speed
+     * @throws IllegalArgumentException if speed is not positive
+     */
+
+    public CaptureReplay(CaptureFile captureFile, double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed needs to be positive but was " + speed);
+        }
+        this.speed = speed;
+
+        Map<Integer, Integer> scriptByConnection = new HashMap<>();
+        Map<Integer, Integer> scriptByCapturedId = new HashMap<>();
+        PacketView packetView = new PacketView();
+        CaptureFile.Cursor cursor = captureFile.cursor();
+        while (cursor.next()) {
+            int script = scriptByConnection.computeIfAbsent(cursor.getConnectionId(), connectionId -> {
+                replayScripts.add(new ReplayScript(this, captureFile));
+                return replayScripts.size() - 1;
+            });
+
+            PacketView frame = cursor.frame(packetView);
+            MessageType messageType = frame.getMessageType();
+            if (cursor.getDirection() == CaptureDirection.RECEIVED) {
+                if (messageType == MessageType.GENERATED_ID) {
+                    scriptByCapturedId.put(frame.getMessageDestinationId(), script);
+                }
+            } else if (messageType == MessageType.DATA || messageType == MessageType.LOGOUT) {
+                replayScripts.get(script).add(cursor.getPosition(), frame.getMessageDestinationId());
+            }
+        }
+
+        for (ReplayScript replayScript : replayScripts) {
+            replayScript.resolveDestinations(scriptByCapturedId);
+            if (replayScript.getFrames() > 0) {
+                frames += replayScript.getFrames();
+                firstFrameNanos = Math.min(firstFrameNanos, replayScript.firstTimestampNanos());
+                lastFrameNanos = Math.max(lastFrameNanos, replayScript.lastTimestampNanos());
+            }
+        }
+        this.unfinishedScripts = new CountDownLatch(replayScripts.size());
+    }
+
+    /**
+     * This method opens all replay connections and returns once
+     * every connection has sent its frames or run duration is over
+     *
+     * @throws IOException          if event loops could not be started
+     * @throws InterruptedException if replay is interrupted
+     */
+
+    public void run() throws IOException, InterruptedException {
+        double capturedSeconds = frames == 0 ? 0 : (lastFrameNanos - firstFrameNanos) / 1e9;
+        System.out.printf("Replaying %d frames of %d connections captured over %.1f s at %.1fx speed%n",
+                frames, replayScripts.size(), capturedSeconds, speed);
+
+        EventLoopGroup eventLoopGroup = new EventLoopGroup(SimulatorProperties.getEventLoops());
+        InetSocketAddress serverAddress =
+                new InetSocketAddress(SimulatorProperties.getServerHost(), SimulatorProperties.getServerPort());
+        ConnectionRamp connectionRamp = new ConnectionRamp(eventLoopGroup, serverAddress,
+                SimulatorProperties.getRampConnectionsPerSecond(), SimulatorProperties.getRampMaxPendingConnects());
+
+        try {
+            startNanos = System.nanoTime();
+            connectionRamp.replay(replayScripts);
+
+            long runDurationSeconds = SimulatorProperties.getRunDurationSeconds();
+            if (runDurationSeconds <= 0) {
+                unfinishedScripts.await();
+            } else if (!unfinishedScripts.await(runDurationSeconds, TimeUnit.SECONDS)) {
+                log.info("Run duration is over, {} connections have not finished replay", unfinishedScripts.getCount());
+            }
+            //frames sent last still need to be delivered
+            TimeUnit.MILLISECONDS.sleep(DRAIN_MILLIS);
+            System.out.printf("Replay of %d connections ended%n", replayScripts.size());
+        } finally {
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    long intendedSendNanos(long capturedNanos) {
+        return startNanos + (long) ((capturedNanos - firstFrameNanos) / speed);
+    }
+
+    int serverIdOf(int script, int ownId) {
+        if (script == ReplayScript.NO_DESTINATION) {
+            return ownId;
+        }
+        int serverId = replayScripts.get(script).getServerId();
+        return serverId != 0 ? serverId : ownId;
+    }
+
+    void scriptFinished() {
+        unfinishedScripts.countDown();
+    }
+}
@@ -0,0 +1,224 @@
+package simulator.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class appends frames to a memory mapped capture file.
+ * Any number of threads append at the same time without a lock:
+ * every record reserves its bytes with one atomic add on the end
+ * of the file and is then copied into the mapped segment, so the
+ * hot path never enters the kernel. Segments are mapped when the
+ * first record reaches them.
+ * <p>
+ * Frames which do not fit anymore, because the capture reached
+ * its maximum length or has been closed, are dropped and counted.
+ * See {@link CaptureFile} for the layout.
+ */
+
+public class CaptureWriter implements Closeable {
+    private static final long CLOSED = Long.MAX_VALUE / 2;
+
+    private final Path file;
+    private final FileChannel fileChannel;
+    private final AtomicLong nextPosition = new AtomicLong(CaptureFile.HEADER_LENGTH);
+    private final AtomicReferenceArray<MappedByteBuffer> segments =
+            new AtomicReferenceArray<>(CaptureFile.MAX_SEGMENTS);
+    private final ThreadLocal<SegmentView> segmentView = ThreadLocal.withInitial(SegmentView::new);
+    private final LongAdder framesWritten = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+
+    private CaptureWriter(Path file, FileChannel fileChannel) {
+        this.file = file;
+        this.fileChannel = fileChannel;
+    }
+
+    /**
+     * This method creates a capture file, an existing
+     * file is replaced
+     *
+     * @param file to capture to
+     * @return writer of the capture
+     * @throws IOException if file can not be created
+     */
+
+    public static CaptureWriter create(Path file) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        CaptureWriter captureWriter = new CaptureWriter(file, fileChannel);
+
+        MappedByteBuffer header = captureWriter.segment(0);
+        if (header == null) {
+            fileChannel.close();
+            throw new IOException("Could not map " + file);
+        }
+        header.putInt(CaptureFile.MAGIC_OFFSET, CaptureFile.MAGIC);
+        header.putInt(CaptureFile.VERSION_OFFSET, CaptureFile.VERSION);
+        header.putLong(CaptureFile.WALL_CLOCK_OFFSET, System.currentTimeMillis());
+        header.putLong(CaptureFile.START_NANOS_OFFSET, System.nanoTime());
+        return captureWriter;
+    }
+
+    /**
+     * This method appends one frame
+     *
+     * @param direction      whether frame was sent or received
+     * @param connectionId   local number of the client
+     * @param timestampNanos time frame was sent or read
+     * @param buffer         buffer holding the frame, its position and limit are restored
+     * @param frameOffset    index of first byte of the frame
+     * @param frameLength    number of bytes of the frame
+     */
+
+    public void append(CaptureDirection direction, int connectionId, long timestampNanos,
+                       ByteBuffer buffer, int frameOffset, int frameLength) {
+        int recordLength = CaptureFile.recordLength(frameLength);
+        long position = reserve(recordLength);
+        MappedByteBuffer segment = position < 0 ? null : segment((int) (position / CaptureFile.SEGMENT_SIZE));
+        if (segment == null) {
+            framesDropped.increment();
+            return;
+        }
+
+        int offset = (int) (position % CaptureFile.SEGMENT_SIZE);
+        segment.putInt(offset + CaptureFile.CONNECTION_OFFSET, connectionId);
+        segment.putLong(offset + CaptureFile.TIMESTAMP_OFFSET, timestampNanos);
+        segment.putInt(offset + CaptureFile.FRAME_LENGTH_OFFSET, frameLength);
+        segment.putInt(offset + CaptureFile.DIRECTION_OFFSET, direction.getCode());
+
+        int bufferPosition = buffer.position();
+        int bufferLimit = buffer.limit();
+        buffer.limit(frameOffset + frameLength).position(frameOffset);
+        ByteBuffer view = segmentView.get().of(position, segment);
+        view.position(offset + CaptureFile.RECORD_HEADER_LENGTH);
+        view.put(buffer);
+        buffer.limit(bufferLimit).position(bufferPosition);
+
+        //length is written last, a record without length ends the capture
+        segment.putInt(offset + CaptureFile.RECORD_LENGTH_OFFSET, recordLength);
+        framesWritten.increment();
+    }
+
+    /**
+     * A record which would span two segments is turned into
+     * padding on both sides of the boundary and reserved again
+     *
+     * @return position of the record or -1 if it does not fit
+     */
+
+    private long reserve(int recordLength) {
+        if (recordLength > CaptureFile.SEGMENT_SIZE) {
+            return -1;
+        }
+
+        while (true) {
+            long position = nextPosition.getAndAdd(recordLength);
+            long recordEnd = position + recordLength;
+            if (recordEnd > CaptureFile.MAX_LENGTH) {
+                return -1;
+            }
+
+            long segmentEnd = (position / CaptureFile.SEGMENT_SIZE + 1) * CaptureFile.SEGMENT_SIZE;
+            if (recordEnd <= segmentEnd) {
+                return position;
+            }
+            if (!pad(position, segmentEnd) || !pad(segmentEnd, recordEnd)) {
+                return -1;
+            }
+        }
+    }
+
+    private boolean pad(long from, long to) {
+        MappedByteBuffer segment = segment((int) (from / CaptureFile.SEGMENT_SIZE));
+        if (segment == null) {
+            return false;
+        }
+        segment.putInt((int) (from % CaptureFile.SEGMENT_SIZE), (int) (from - to));
+        return true;
+    }
+
+    private MappedByteBuffer segment(int index) {
+        MappedByteBuffer segment = segments.get(index);
+        if (segment != null) {
+            return segment;
+        }
+
+        try {
+            MappedByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) index * CaptureFile.SEGMENT_SIZE, CaptureFile.SEGMENT_SIZE);
+            return segments.compareAndSet(index, null, mapped) ? mapped : segments.get(index);
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.sum();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    /**
+     * This method stops the capture and cuts the file behind the
+     * last reserved record. Frames appended from now on are dropped,
+     * frames which are still being copied were reserved before the
+     * end and stay inside the file
+     *
+     * @throws IOException if file can not be written
+     */
+
+    @Override
+    public void close() throws IOException {
+        long dataEnd = nextPosition.getAndSet(CLOSED);
+        if (dataEnd >= CLOSED) {
+            return;
+        }
+        dataEnd = Math.min(dataEnd, CaptureFile.MAX_LENGTH);
+
+        try {
+            segments.get(0).putLong(CaptureFile.DATA_END_OFFSET, dataEnd);
+            for (int i = 0; i < segments.length(); i++) {
+                MappedByteBuffer segment = segments.get(i);
+                if (segment != null) {
+                    segment.force();
+                }
+            }
+            fileChannel.truncate(dataEnd);
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Copying a frame needs a position, so every thread
+     * keeps its own view of the segment it writes to
+     */
+
+    private static final class SegmentView {
+        private long segmentIndex = -1;
+        private ByteBuffer view;
+
+        private ByteBuffer of(long position, MappedByteBuffer segment) {
+            long index = position / CaptureFile.SEGMENT_SIZE;
+            if (index != segmentIndex) {
+                segmentIndex = index;
+                view = segment.duplicate();
+            }
+            return view;
+        }
+    }
+}
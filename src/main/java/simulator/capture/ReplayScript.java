@@ -0,0 +1,163 @@
+package simulator.capture;
+
+import simulator.core.UserState;
+import simulator.domain.MessageType;
+import simulator.properties.Constants;
+import simulator.properties.SimulatorProperties;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class holds the frames one captured connection has sent,
+ * in the order it has sent them. Frames stay in the mapped capture,
+ * the script only keeps their positions and destinations.
+ * <p>
+ * Replayed frames are copied from the capture as they are, only
+ * magic number and ids are replaced with those the server assigned
+ * in this run. A destination is replaced with the id of the replay
+ * connection standing in for it, or with the own id while that
+ * connection has not logged in. In latency mode send timestamp and
+ * sequence of DATA frames are written again, so latency is measured.
+ * <p>
+ * Frames are sent by the event loop of the connection only.
+ */
+
+public class ReplayScript {
+    private static final boolean LATENCY_MODE = SimulatorProperties.isLatencyMode();
+    static final int NO_DESTINATION = -1;
+    private static final int INITIAL_FRAMES = 64;
+
+    private final CaptureReplay captureReplay;
+    private final CaptureFile captureFile;
+    private long[] recordPositions = new long[INITIAL_FRAMES];
+    //captured ids first, replay scripts once all frames have been added
+    private int[] destinations = new int[INITIAL_FRAMES];
+    private int frames;
+    private int nextFrame;
+    private ByteBuffer[] views;
+
+    private volatile int serverId;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    ReplayScript(CaptureReplay captureReplay, CaptureFile captureFile) {
+        this.captureReplay = captureReplay;
+        this.captureFile = captureFile;
+    }
+
+    void add(long recordPosition, int destinationId) {
+        if (frames == recordPositions.length) {
+            recordPositions = Arrays.copyOf(recordPositions, frames * 2);
+            destinations = Arrays.copyOf(destinations, frames * 2);
+        }
+        recordPositions[frames] = recordPosition;
+        destinations[frames] = destinationId;
+        frames++;
+    }
+
+    void resolveDestinations(Map<Integer, Integer> scriptByCapturedId) {
+        for (int i = 0; i < frames; i++) {
+            destinations[i] = scriptByCapturedId.getOrDefault(destinations[i], NO_DESTINATION);
+        }
+    }
+
+    int getFrames() {
+        return frames;
+    }
+
+    long firstTimestampNanos() {
+        return captureFile.timestampAt(recordPositions[0]);
+    }
+
+    long lastTimestampNanos() {
+        return captureFile.timestampAt(recordPositions[frames - 1]);
+    }
+
+    int getServerId() {
+        return serverId;
+    }
+
+    /**
+     * This method is called once the replay connection has logged
+     * in, from now on frames to this connection are sent to it
+     *
+     * @param userState state of the replay connection
+     */
+
+    public void started(UserState userState) {
+        serverId = userState.getUserIdOfClientAllocatedByServer().get();
+    }
+
+    public boolean hasStarted() {
+        return serverId != 0;
+    }
+
+    /**
+     * This method is called once all frames have been sent or
+     * the connection has been closed
+     */
+
+    public void finished() {
+        if (finished.compareAndSet(false, true)) {
+            captureReplay.scriptFinished();
+        }
+    }
+
+    public boolean hasNext() {
+        return nextFrame < frames;
+    }
+
+    /**
+     * @return time next frame is meant to be sent, its captured
+     * time moved to this run and scaled by replay speed
+     */
+
+    public long nextIntendedSendNanos() {
+        return captureReplay.intendedSendNanos(captureFile.timestampAt(recordPositions[nextFrame]));
+    }
+
+    public int nextFrameLength() {
+        return captureFile.frameLengthAt(recordPositions[nextFrame]);
+    }
+
+    /**
+     * This method writes next frame to the current position of the
+     * buffer and moves on to the frame after it
+     *
+     * @param target             buffer with {@link #nextFrameLength()} bytes remaining
+     * @param userState          state of the replay connection
+     * @param sendTimestampNanos time the frame is meant to be sent
+     * @return type of the frame
+     */
+
+    public MessageType writeNext(ByteBuffer target, UserState userState, long sendTimestampNanos) {
+        if (views == null) {
+            views = captureFile.newViews();
+        }
+
+        int frameStart = target.position();
+        captureFile.copyFrame(views, recordPositions[nextFrame], target);
+        int ownId = userState.getUserIdOfClientAllocatedByServer().get();
+        target.putInt(frameStart + Constants.START_OF_MAGIC_BYTES_INCLUSIVE, userState.getMagicNumberAssignedByServer().get());
+        target.putInt(frameStart + Constants.START_OF_SOURCE_ID_INCLUSIVE, ownId);
+
+        MessageType messageType = MessageType.fromCode(target.get(frameStart + Constants.START_OF_MESSAGE_TYPE_INCLUSIVE),
+                target.get(frameStart + Constants.START_OF_MESSAGE_TYPE_INCLUSIVE + 1));
+        if (messageType == MessageType.DATA) {
+            int destinationId = captureReplay.serverIdOf(destinations[nextFrame], ownId);
+            target.putInt(frameStart + Constants.START_OF_DEST_ID_INCLUSIVE, destinationId);
+
+            if (LATENCY_MODE && target.getInt(frameStart + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE)
+                    >= Constants.LATENCY_PREFIX_LENGTH) {
+                int messageStart = frameStart + Constants.START_OF_MESSAGE_INCLUSIVE;
+                target.putLong(messageStart + Constants.START_OF_SEND_TIMESTAMP_INCLUSIVE, sendTimestampNanos);
+                target.putLong(messageStart + Constants.START_OF_SEQUENCE_NUMBER_INCLUSIVE,
+                        userState.nextSequenceNumber(destinationId));
+            }
+        }
+        nextFrame++;
+        return messageType;
+    }
+}
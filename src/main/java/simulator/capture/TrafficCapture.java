@@ -0,0 +1,67 @@
+package simulator.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * This class is the switch of traffic capture. Reader, writer
+ * and connections hand every frame they send or read to it and
+ * it appends them to the capture file while a capture is running.
+ * Without a capture every call is a single volatile read.
+ * <p>
+ * Connection id of a frame is the local number of the client,
+ * so frames of one connection can be found again on replay.
+ */
+
+public class TrafficCapture {
+    //shared between different threads
+    private static volatile CaptureWriter captureWriter;
+
+    /**
+     * This method starts capturing to a new file
+     *
+     * @param file to capture to, existing file is replaced
+     * @throws IOException if file can not be created
+     */
+
+    public static void start(Path file) throws IOException {
+        captureWriter = CaptureWriter.create(file);
+    }
+
+    /**
+     * This method stops the capture
+     *
+     * @return writer of the stopped capture or null if none was running
+     * @throws IOException if capture can not be finished
+     */
+
+    public static CaptureWriter stop() throws IOException {
+        CaptureWriter stoppedWriter = captureWriter;
+        captureWriter = null;
+        if (stoppedWriter != null) {
+            stoppedWriter.close();
+        }
+        return stoppedWriter;
+    }
+
+    public static boolean isEnabled() {
+        return captureWriter != null;
+    }
+
+    public static void frameSent(long timestampNanos, int connectionId, ByteBuffer buffer, int frameOffset,
+                                 int frameLength) {
+        CaptureWriter writer = captureWriter;
+        if (writer != null) {
+            writer.append(CaptureDirection.SENT, connectionId, timestampNanos, buffer, frameOffset, frameLength);
+        }
+    }
+
+    public static void frameReceived(long timestampNanos, int connectionId, ByteBuffer buffer, int frameOffset,
+                                     int frameLength) {
+        CaptureWriter writer = captureWriter;
+        if (writer != null) {
+            writer.append(CaptureDirection.RECEIVED, connectionId, timestampNanos, buffer, frameOffset, frameLength);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package simulator.core;
+
+import simulator.metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * This class is a pool of equally sized direct buffers which
+ * are cut out of larger slabs. Connections borrow a buffer only
+ * while a read or write is actually going on and give it back
+ * right after, so memory follows the number of busy connections
+ * and not the number of open ones.
+ * <p>
+ * Buffers are direct so the socket reads into and writes from
+ * them without the JDK copying through a temporary direct buffer.
+ * Slabs are never freed, a pool keeps as many buffers as it has
+ * needed at most.
+ * <p>
+ * This class is not thread safe, it belongs to one event loop.
+ */
+
+public class BufferPool {
+    private final int bufferSize;
+    private final int buffersPerSlab;
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private int allocatedBuffers;
+
+    /**
+     * @param bufferSize     capacity of every buffer
+     * @param buffersPerSlab buffers allocated together when pool is empty
+     */
+
+    public BufferPool(int bufferSize, int buffersPerSlab) {
+        if (bufferSize <= 0 || buffersPerSlab <= 0) {
+            throw new IllegalArgumentException("Buffer size and buffers per slab need to be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.buffersPerSlab = buffersPerSlab;
+    }
+
+    /**
+     * This method borrows a buffer. Most recently returned
+     * buffer is handed out first as it is most likely still
+     * in CPU cache
+     *
+     * @return empty buffer of {@link #getBufferSize()} bytes
+     */
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = freeBuffers.pollLast();
+        if (buffer == null) {
+            allocateSlab();
+            buffer = freeBuffers.pollLast();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * This method gives a buffer back. Buffers of another
+     * size, like those of oversized frames, are dropped
+     *
+     * @param buffer which must not be used by caller afterwards
+     */
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize) {
+            freeBuffers.addLast(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getAllocatedBuffers() {
+        return allocatedBuffers;
+    }
+
+    public int getFreeBuffers() {
+        return freeBuffers.size();
+    }
+
+    private void allocateSlab() {
+        ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * buffersPerSlab);
+        for (int i = 0; i < buffersPerSlab; i++) {
+            slab.limit((i + 1) * bufferSize).position(i * bufferSize);
+            freeBuffers.addFirst(slab.slice());
+        }
+        allocatedBuffers += buffersPerSlab;
+        Metrics.getPooledBufferBytes().add(slab.capacity());
+    }
+}
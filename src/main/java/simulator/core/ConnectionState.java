@@ -0,0 +1,25 @@
+package simulator.core;
+
+/**
+ * This enum represents where a simulated user is in its
+ * life from opening the connection until it is closed.
+ * Only states in between are counted by the state gauge.
+ */
+
+public enum ConnectionState {
+    NEW(false),
+    CONNECTING(true),
+    CONNECTED(true),
+    LOGGED_IN(true),
+    CLOSED(false);
+
+    private final boolean counted;
+
+    ConnectionState(boolean counted) {
+        this.counted = counted;
+    }
+
+    public boolean isCounted() {
+        return counted;
+    }
+}
@@ -0,0 +1,209 @@
+package simulator.core;
+
+import simulator.metrics.Metrics;
+
+/**
+ * This class checks sequence numbers of DATA messages one user
+ * receives, so loss, duplication and reordering by the server
+ * are detected while load is running.
+ * <p>
+ * Every source has a sliding window of the last 128 sequences
+ * below and including the highest sequence received from it,
+ * one bit per sequence. A message is
+ * <pre>
+ * in order     next sequence after the highest one
+ * ahead        more than one sequence after the highest one, the
+ *              sequences skipped are counted as missing
+ * reordered    inside the window and not received yet, it fills a
+ *              missing sequence
+ * duplicate    inside the window and received already
+ * late         older than the window, it is either a duplicate or
+ *              a missing sequence which arrived very late, so it is
+ *              counted on its own and missing is left as it is
+ * </pre>
+ * Sequences which are still missing when the run ends were lost,
+ * except for the few which are still in flight. Messages lost after
+ * the last one a receiver got can not be seen by the receiver, they
+ * show up as difference of sent and delivered messages.
+ * <p>
+ * State of a source is one int and three longs in primitive arrays
+ * with open addressing, no object is created per message. Counts are
+ * kept in plain fields and added to the shared counters once per read.
+ * <p>
+ * Sources which have left the {@link PeerDirectory} are dropped
+ * whenever the table is about to grow, so churning users do not pile
+ * up. Messages of a source which is not in the directory are not
+ * checked, as a message in flight from a dropped source would count
+ * all its earlier sequences as missing. A source costs 28 bytes per
+ * slot and the table is between an eighth and a half full, so about
+ * 75 bytes on average. With random targets a user ends up with a slot
+ * for nearly every logged in peer: N users hold up to N^2 slots, which
+ * together with {@link DestinationSequences} is about 100 bytes per
+ * pair, 10 GB for 10000 users. Sequences are only checked in latency
+ * mode.
+ * <p>
+ * All methods are called by the reading thread of the user only
+ */
+
+public class DeliveryTracker {
+    public static final int WINDOW_SIZE = 128;
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int EMPTY = 0;
+    private static final int NO_SLOT = -1;
+
+    private final PeerDirectory peerDirectory;
+    private int[] sourceIds = new int[INITIAL_CAPACITY];
+    private long[] highestSequences = new long[INITIAL_CAPACITY];
+    //two words per source, bit i of the first word is highest sequence - i
+    private long[] windows = new long[INITIAL_CAPACITY * 2];
+    private int size;
+
+    //counted since counts were last published
+    private long duplicates;
+    private long reordered;
+    private long late;
+    private long missing;
+
+    /**
+     * @param peerDirectory logged in peers, sources which
+     *                      are not in it anymore are dropped
+     */
+
+    public DeliveryTracker(PeerDirectory peerDirectory) {
+        this.peerDirectory = peerDirectory;
+    }
+
+    /**
+     * This method checks sequence of a received DATA message
+     *
+     * @param sourceId       id of the sender
+     * @param sequenceNumber sequence the sender gave the message
+     */
+
+    public void received(int sourceId, long sequenceNumber) {
+        if (sourceId == EMPTY || sequenceNumber <= 0) {
+            return;
+        }
+
+        int slot = slotOf(sourceId);
+        if (slot == NO_SLOT) {
+            return;
+        }
+        long highestSequence = highestSequences[slot];
+        int word = slot * 2;
+
+        if (sequenceNumber > highestSequence) {
+            long distance = sequenceNumber - highestSequence;
+            missing += distance - 1;
+            shiftWindow(word, distance);
+            windows[word] |= 1L;
+            highestSequences[slot] = sequenceNumber;
+            return;
+        }
+
+        long age = highestSequence - sequenceNumber;
+        if (age >= WINDOW_SIZE) {
+            late++;
+            return;
+        }
+
+        int bitWord = word + (int) (age >>> 6);
+        long bit = 1L << (age & 63);
+        if ((windows[bitWord] & bit) != 0) {
+            duplicates++;
+        } else {
+            windows[bitWord] |= bit;
+            reordered++;
+            missing--;
+        }
+    }
+
+    /**
+     * This method adds counts since last call to the
+     * shared counters of the run
+     */
+
+    public void publishCounts() {
+        if ((duplicates | reordered | late | missing) == 0) {
+            return;
+        }
+        Metrics.getMessagesDuplicated().add(duplicates);
+        Metrics.getMessagesReordered().add(reordered);
+        Metrics.getMessagesLate().add(late);
+        Metrics.getMessagesMissing().add(missing);
+        duplicates = 0;
+        reordered = 0;
+        late = 0;
+        missing = 0;
+    }
+
+    /**
+     * Window moves up by distance, bits of sequences which
+     * fall out of it are dropped
+     */
+
+    private void shiftWindow(int word, long distance) {
+        long low = windows[word];
+        long high = windows[word + 1];
+        if (distance >= WINDOW_SIZE) {
+            low = 0;
+            high = 0;
+        } else if (distance >= 64) {
+            high = low << (distance - 64);
+            low = 0;
+        } else {
+            high = (high << distance) | (low >>> (64 - distance));
+            low = low << distance;
+        }
+        windows[word] = low;
+        windows[word + 1] = high;
+    }
+
+    /**
+     * @return slot of the source, {@link #NO_SLOT} for a new
+     * source which is not logged in
+     */
+
+    private int slotOf(int sourceId) {
+        int slot = DestinationSequences.slotOf(sourceIds, sourceId);
+        if (sourceIds[slot] == EMPTY) {
+            if (!peerDirectory.contains(sourceId)) {
+                return NO_SLOT;
+            }
+            if ((size + 1) * 2 > sourceIds.length) {
+                compactOrGrow();
+                slot = DestinationSequences.slotOf(sourceIds, sourceId);
+            }
+            sourceIds[slot] = sourceId;
+            size++;
+        }
+        return slot;
+    }
+
+    /**
+     * Same as {@link DestinationSequences}, sources which have
+     * left are dropped and table only doubles if more than a
+     * quarter of it is still in use
+     */
+
+    private void compactOrGrow() {
+        int[] oldSourceIds = sourceIds;
+        long[] oldHighestSequences = highestSequences;
+        long[] oldWindows = windows;
+        size = DestinationSequences.dropDeparted(oldSourceIds, peerDirectory);
+        int capacity = size * 4 > oldSourceIds.length ? oldSourceIds.length * 2 : oldSourceIds.length;
+        sourceIds = new int[capacity];
+        highestSequences = new long[capacity];
+        windows = new long[capacity * 2];
+
+        for (int oldSlot = 0; oldSlot < oldSourceIds.length; oldSlot++) {
+            if (oldSourceIds[oldSlot] != EMPTY) {
+                int slot = DestinationSequences.slotOf(sourceIds, oldSourceIds[oldSlot]);
+                sourceIds[slot] = oldSourceIds[oldSlot];
+                highestSequences[slot] = oldHighestSequences[oldSlot];
+                windows[slot * 2] = oldWindows[oldSlot * 2];
+                windows[slot * 2 + 1] = oldWindows[oldSlot * 2 + 1];
+            }
+        }
+    }
+}
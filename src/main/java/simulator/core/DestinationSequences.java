@@ -0,0 +1,138 @@
+package simulator.core;
+
+/**
+ * This class hands out sequence numbers of DATA messages
+ * per destination, so every (source, destination) pair
+ * counts its messages 1, 2, 3 ... on its own and receiver
+ * can tell which of them never arrived.
+ * <p>
+ * Last sequence of every destination is kept in primitive
+ * arrays with open addressing, a user sending to thousands
+ * of peers creates no object per peer or per message.
+ * <p>
+ * Destinations which have left the {@link PeerDirectory} are
+ * dropped whenever the table is about to grow, so churning users
+ * do not pile up. A destination costs 12 bytes per slot and the
+ * table is between an eighth and a half full, so about 32 bytes
+ * on average. With random targets a user ends up with a slot for
+ * nearly every logged in peer, N users hold up to N^2 slots.
+ * Sequences are only handed out in latency mode.
+ * <p>
+ * All methods are called by the sending thread of
+ * the user only
+ */
+
+public class DestinationSequences {
+    private static final int INITIAL_CAPACITY = 8;
+    //destination id 0 is the server, it never receives DATA
+    private static final int EMPTY = 0;
+
+    private final PeerDirectory peerDirectory;
+    private int[] destinationIds = new int[INITIAL_CAPACITY];
+    private long[] lastSequences = new long[INITIAL_CAPACITY];
+    private int size;
+    //messages sent to the server itself, for example when nobody is logged in
+    private long lastSequenceToServer;
+
+    /**
+     * @param peerDirectory logged in peers, destinations which
+     *                      are not in it anymore are dropped
+     */
+
+    public DestinationSequences(PeerDirectory peerDirectory) {
+        this.peerDirectory = peerDirectory;
+    }
+
+    /**
+     * This method returns sequence number for next DATA
+     * message to given destination
+     *
+     * @param destinationId id of the receiver
+     * @return sequence number, first one is 1
+     */
+
+    public long next(int destinationId) {
+        if (destinationId == EMPTY) {
+            return ++lastSequenceToServer;
+        }
+
+        int slot = slotOf(destinationIds, destinationId);
+        if (destinationIds[slot] == EMPTY) {
+            if ((size + 1) * 2 > destinationIds.length) {
+                compactOrGrow();
+                slot = slotOf(destinationIds, destinationId);
+            }
+            destinationIds[slot] = destinationId;
+            size++;
+        }
+        return ++lastSequences[slot];
+    }
+
+    /**
+     * Table is about to be half full. Destinations which have left
+     * are dropped first and table only doubles if more than a quarter
+     * of it is still in use, so a compaction is paid for by at least
+     * a quarter of the table in new destinations
+     */
+
+    private void compactOrGrow() {
+        int[] oldDestinationIds = destinationIds;
+        long[] oldLastSequences = lastSequences;
+        size = dropDeparted(oldDestinationIds, peerDirectory);
+        int capacity = size * 4 > oldDestinationIds.length ? oldDestinationIds.length * 2 : oldDestinationIds.length;
+        destinationIds = new int[capacity];
+        lastSequences = new long[capacity];
+
+        for (int oldSlot = 0; oldSlot < oldDestinationIds.length; oldSlot++) {
+            if (oldDestinationIds[oldSlot] != EMPTY) {
+                int slot = slotOf(destinationIds, oldDestinationIds[oldSlot]);
+                destinationIds[slot] = oldDestinationIds[oldSlot];
+                lastSequences[slot] = oldLastSequences[oldSlot];
+            }
+        }
+    }
+
+    /**
+     * Helper function which empties slots of ids which are not
+     * in the directory anymore. Table is rehashed afterwards
+     *
+     * @return number of ids left
+     */
+
+    static int dropDeparted(int[] ids, PeerDirectory peerDirectory) {
+        int left = 0;
+        for (int slot = 0; slot < ids.length; slot++) {
+            if (ids[slot] != EMPTY) {
+                if (peerDirectory.contains(ids[slot])) {
+                    left++;
+                } else {
+                    ids[slot] = EMPTY;
+                }
+            }
+        }
+        return left;
+    }
+
+    /**
+     * @return slot holding the id or empty slot the id belongs to
+     */
+
+    static int slotOf(int[] ids, int id) {
+        int mask = ids.length - 1;
+        int slot = mix(id) & mask;
+        while (ids[slot] != EMPTY && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Ids are handed out in increasing order, so they are
+     * spread before being used as index
+     */
+
+    private static int mix(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
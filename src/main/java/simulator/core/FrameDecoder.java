@@ -0,0 +1,256 @@
+package simulator.core;
+
+import simulator.properties.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is a cumulative frame decoder for one connection.
+ * TCP does not preserve message boundaries so a single read can
+ * return half a frame or several frames at once. Every read is
+ * appended to the cumulation buffer and only complete frames are
+ * handed out. Bytes of an incomplete frame stay in the buffer
+ * until next read completes it.
+ * <p>
+ * Usage is
+ * readFrom() -> beginDecoding() -> nextFrameLength() until -1 -> endDecoding()
+ * <p>
+ * Frame is located with header layout defined in {@link Constants}
+ * where message length is stored at offsets 14 to 18
+ * <p>
+ * A decoder created with a {@link BufferPool} borrows its buffer
+ * for a read and gives it back as soon as no incomplete frame is
+ * left in it, so an idle connection holds no buffer at all.
+ * <p>
+ * A frame larger than the cumulation buffer is assembled in a
+ * direct buffer. Only the bytes of the frame which are already in
+ * the cumulation buffer are moved over, the rest of the frame is read
+ * from the channel straight into that buffer, so a frame of several
+ * megabytes is never copied as a whole. A heap buffer would not do,
+ * the JDK reads into a heap buffer through a temporary direct buffer
+ * of the same size and caches that one per thread. The direct buffer
+ * only grows and is kept for later large frames until the decoder is
+ * released. Once a large frame has been decoded decoding goes on in
+ * the cumulation buffer.
+ * <p>
+ * Buffer handed out for decoding may be direct, so frames are
+ * copied out of it with {@link #copyFrame} and never through its
+ * backing array.
+ */
+
+public class FrameDecoder {
+    public static final int NO_COMPLETE_FRAME = -1;
+    private static final ByteBuffer NO_BYTES = ByteBuffer.allocate(0);
+
+    private final BufferPool bufferPool;
+    private final int capacity;
+    private ByteBuffer cumulationBuffer;
+    //frame larger than the cumulation buffer, null while there is none
+    private ByteBuffer largeFrame;
+    //direct buffer large frames are assembled in, grows to the largest frame so far
+    private ByteBuffer largeFrameBuffer;
+    private ByteBuffer decodingBuffer;
+
+    public FrameDecoder(int capacity) {
+        this.bufferPool = null;
+        this.capacity = capacity;
+        this.cumulationBuffer = ByteBuffer.allocate(capacity);
+    }
+
+    public FrameDecoder(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        this.capacity = bufferPool.getBufferSize();
+    }
+
+    /**
+     * This method appends whatever is available on the channel
+     * to the cumulation buffer, or to the buffer of a large frame
+     * while one is being assembled. A large frame is read up to its
+     * last byte only, bytes after it stay in the channel
+     *
+     * @param socketChannel channel to read from
+     * @return number of bytes read or -1 on end of stream
+     * @throws IOException dealt by caller
+     */
+
+    public int readFrom(SocketChannel socketChannel) throws IOException {
+        if (largeFrame == null && cumulationBuffer == null) {
+            cumulationBuffer = bufferPool.acquire();
+        }
+
+        try {
+            if (largeFrame != null) {
+                return socketChannel.read(largeFrame);
+            }
+            int bytesRead = socketChannel.read(cumulationBuffer);
+            if (bytesRead <= 0) {
+                releaseIfEmpty();
+            }
+            return bytesRead;
+        } catch (IOException exception) {
+            release();
+            throw exception;
+        }
+    }
+
+    /**
+     * This method switches the buffer from appending
+     * to decoding mode. It must only be called after a
+     * read which has returned some bytes
+     *
+     * @return buffer positioned at first undecoded byte
+     */
+
+    public ByteBuffer beginDecoding() {
+        if (largeFrame == null) {
+            cumulationBuffer.flip();
+            decodingBuffer = cumulationBuffer;
+        } else if (largeFrame.hasRemaining()) {
+            decodingBuffer = NO_BYTES;
+        } else {
+            largeFrame.flip();
+            decodingBuffer = largeFrame;
+        }
+        return decodingBuffer;
+    }
+
+    /**
+     * This method checks if a complete frame starts at current
+     * position of the buffer. Caller has to consume exactly the
+     * returned amount of bytes before asking for next frame
+     *
+     * @return length of complete frame including header or -1
+     * @throws IOException if frame is longer than {@link Constants#MAX_FRAME_LENGTH}
+     */
+
+    public int nextFrameLength() throws IOException {
+        return completeFrameLength(decodingBuffer);
+    }
+
+    /**
+     * This method keeps bytes of incomplete frame and switches
+     * buffer back to appending mode. Once a large frame has been
+     * decoded its buffer is kept for the next one, an incomplete frame
+     * which does not fit in the cumulation buffer is moved to it
+     *
+     * @throws IOException if incomplete frame is longer than {@link Constants#MAX_FRAME_LENGTH}
+     */
+
+    public void endDecoding() throws IOException {
+        if (decodingBuffer == largeFrame) {
+            largeFrame = null;
+        } else if (decodingBuffer == cumulationBuffer) {
+            if (cumulationBuffer.remaining() >= Constants.START_OF_MESSAGE_INCLUSIVE
+                    && frameLengthAt(cumulationBuffer, cumulationBuffer.position()) > capacity) {
+                largeFrame = largeFrameBuffer(frameLengthAt(cumulationBuffer, cumulationBuffer.position()));
+                largeFrame.put(cumulationBuffer);
+            }
+            cumulationBuffer.compact();
+            releaseIfEmpty();
+        }
+        decodingBuffer = null;
+    }
+
+    /**
+     * This method gives pooled buffer back together with
+     * an incomplete frame it may still hold. It is called
+     * once the connection has been closed
+     */
+
+    public void release() {
+        largeFrame = null;
+        largeFrameBuffer = null;
+        releaseCumulationBuffer();
+    }
+
+    /**
+     * This method copies a complete frame out of a buffer handed
+     * out for decoding. Position and limit of the source are the
+     * same afterwards, position of the target is moved past the frame
+     *
+     * @param source      buffer holding the frame, heap or direct
+     * @param frameOffset absolute index of first byte of the frame
+     * @param frameLength length of the frame including header
+     * @param target      buffer the frame is appended to
+     */
+
+    public static void copyFrame(ByteBuffer source, int frameOffset, int frameLength, ByteBuffer target) {
+        int position = source.position();
+        int limit = source.limit();
+        source.limit(frameOffset + frameLength);
+        source.position(frameOffset);
+        target.put(source);
+        source.limit(limit);
+        source.position(position);
+    }
+
+    /**
+     * This method returns the direct buffer for a large frame
+     * limited to the length of the frame. Buffer is only allocated
+     * when the frame does not fit in the one kept so far
+     *
+     * @param frameLength length of the frame including header
+     * @return empty buffer of exactly frame length
+     */
+
+    private ByteBuffer largeFrameBuffer(int frameLength) {
+        if (largeFrameBuffer == null || largeFrameBuffer.capacity() < frameLength) {
+            largeFrameBuffer = ByteBuffer.allocateDirect(frameLength);
+        }
+        largeFrameBuffer.clear();
+        largeFrameBuffer.limit(frameLength);
+        return largeFrameBuffer;
+    }
+
+    private void releaseIfEmpty() {
+        if (cumulationBuffer.position() == 0) {
+            releaseCumulationBuffer();
+        }
+    }
+
+    private void releaseCumulationBuffer() {
+        if (bufferPool != null && cumulationBuffer != null) {
+            bufferPool.release(cumulationBuffer);
+            cumulationBuffer = null;
+        }
+    }
+
+    /**
+     * Helper function which finds length of the complete frame
+     * starting at position of given buffer
+     *
+     * @param buffer in decoding mode
+     * @return length of complete frame including header or -1
+     * @throws IOException if frame is longer than {@link Constants#MAX_FRAME_LENGTH}
+     */
+
+    public static int completeFrameLength(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Constants.START_OF_MESSAGE_INCLUSIVE) {
+            return NO_COMPLETE_FRAME;
+        }
+
+        int frameLength = frameLengthAt(buffer, buffer.position());
+        return buffer.remaining() >= frameLength ? frameLength : NO_COMPLETE_FRAME;
+    }
+
+    /**
+     * Helper function which reads length of the frame whose
+     * header starts at given index of the buffer
+     *
+     * @param buffer     holding the whole header
+     * @param frameStart absolute index of first byte of the frame
+     * @return length of the frame including header
+     * @throws IOException if length is negative or longer than {@link Constants#MAX_FRAME_LENGTH}
+     */
+
+    private static int frameLengthAt(ByteBuffer buffer, int frameStart) throws IOException {
+        int messageLength = buffer.getInt(frameStart + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE);
+        if (messageLength < 0 || messageLength > Constants.MAX_FRAME_LENGTH - Constants.START_OF_MESSAGE_INCLUSIVE) {
+            throw new IOException("Frame with message of " + messageLength + " bytes exceeds limit of "
+                    + Constants.MAX_FRAME_LENGTH + " bytes");
+        }
+        return Constants.START_OF_MESSAGE_INCLUSIVE + messageLength;
+    }
+}
@@ -0,0 +1,118 @@
+package simulator.core;
+
+import com.domain.Packet;
+import simulator.domain.MessageType;
+import simulator.properties.Constants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a DATA frame which has been encoded once for a
+ * payload profile. Sending from a template copies the whole frame
+ * in one go and then writes magic number, source id, destination
+ * id and, in latency mode, send timestamp and sequence at their
+ * fixed offsets. Message text is never encoded again.
+ * <p>
+ * A template of the largest size of a payload distribution serves
+ * every smaller size as well: a frame of n bytes of text is the
+ * beginning of the template with its message length written anew.
+ * <p>
+ * Template is immutable and shared by all clients.
+ */
+
+public class FrameTemplate {
+    private final byte[] frame;
+    private final boolean latencyPrefix;
+    private final int prefixLength;
+
+    /**
+     * @param message       text every frame carries
+     * @param latencyPrefix true if frames carry send timestamp and sequence
+     */
+
+    public FrameTemplate(CharSequence message, boolean latencyPrefix) {
+        Packet packet = Packet.builder().magicBytes(Constants.NO_MAGIC_NUMBER).messageType(MessageType.DATA)
+                .messageSourceId(Constants.SERVER_SOURCE_ID).messageDestinationId(Constants.SERVER_SOURCE_ID)
+                .message(message.toString()).build();
+
+        ByteBuffer buffer;
+        if (latencyPrefix) {
+            buffer = ByteBuffer.allocate(PacketEncoder.encodedLengthWithTimestamp(packet));
+            PacketEncoder.encodeWithTimestamp(packet, 0, 0, buffer);
+        } else {
+            buffer = ByteBuffer.allocate(PacketEncoder.encodedLength(packet));
+            PacketEncoder.encode(packet, buffer);
+        }
+        this.frame = buffer.array();
+        this.latencyPrefix = latencyPrefix;
+        this.prefixLength = latencyPrefix ? Constants.LATENCY_PREFIX_LENGTH : 0;
+    }
+
+    public int getFrameLength() {
+        return frame.length;
+    }
+
+    /**
+     * @param textLength bytes of message text, at most {@link #getMaxTextLength()}
+     * @return length of the frame carrying that many bytes of text
+     */
+
+    public int getFrameLength(int textLength) {
+        return Constants.START_OF_MESSAGE_INCLUSIVE + prefixLength + textLength;
+    }
+
+    public int getMaxTextLength() {
+        return frame.length - Constants.START_OF_MESSAGE_INCLUSIVE - prefixLength;
+    }
+
+    public boolean hasLatencyPrefix() {
+        return latencyPrefix;
+    }
+
+    /**
+     * This method writes one frame into the buffer starting at its
+     * current position. Timestamp and sequence are ignored when the
+     * template has no latency prefix
+     *
+     * @param target             buffer which must have {@link #getFrameLength()} bytes remaining
+     * @param magicBytes         magic number assigned by server
+     * @param sourceId           id of the sender
+     * @param destinationId      id message is sent to
+     * @param sendTimestampNanos time the message is meant to be sent
+     * @param sequenceNumber     sequence of the message
+     */
+
+    public void writeTo(ByteBuffer target, int magicBytes, int sourceId, int destinationId,
+                        long sendTimestampNanos, long sequenceNumber) {
+        writeTo(target, getMaxTextLength(), magicBytes, sourceId, destinationId, sendTimestampNanos, sequenceNumber);
+    }
+
+    /**
+     * This method writes one frame carrying the first bytes of the
+     * template text into the buffer starting at its current position
+     *
+     * @param target             buffer which must have {@link #getFrameLength(int)} bytes remaining
+     * @param textLength         bytes of message text, at most {@link #getMaxTextLength()}
+     * @param magicBytes         magic number assigned by server
+     * @param sourceId           id of the sender
+     * @param destinationId      id message is sent to
+     * @param sendTimestampNanos time the message is meant to be sent
+     * @param sequenceNumber     sequence of the message
+     */
+
+    public void writeTo(ByteBuffer target, int textLength, int magicBytes, int sourceId, int destinationId,
+                        long sendTimestampNanos, long sequenceNumber) {
+        int frameStart = target.position();
+        target.put(frame, 0, getFrameLength(textLength));
+        target.putInt(frameStart + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE, prefixLength + textLength);
+        target.putInt(frameStart + Constants.START_OF_MAGIC_BYTES_INCLUSIVE, magicBytes);
+        target.putInt(frameStart + Constants.START_OF_SOURCE_ID_INCLUSIVE, sourceId);
+        target.putInt(frameStart + Constants.START_OF_DEST_ID_INCLUSIVE, destinationId);
+
+        if (latencyPrefix) {
+            int messageStart = frameStart + Constants.START_OF_MESSAGE_INCLUSIVE;
+            target.putLong(messageStart + Constants.START_OF_SEND_TIMESTAMP_INCLUSIVE, sendTimestampNanos);
+            target.putLong(messageStart + Constants.START_OF_SEQUENCE_NUMBER_INCLUSIVE, sequenceNumber);
+        }
+    }
+}
@@ -2,25 +2,41 @@ package simulator.core;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import simulator.journal.EventJournal;
+import simulator.journal.JournalEvent;
+import simulator.load.ExecutionMode;
 import simulator.load.LoadSimulator;
+import simulator.metrics.Metrics;
+
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RequiredArgsConstructor
 public class InternalCore {
     private final int serverSocketChannelPort;
     private final String hostName;
+    private final ThreadFactory writerThreadFactory;
+    private final boolean blockingChannel;
     private SocketChannel socketChannel;
     private final UserState userState = new UserState();
     private final Reader reader = new Reader();
 
 
+    /**
+     * Creates client with its own selector and a
+     * platform writer thread
+     */
+
+    public InternalCore(int serverSocketChannelPort, String hostName) {
+        this(serverSocketChannelPort, hostName, ExecutionMode.PLATFORM_THREADS.newClientThreadFactory(), false);
+    }
+
     /**
      * This method is the starting point of our client
      * Here we are setting up the communication and
@@ -29,31 +45,66 @@ public class InternalCore {
      */
 
     public void initiateApplication() {
-        log.info("initiateApplication() method execution started");
         Selector selector = null;
         try {
 
-            log.info("Calling setUpChannelAndSelector method()");
+            if (blockingChannel) {
+                processBlockingReads();
+                return;
+            }
+
             selector = setUpChannelAndSelector();
 
-            log.info("Calling createMessageWriterThread method()");
             createMessageWriterThread(socketChannel);
 
-            log.info("Calling processSelectorReadEvent method()");
             processSelectorReadEvent(selector);
 
 
         } catch (Exception exception) {
             log.error("Cause of Error is ", exception);
+            userState.recordEvent(JournalEvent.ERROR, 0, 0);
+            Metrics.getErrors().increment();
 
         } finally {
-            log.info("Executing finally block");
+            userState.leavePeerDirectory();
+            userState.moveTo(ConnectionState.CLOSED);
+            //writer may still wait for an id or a login which never comes
+            userState.signalStateChanged();
+            userState.recordEvent(JournalEvent.CLOSED, 0, 0);
             finallyBlockExecutionForGraceFulShutdown(selector);
-            log.info("initiateApplication method execution ended");
+            closeBlockingChannel();
+            EventJournal.threadEnded();
         }
 
     }
 
+    /**
+     * This method runs the client over a blocking channel.
+     * Calling thread keeps reading until server closes the
+     * connection or a read fails while writer runs on its own
+     * thread. This is meant for virtual threads where a blocked
+     * read does not hold an OS thread. A blocking read only
+     * returns 0 bytes into a full buffer, which would never
+     * empty again, so the client gives up on it
+     *
+     * @throws IOException we deal this exception above
+     */
+
+    private void processBlockingReads() throws IOException {
+        socketChannel = openSocketAndProduceAcceptanceDuration();
+
+        createMessageWriterThread(socketChannel);
+
+        int bytesRead;
+        do {
+            bytesRead = reader.readingFromServer(socketChannel, userState);
+        } while (bytesRead > 0);
+
+        if (bytesRead == 0) {
+            throw new IOException("Read buffer is full without a complete frame");
+        }
+    }
+
     /**
      * This method is used to set up the channel and selector.
      * Here we register set up channel with selector on read
@@ -63,21 +114,14 @@ public class InternalCore {
      * @throws IOException is dealt above
      */
     private Selector setUpChannelAndSelector() throws IOException {
-        log.info("setUpChannelAndSelector method() execution started");
 
-        InetSocketAddress hostAddress = getSocketAndProduceAcceptanceDuration();
-        socketChannel = SocketChannel.open(hostAddress);
+        socketChannel = openSocketAndProduceAcceptanceDuration();
         socketChannel.configureBlocking(false);
-        log.info("Socket channel opened that represents connection with server at port {}", serverSocketChannelPort);
 
-        log.info("Opening Selector");
         Selector selector = Selector.open();
-        log.info("Selector opened");
 
-        log.info("Registering socket with selector");
         socketChannel.register(selector, SelectionKey.OP_READ);
 
-        log.info("Execution of setUpChannelAndSelector ended");
 
         return selector;
     }
@@ -86,21 +130,34 @@ public class InternalCore {
     /**
      * This method acts as producer for connection acceptance time
      * As soon as connection with server is established we record
-     * that time and put in the map
-     *
-     * @return socket address
+     * the time the blocking connect took and put in the map
      *
+     * @return socket channel connected with server
+     * @throws IOException in case server could not be reached
      */
 
-    private InetSocketAddress getSocketAndProduceAcceptanceDuration() {
-        log.info("Opening a Socket channel that represents connection with server at port {}", serverSocketChannelPort);
-        Instant starts = Instant.now();
+    private SocketChannel openSocketAndProduceAcceptanceDuration() throws IOException {
         InetSocketAddress hostAddress = new InetSocketAddress(hostName, serverSocketChannelPort);
-        Instant ends = Instant.now();
+        long starts = System.nanoTime();
+        userState.moveTo(ConnectionState.CONNECTING);
+        userState.recordEvent(JournalEvent.CONNECT_STARTED, 0, 0);
+        SocketChannel connectedChannel;
+        try {
+            connectedChannel = SocketChannel.open(hostAddress);
+        } catch (IOException exception) {
+            Metrics.getConnectsFailed().increment();
+            userState.recordEvent(JournalEvent.CONNECT_FAILED, 0, System.nanoTime() - starts);
+            throw exception;
+        }
+        long connectNanos = System.nanoTime() - starts;
+        userState.recordEvent(JournalEvent.CONNECTED, 0, connectNanos);
+        Metrics.getConnectLatency().record(connectNanos);
+        Metrics.getConnectsEstablished().increment();
+        userState.moveTo(ConnectionState.CONNECTED);
         //critical section starts
-        LoadSimulator.getConnectionAcceptanceTime().put(Thread.currentThread().getName(), Duration.between(starts,ends).toMillis());
+        LoadSimulator.getConnectionAcceptanceTime().put(Thread.currentThread().getName(), TimeUnit.NANOSECONDS.toMillis(connectNanos));
         //critical section ends
-        return hostAddress;
+        return connectedChannel;
     }
 
     /**
@@ -111,10 +168,7 @@ public class InternalCore {
      */
 
     private void createMessageWriterThread(SocketChannel socketChannel) {
-        log.info("createMessageWriterThread method execution started");
-        Thread messageWriterThread = new Writer(socketChannel, userState);
-        log.info("Going to create writer thread");
-        messageWriterThread.setDaemon(true);
+        Thread messageWriterThread = writerThreadFactory.newThread(new Writer(socketChannel, userState));
         messageWriterThread.start();
     }
 
@@ -128,22 +182,16 @@ public class InternalCore {
      */
 
     private void processSelectorReadEvent(Selector selector) throws IOException {
-        log.info("Started channelEventsListenerViaSelector execution method");
 
         while (socketChannel.isOpen()) {
-            log.info("Waiting for event to occur");
             selector.select();
 
             for (SelectionKey selectionKey : selector.selectedKeys()) {
-                log.info("Retrieving key's ready-operation set");
                 selectionKey.readyOps();
 
-                log.info("Removing the selection key");
                 selector.selectedKeys().remove(selectionKey);
 
                 if (selectionKey.isValid() && selectionKey.isReadable()) {
-                    log.info("Read event has occurred");
-                    log.info("Calling reading from server method");
                     reader.readingFromServer((SocketChannel) selectionKey.channel(), userState);
                 }
 
@@ -152,37 +200,41 @@ public class InternalCore {
 
     }
 
+    private void closeBlockingChannel() {
+        if (blockingChannel && socketChannel != null) {
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                log.error("Error occurred while closing socket");
+            }
+        }
+    }
+
     /**
      * Graceful shutdown of client
      *
      * @param selector takes input
      */
     private void finallyBlockExecutionForGraceFulShutdown(Selector selector) {
-        log.info("Execution of selectorShutdown started");
         if (selector != null && selector.isOpen()) {
 
             for (SelectionKey selectionKey : selector.keys()) {
-                log.info("Selecting Channel from key");
                 SocketChannel channel = (SocketChannel) selectionKey.channel();
 
                 try {
                     channel.close();
-                    log.info("Socket Channel closed");
 
                 } catch (IOException e) {
                     log.error("Error occurred while closing socket");
                     e.printStackTrace();
                 }
 
-                log.info("Cancelling selection key");
                 selectionKey.cancel();
 
             }
 
-            log.info("Closing the selector");
             try {
                 selector.close();
-                log.info("Selector closed");
             } catch (IOException e) {
                 log.error("Error occurred while closing selector");
             }
@@ -0,0 +1,190 @@
+package simulator.core;
+
+import com.domain.Packet;
+import simulator.domain.MessageType;
+import simulator.properties.Constants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class encodes packets straight into a caller supplied
+ * buffer without creating any intermediate objects. Buffer is
+ * expected to be reused by caller for every frame it sends.
+ * <p>
+ * Frame is written as
+ * Magic bytes | Message Type | Source id | Destination id | Message Length | Message
+ * and message is written as UTF-8
+ */
+
+public class PacketEncoder {
+
+    /**
+     * This method returns number of bytes packet will
+     * occupy on the wire
+     *
+     * @param packet input
+     * @return frame length including header
+     */
+
+    public static int encodedLength(Packet packet) {
+        return Constants.START_OF_MESSAGE_INCLUSIVE + utf8Length(packet.getMessage());
+    }
+
+    /**
+     * This method writes packet into the buffer starting at
+     * its current position
+     *
+     * @param packet input
+     * @param target buffer which must have {@link #encodedLength(Packet)} bytes remaining
+     */
+
+    public static void encode(Packet packet, ByteBuffer target) {
+        encode(packet.getMagicBytes(), packet.getMessageType(), packet.getMessageSourceId(),
+                packet.getMessageDestinationId(), packet.getMessage(), target);
+    }
+
+    /**
+     * This method writes a frame into the buffer starting at its
+     * current position. Message length is patched in once the
+     * message has been written so it is always the byte count.
+     *
+     * @param target buffer which must have enough bytes remaining
+     */
+
+    public static void encode(int magicBytes, MessageType messageType, int sourceId, int destinationId,
+                              CharSequence message, ByteBuffer target) {
+        int frameStart = target.position();
+        writeHeader(magicBytes, messageType, sourceId, destinationId, Constants.NO_MASSAGE_LENGTH_DEFINED, target);
+        int messageLength = writeUtf8(message, target);
+        target.putInt(frameStart + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE, messageLength);
+    }
+
+    /**
+     * This method returns number of bytes packet will occupy
+     * on the wire when it carries send timestamp and sequence
+     *
+     * @param packet input
+     * @return frame length including header
+     */
+
+    public static int encodedLengthWithTimestamp(Packet packet) {
+        return encodedLength(packet) + Constants.LATENCY_PREFIX_LENGTH;
+    }
+
+    /**
+     * This method writes packet into the buffer and puts send
+     * timestamp and sequence number in front of its message so
+     * receiver can measure delay of the packet
+     *
+     * @param packet             input
+     * @param sendTimestampNanos System.nanoTime() based send time
+     * @param sequenceNumber     sequence of the packet
+     * @param target             buffer which must have enough bytes remaining
+     */
+
+    public static void encodeWithTimestamp(Packet packet, long sendTimestampNanos, long sequenceNumber, ByteBuffer target) {
+        int frameStart = target.position();
+        writeHeader(packet.getMagicBytes(), packet.getMessageType(), packet.getMessageSourceId(),
+                packet.getMessageDestinationId(), Constants.NO_MASSAGE_LENGTH_DEFINED, target);
+        target.putLong(sendTimestampNanos);
+        target.putLong(sequenceNumber);
+        int messageLength = Constants.LATENCY_PREFIX_LENGTH + writeUtf8(packet.getMessage(), target);
+        target.putInt(frameStart + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE, messageLength);
+    }
+
+    /**
+     * This method writes a frame with an already encoded message
+     * into the buffer starting at its current position
+     *
+     * @param target buffer which must have enough bytes remaining
+     */
+
+    public static void encode(int magicBytes, MessageType messageType, int sourceId, int destinationId,
+                              byte[] message, int offset, int length, ByteBuffer target) {
+        writeHeader(magicBytes, messageType, sourceId, destinationId, length, target);
+        target.put(message, offset, length);
+    }
+
+    /**
+     * This method writes the fixed 18 bytes header
+     */
+
+    public static void writeHeader(int magicBytes, MessageType messageType, int sourceId, int destinationId,
+                                   int messageLength, ByteBuffer target) {
+        String messageCode = messageType.getMessageCode();
+        target.putInt(magicBytes);
+        target.put((byte) messageCode.charAt(0));
+        target.put((byte) messageCode.charAt(1));
+        target.putInt(sourceId);
+        target.putInt(destinationId);
+        target.putInt(messageLength);
+    }
+
+    /**
+     * Helper function which returns number of bytes
+     * message takes in UTF-8
+     *
+     * @param message input
+     * @return byte count
+     */
+
+    public static int utf8Length(CharSequence message) {
+        int length = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char character = message.charAt(i);
+            if (character < 0x80) {
+                length += 1;
+            } else if (character < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(character)) {
+                if (Character.isHighSurrogate(character) && i + 1 < message.length()
+                        && Character.isLowSurrogate(message.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 1;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Helper function which writes message as UTF-8 directly
+     * into the buffer. Unpaired surrogates are written as '?'
+     * same as String.getBytes does
+     *
+     * @return number of bytes written
+     */
+
+    private static int writeUtf8(CharSequence message, ByteBuffer target) {
+        int start = target.position();
+        for (int i = 0; i < message.length(); i++) {
+            char character = message.charAt(i);
+            if (character < 0x80) {
+                target.put((byte) character);
+            } else if (character < 0x800) {
+                target.put((byte) (0xC0 | (character >> 6)));
+                target.put((byte) (0x80 | (character & 0x3F)));
+            } else if (Character.isSurrogate(character)) {
+                if (Character.isHighSurrogate(character) && i + 1 < message.length()
+                        && Character.isLowSurrogate(message.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(character, message.charAt(++i));
+                    target.put((byte) (0xF0 | (codePoint >> 18)));
+                    target.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    target.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    target.put((byte) '?');
+                }
+            } else {
+                target.put((byte) (0xE0 | (character >> 12)));
+                target.put((byte) (0x80 | ((character >> 6) & 0x3F)));
+                target.put((byte) (0x80 | (character & 0x3F)));
+            }
+        }
+        return target.position() - start;
+    }
+}
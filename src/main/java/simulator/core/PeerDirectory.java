@@ -0,0 +1,109 @@
+package simulator.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class is the directory of logged in peer ids which
+ * senders pick their destinations from.
+ * <p>
+ * Ids are kept densely packed in an int array. Adding and
+ * removing peers is synchronized between writers, picking a
+ * random peer takes no lock and creates no object. A new id is
+ * written into its slot before the size is published, so a reader
+ * never sees a slot which has not been filled. Removal moves last
+ * id into the freed slot, so while a removal is going on a reader
+ * can still pick the removed id once. Server drops such a message.
+ */
+
+public class PeerDirectory {
+    public static final int NO_PEER = 0;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile int[] peerIds = new int[INITIAL_CAPACITY];
+    private volatile int size;
+
+    //written and read under lock of this directory only
+    private final Map<Integer, Integer> slotsByPeerId = new HashMap<>();
+
+    /**
+     * This method adds a logged in peer. Adding an
+     * id twice keeps only one entry
+     *
+     * @param peerId id assigned by server
+     */
+
+    public synchronized void add(int peerId) {
+        if (slotsByPeerId.containsKey(peerId)) {
+            return;
+        }
+
+        int[] ids = peerIds;
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            peerIds = ids;
+        }
+        ids[size] = peerId;
+        slotsByPeerId.put(peerId, size);
+        size = size + 1;
+    }
+
+    /**
+     * This method removes a peer which has logged out
+     * or whose connection has been closed
+     *
+     * @param peerId id assigned by server
+     */
+
+    public synchronized void remove(int peerId) {
+        Integer slot = slotsByPeerId.remove(peerId);
+        if (slot == null) {
+            return;
+        }
+
+        int lastSlot = size - 1;
+        int[] ids = peerIds;
+        if (slot != lastSlot) {
+            int movedPeerId = ids[lastSlot];
+            ids[slot] = movedPeerId;
+            slotsByPeerId.put(movedPeerId, slot);
+        }
+        size = lastSlot;
+    }
+
+    /**
+     * This method picks a peer uniformly at random. It can
+     * be called from any number of threads at the same time
+     *
+     * @return peer id or {@link #NO_PEER} if nobody is logged in
+     */
+
+    public int randomPeer() {
+        int currentSize = size;
+        if (currentSize == 0) {
+            return NO_PEER;
+        }
+        int[] ids = peerIds;
+        return ids[ThreadLocalRandom.current().nextInt(currentSize)];
+    }
+
+    /**
+     * @param peerId id assigned by server
+     * @return true if the peer is logged in
+     */
+
+    public synchronized boolean contains(int peerId) {
+        return slotsByPeerId.containsKey(peerId);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        slotsByPeerId.clear();
+        size = 0;
+    }
+}
@@ -1,10 +1,14 @@
 package simulator.core;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import com.domain.Packet;
+import simulator.capture.TrafficCapture;
 import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.journal.EventJournal;
+import simulator.journal.JournalEvent;
 import simulator.load.LoadSimulator;
+import simulator.metrics.Metrics;
+import simulator.properties.SimulatorProperties;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -19,19 +23,60 @@ import java.nio.channels.SocketChannel;
  * @author umar.tahir@afiniti.com
  */
 @Slf4j
-@RequiredArgsConstructor
 public class Reader {
-    private final ByteBuffer readByteBuffer = ByteBuffer.allocate(256 * 256);
+    private static final boolean LATENCY_MODE = SimulatorProperties.isLatencyMode();
+    private static final boolean PRINT_MESSAGES = SimulatorProperties.isPrintMessages();
+
+    public static final int READ_BUFFER_SIZE = 256 * 256;
+
+    private final FrameDecoder frameDecoder;
+    private final PacketView packetView = new PacketView();
+    //checks sequences of received messages in latency mode
+    private final DeliveryTracker deliveryTracker = new DeliveryTracker(LoadSimulator.getPeerDirectory());
     private UserState userState;
+    //DATA messages of current read, added to shared counter once per read
+    private int messagesInRead;
+
+    /**
+     * Reader of a blocking client keeps its own buffer
+     * as its thread waits inside read most of the time
+     */
+
+    public Reader() {
+        this.frameDecoder = new FrameDecoder(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Reader of an event loop client borrows a buffer
+     * from the pool of its loop for every read
+     *
+     * @param bufferPool read buffer pool of the event loop
+     */
+
+    public Reader(BufferPool bufferPool) {
+        this.frameDecoder = new FrameDecoder(bufferPool);
+    }
+
+    /**
+     * This method gives back buffer holding an incomplete
+     * frame once the connection has been closed
+     */
 
+    public void release() {
+        frameDecoder.release();
+    }
 
 
     /**
      * <p>
      * In this method we read all the messages that our socket channel has
-     * received from server. After identifying message we will decide its
-     * correct course of processing. Here we also catching all the exceptions
-     * from below methods and dealing with it.
+     * received from server. A single read can contain several messages and
+     * the last one can be incomplete, so every complete frame is processed
+     * and the remaining bytes are kept for the next read. After identifying
+     * message we will decide its correct course of processing. Here we also
+     * catching all the exceptions from below methods and dealing with it:
+     * the error is counted and the channel is closed, as a failed read or a
+     * corrupt frame leaves the connection in a state it can not recover from.
      * <p>
      * Message Types can be
      * 1. LOGIN
@@ -40,34 +85,42 @@ public class Reader {
      * 4. ID_GENERATED
      *
      * @param clientSocketConnectedWithServer channel on which read events have occurred
-     * @apiNote read partial problem deal with this later*
+     * @return number of bytes read, -1 if the channel has been closed
      */
 
-    protected void readingFromServer(SocketChannel clientSocketConnectedWithServer, UserState userState) {
-        log.info("Execution of readingFromServer started");
+    public int readingFromServer(SocketChannel clientSocketConnectedWithServer, UserState userState) {
+        long readStartedNanos = System.nanoTime();
+        this.userState = userState;
 
         try {
 
-            log.info("Calling checkConnectionWithServer method ()");
-            if (!checkConnectionWithServer(clientSocketConnectedWithServer))
-                return;
-
-            log.info("Connection with server is still up");
+            int bytesRead = checkConnectionWithServer(clientSocketConnectedWithServer);
+            if (bytesRead <= 0)
+                return bytesRead;
 
-            log.info("Calling readingMessageFromBuffer method ()");
-            byte[] messageReceivedFromServer = readingMessageFromBuffer();
-            log.info("Calling convertByteArrayIntoPacket() method");
-            Packet packet = userState.getPacketFromByteArray(messageReceivedFromServer);
-            log.info("Calling takePacketAndPerformAction on single message packet");
-            this.userState = userState;
-            takePacketAndPerformAction(packet);
+            int messagesRead = readingMessagesFromBuffer(readStartedNanos);
+            long readEndedNanos = System.nanoTime();
+            Metrics.getReadCallDuration().record(readEndedNanos - readStartedNanos);
+            EventJournal.recordAt(readEndedNanos, JournalEvent.READ, userState.getClientNumber(), bytesRead,
+                    messagesRead, 0);
+            return bytesRead;
 
         } catch (Exception exception) {
             log.error("Exception occurred ", exception);
-            exception.printStackTrace();
+            userState.recordEvent(JournalEvent.ERROR, 0, 0);
+            Metrics.getErrors().increment();
+            closeAfterError(clientSocketConnectedWithServer);
+            return -1;
         }
 
-        log.info("Execution of readingFromServer ended");
+    }
+
+    private void closeAfterError(SocketChannel clientSocketConnectedWithServer) {
+        try {
+            clientSocketConnectedWithServer.close();
+        } catch (IOException exception) {
+            log.error("Error occurred while closing socket");
+        }
     }
 
     /**
@@ -76,47 +129,53 @@ public class Reader {
      * with server.
      *
      * @param clientSocketConnectedWithServer channel
-     * @return true if connection is on else false
+     * @return number of bytes read, -1 if connection has been closed
      * @throws IOException through above
      */
 
-    private boolean checkConnectionWithServer(SocketChannel clientSocketConnectedWithServer) throws IOException {
-        log.info("Execution of checkConnectionIsStillOnWithServer() method started");
+    private int checkConnectionWithServer(SocketChannel clientSocketConnectedWithServer) throws IOException {
 
-        if ((clientSocketConnectedWithServer.read(readByteBuffer)) == -1) {
-            log.info("Closing channel from client side");
+        int bytesRead = frameDecoder.readFrom(clientSocketConnectedWithServer);
+        if (bytesRead == -1) {
+            userState.recordEvent(JournalEvent.END_OF_STREAM, 0, 0);
             clientSocketConnectedWithServer.close();
-            return false;
+            return bytesRead;
         }
+        Metrics.getBytesReceived().add(bytesRead);
 
-        log.info("Connection is ON with Server");
-        log.info("Execution of checkConnectionIsStillOnWithServer() method ended");
-
-        return true;
+        return bytesRead;
     }
 
     /**
-     * This method is reading message from buffer and returning
-     * us byte [] arrays.
+     * This method takes every complete message out of the buffer
+     * and performs its action. Bytes of an incomplete message are
+     * left in the buffer.
      *
-     * @return byte array which contains message
+     * @param readNanos time of the read, frames are captured with it
+     * @return number of DATA messages taken out of the buffer
+     * @throws IOException exception occurred while processing message
      */
 
-    private byte[] readingMessageFromBuffer() {
-        log.info("Execution of readingMessageFromBuffer() method started");
-
-        log.info("Flipping the buffer");
-        readByteBuffer.flip();
-
-        byte[] messageInBytes = new byte[readByteBuffer.limit()];
-        log.info("Reading message from buffer");
-        readByteBuffer.get(messageInBytes);
-
-        log.info("Clearing the buffer");
-        readByteBuffer.clear();
-
-        log.info("Execution of readingMessageFromBuffer() method ended");
-        return messageInBytes;
+    private int readingMessagesFromBuffer(long readNanos) throws IOException {
+        int messagesRead;
+        ByteBuffer readByteBuffer = frameDecoder.beginDecoding();
+        try {
+            int frameLength;
+            while ((frameLength = frameDecoder.nextFrameLength()) != FrameDecoder.NO_COMPLETE_FRAME) {
+                int frameOffset = readByteBuffer.position();
+                TrafficCapture.frameReceived(readNanos, userState.getClientNumber(), readByteBuffer, frameOffset,
+                        frameLength);
+                takePacketAndPerformAction(packetView.wrap(readByteBuffer, frameOffset));
+                readByteBuffer.position(frameOffset + frameLength);
+            }
+        } finally {
+            frameDecoder.endDecoding();
+            Metrics.getMessagesReceived().add(messagesInRead);
+            deliveryTracker.publishCounts();
+            messagesRead = messagesInRead;
+            messagesInRead = 0;
+        }
+        return messagesRead;
     }
 
     /**
@@ -124,63 +183,74 @@ public class Reader {
      * correct course of action. Action can be based on login,
      * logout and Data message type
      *
-     * @param packet contains all the information dervied from
-     *               bytes array
+     * @param packet view of the message which is still in
+     *               the read buffer
      * @throws IOException exception occurred while sending message
      *                     through socket channel
      */
 
-    private void takePacketAndPerformAction(Packet packet) throws IOException {
-        log.info("Execution of takePacketAndPerformAction method started");
+    private void takePacketAndPerformAction(PacketView packet) throws IOException {
 
-        if (packet.getMessageType().equals(MessageType.DATA)) {
-            log.info("Message type is Data. Call its course of action to send message to desired client");
+        MessageType messageType = packet.getMessageType();
+
+        if (messageType == MessageType.DATA) {
             acceptMessageFromServerAndDisplay(packet);
 
-        } else if (packet.getMessageType().equals(MessageType.LOGIN)) {
-            log.info("Message type is login. Calling its course of action");
+        } else if (messageType == MessageType.LOGIN) {
             acceptMagicNumberFromServer(packet);
 
-        } else if (packet.getMessageType().equals(MessageType.GENERATED_ID)) {
-            log.info("Message type is GENERATED_ID. Accept ID from the server");
+        } else if (messageType == MessageType.GENERATED_ID) {
             acceptSourceIDFromServer(packet);
         }
 
-        log.info("Execution of takePacketAndPerformAction method ended");
     }
 
     /**
-     * This method displays message received from the client
+     * This method counts message received from the client and
+     * displays it if printing of messages has been switched on.
+     * In latency mode nothing is displayed, instead delay of the
+     * message is recorded out of the send timestamp it carries and
+     * its sequence is checked for loss, duplication and reordering
      *
      * @param packet contains messages
      */
 
-    private void acceptMessageFromServerAndDisplay(Packet packet) {
-        log.info("Execution of acceptMessageFromServerAndDisplay started");
-        System.out.println("Client with ID says: " + packet.getMessageSourceId() + " :" +
-                packet.getMessage());
+    private void acceptMessageFromServerAndDisplay(PacketView packet) {
+        messagesInRead++;
+
+        if (LATENCY_MODE) {
+            if (packet.hasLatencyPrefix()) {
+                Metrics.getEndToEndLatency().record(System.nanoTime() - packet.getSendTimestampNanos());
+                deliveryTracker.received(packet.getMessageSourceId(), packet.getSequenceNumber());
+            }
+            return;
+        }
+
+        if (PRINT_MESSAGES) {
+            System.out.println("Client with ID says: " + packet.getMessageSourceId() + " :" +
+                    packet.getMessage());
+        }
     }
 
     /**
      * This method accepts Magic number on logging in
-     * and mark user as logged in.
+     * and mark user as logged in. User joins the peer
+     * directory before it may send, so receivers know
+     * its first message comes from a logged in peer
      *
      * @param packet
      */
 
-    private void acceptMagicNumberFromServer(Packet packet) {
-        log.info("Execution of acceptMagicNumberFromServer started");
-        log.info("Assigning magic numbers");
+    private void acceptMagicNumberFromServer(PacketView packet) {
 
         userState.getMagicNumberAssignedByServer().set(packet.getMagicBytes());
+        LoadSimulator.getPeerDirectory().add(packet.getMessageDestinationId());
         userState.getLoggedInFlag().set(true);
+        userState.moveTo(ConnectionState.LOGGED_IN);
 
-        synchronized (userState.getLoggedInFlag()){
-            LoadSimulator.getClientsConnectedToUser().add(packet.getMessageDestinationId());
-            userState.getLoggedInFlag().notifyAll();
-        }
-
-        log.info("Execution of acceptMagicNumberFromServer ended");
+        Metrics.getLoginsCompleted().increment();
+        userState.recordEvent(JournalEvent.LOGGED_IN, 0, 0);
+        userState.signalStateChanged();
     }
 
 
@@ -191,14 +261,14 @@ public class Reader {
      * @param packet data received from server
      */
 
-    private void acceptSourceIDFromServer(Packet packet) {
-        log.info("Execution of acceptSourceIDFromServer started");
+    private void acceptSourceIDFromServer(PacketView packet) {
         userState.getUserIdOfClientAllocatedByServer().set(packet.getMessageDestinationId());
-        log.info("Allocated client id is: " + userState.getUserIdOfClientAllocatedByServer());
+        userState.recordEvent(JournalEvent.ID_ASSIGNED, 0, 0);
+        userState.signalStateChanged();
 
-        System.out.println("=======> YOU HAVE BEEN ASSIGNED THIS ID: " + userState.getUserIdOfClientAllocatedByServer());
-
-        log.info("Execution of acceptSourceIDFromServer ended");
+        if (PRINT_MESSAGES) {
+            System.out.println("=======> YOU HAVE BEEN ASSIGNED THIS ID: " + userState.getUserIdOfClientAllocatedByServer());
+        }
     }
 
 
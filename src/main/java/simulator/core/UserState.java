@@ -1,25 +1,26 @@
 package simulator.core;
 
 import com.domain.Packet;
-import com.google.common.primitives.Bytes;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.journal.EventJournal;
+import simulator.journal.JournalEvent;
 import simulator.load.LoadSimulator;
+import simulator.metrics.Metrics;
 import simulator.properties.Constants;
-import simulator.utility.UtilityClass;
+import simulator.schedule.DestinationTarget;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-
-import static java.lang.System.exit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class manages state of the user
@@ -33,8 +34,12 @@ import static java.lang.System.exit;
 @Slf4j
 @AllArgsConstructor
 public class UserState {
+    //shared between different threads
+    private static final AtomicInteger clientNumbers = new AtomicInteger(0);
 
-
+    //local number of the client, known before server assigns an id
+    @Getter
+    private final int clientNumber = clientNumbers.incrementAndGet();
 
     @Getter
     private final AtomicBoolean loggedInFlag = new AtomicBoolean(false);
@@ -45,17 +50,142 @@ public class UserState {
     @Getter
     private final AtomicInteger userIdOfClientAllocatedByServer = new AtomicInteger(0);
 
-    private final Random randomGenerator = new Random();
+    //written by the sending thread of this user only
+    private final DestinationSequences destinationSequences =
+            new DestinationSequences(LoadSimulator.getPeerDirectory());
+
+    @Getter
+    private final AtomicReference<ConnectionState> connectionState = new AtomicReference<>(ConnectionState.NEW);
+
+    //used instead of monitors so waiting virtual threads do not pin their carrier
+    private final Lock stateLock = new ReentrantLock();
+    private final Condition stateChanged = stateLock.newCondition();
+
+    /**
+     * This method returns sequence number for next DATA
+     * packet to given destination. Every destination gets
+     * its own sequence, so receiver can check it has got all
+     * messages this user has sent to it
+     *
+     * @param destinationId id of the receiver
+     * @return sequence number
+     */
+
+    public long nextSequenceNumber(int destinationId) {
+        return destinationSequences.next(destinationId);
+    }
+
+    /**
+     * This method moves the user to a new state of its
+     * connection and keeps the state gauge up to date. Once
+     * closed a user does not move anymore
+     *
+     * @param newState state user is in from now on
+     */
+
+    public void moveTo(ConnectionState newState) {
+        ConnectionState oldState;
+        do {
+            oldState = connectionState.get();
+            if (oldState == ConnectionState.CLOSED) {
+                return;
+            }
+        } while (!connectionState.compareAndSet(oldState, newState));
+        Metrics.getConnectionStates().transition(oldState, newState);
+    }
+
+    /**
+     * This method wakes up every thread which waits for
+     * the id or the login of this user
+     */
+
+    public void signalStateChanged() {
+        stateLock.lock();
+        try {
+            stateChanged.signalAll();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * This method blocks until server has assigned an id
+     * or the connection of this user has been closed
+     *
+     * @return true if id is assigned, false if closed before
+     * @throws InterruptedException if waiting thread is interrupted
+     */
+
+    public boolean awaitUserIdAllocated() throws InterruptedException {
+        stateLock.lock();
+        try {
+            while (userIdOfClientAllocatedByServer.get() == 0) {
+                if (connectionState.get() == ConnectionState.CLOSED) {
+                    return false;
+                }
+                stateChanged.await();
+            }
+            return true;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * This method blocks until server has accepted the login
+     * or the connection of this user has been closed
+     *
+     * @return true if logged in, false if closed before
+     * @throws InterruptedException if waiting thread is interrupted
+     */
+
+    public boolean awaitLoggedIn() throws InterruptedException {
+        stateLock.lock();
+        try {
+            while (!loggedInFlag.get()) {
+                if (connectionState.get() == ConnectionState.CLOSED) {
+                    return false;
+                }
+                stateChanged.await();
+            }
+            return true;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * This method records an event of this user in the journal
+     * of calling thread. Id assigned by server is the detail
+     *
+     * @param event what happened
+     * @param size  size named by the event
+     * @param value value named by the event
+     */
+
+    public void recordEvent(JournalEvent event, int size, long value) {
+        EventJournal.record(event, clientNumber, size, userIdOfClientAllocatedByServer.get(), value);
+    }
+
+    /**
+     * This method takes the user out of the peer directory
+     * once it has logged out or lost its connection, so
+     * nobody picks it as destination anymore
+     */
+
+    public void leavePeerDirectory() {
+        if (loggedInFlag.getAndSet(false)) {
+            LoadSimulator.getPeerDirectory().remove(userIdOfClientAllocatedByServer.get());
+        }
+    }
+
     /**
      * This class initiates login process for the
      * user.
      */
 
-    protected byte [] initiateLoginProcess(SocketChannel socketChannel) {
-        log.info("Execution of initiateLoginProcess started");
-        log.info("Calling loginLogoutMenu method");
+    protected Packet initiateLoginProcess(SocketChannel socketChannel) {
         loginLogoutMenu();
-        log.info("Calling loggingInTheChatApplication method");
         return loggingInTheChatApplication(socketChannel);
     }
 
@@ -79,10 +209,8 @@ public class UserState {
      *
      */
 
-    private byte[] loggingInTheChatApplication(SocketChannel socketChannel) {
-        log.info("Execution of loggingInTheChatApplication started");
-        log.info("Calling chatMessageBuilder method");
-        return getBytesArrayFromPacket(getLoginPacket(this));
+    private Packet loggingInTheChatApplication(SocketChannel socketChannel) {
+        return getLoginPacket(this);
 
     }
 
@@ -106,14 +234,43 @@ public class UserState {
      */
 
     public Packet getMessageToSend() {
-        //critical section
-        int randomElementIndex = randomGenerator.nextInt(LoadSimulator.getClientsConnectedToUser().size()) ;
-        Integer destinationId = LoadSimulator.getClientsConnectedToUser().get(randomElementIndex);
-        //critical section
+        int destinationId = nextDestinationId();
+        String message = LoadSimulator.getMessageContent().messageFor(destinationId);
+        return Packet.builder().magicBytes(magicNumberAssignedByServer.get()).messageType(MessageType.DATA).
+                messageSourceId(userIdOfClientAllocatedByServer.get()).messageDestinationId(destinationId).
+                messageLength(message.length()).message(message).build();
 
-        String message = destinationId+"| This is message from source with Id "+destinationId;
-        return getMessagePacket(message, this);
+    }
 
+    /**
+     * This method picks whom next message is sent to
+     *
+     * @return id of this user or of a random logged in peer
+     */
+
+    public int nextDestinationId() {
+        return LoadSimulator.getMessageContent().getDestinationTarget() == DestinationTarget.SELF
+                ? userIdOfClientAllocatedByServer.get() : LoadSimulator.getPeerDirectory().randomPeer();
+    }
+
+    /**
+     * This method writes next message from a pre-encoded template,
+     * which only patches header fields and latency prefix
+     *
+     * @param frameTemplate      template of the current payload profile
+     * @param textLength         bytes of message text drawn for this message
+     * @param target             buffer with enough bytes remaining
+     * @param sendTimestampNanos time the message is meant to be sent
+     */
+
+    public void writeMessageFromTemplate(FrameTemplate frameTemplate, int textLength, ByteBuffer target,
+                                         long sendTimestampNanos) {
+        int destinationId = nextDestinationId();
+        long sequence = frameTemplate.hasLatencyPrefix() ? nextSequenceNumber(destinationId) : 0;
+        frameTemplate.writeTo(target, textLength, magicNumberAssignedByServer.get(),
+                userIdOfClientAllocatedByServer.get(), destinationId, sendTimestampNanos, sequence);
+        EventJournal.record(JournalEvent.DATA_SENT, clientNumber, frameTemplate.getFrameLength(textLength),
+                destinationId, sequence);
     }
 
     /**
@@ -125,23 +282,7 @@ public class UserState {
      */
 
     public Packet getPacketFromByteArray(byte[] message) {
-        log.info("Execution of convertByteArrayIntoPacket method started");
-
-        int magicBytes = UtilityClass.getIntFromByteArray(message, Constants.START_OF_MAGIC_BYTES_INCLUSIVE, Constants.END_OF_MAGIC_BYTES_EXCLUSIVE);
-
-        String messageTypeValue = UtilityClass.getStringFromByteArray(message, Constants.START_OF_MESSAGE_TYPE_INCLUSIVE, Constants.END_OF_MESSAGE_TYPE_EXCLUSIVE);
-        MessageType messageType = MessageType.fromTextGetMessageType(messageTypeValue).get();
-
-        int sourceId = UtilityClass.getIntFromByteArray(message, Constants.START_OF_SOURCE_ID_INCLUSIVE, Constants.END_OF_SOURCE_ID_EXCLUSIVE);
-        int destId = UtilityClass.getIntFromByteArray(message, Constants.START_OF_DEST_ID_INCLUSIVE, Constants.END_OF_DEST_ID_EXCLUSIVE);
-
-        int messageLength = UtilityClass.getIntFromByteArray(message, Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE, Constants.END_OF_MESSAGE_LENGTH_EXCLUSIVE);
-        String messageOfClient = UtilityClass.getStringFromByteArray(message, Constants.START_OF_MESSAGE_INCLUSIVE, Constants.START_OF_MESSAGE_INCLUSIVE+messageLength);
-
-        log.info("Execution of convertByteArrayIntoPacket method ended");
-
-        return Packet.builder().magicBytes(magicBytes).messageType(messageType).messageSourceId(sourceId).messageDestinationId(destId)
-                .messageLength(messageLength).message(messageOfClient).build();
+        return new PacketView().wrap(ByteBuffer.wrap(message), 0).toPacket();
 
     }
 
@@ -153,8 +294,6 @@ public class UserState {
      */
 
     public Packet getLoginPacket(UserState userState) {
-        log.info("Execution of loggingInTheChatApplication completed");
-        log.info("Returning login packet message");
 
         return Packet.builder().magicBytes(userState.getMagicNumberAssignedByServer().get()).
                 messageType(MessageType.LOGIN).messageSourceId(userState.getUserIdOfClientAllocatedByServer().get()).
@@ -171,33 +310,11 @@ public class UserState {
      */
 
     public byte[] getBytesArrayFromPacket(Packet packet) {
-        log.info("Calling convertMessagePacketIntoTheByteArray method");
-        log.info("Execution of convertMessagePacketIntoTheByteArray method started");
-
-        List<Byte> byteArrayList = new ArrayList<>();
-
-        byteArrayList.addAll(Bytes.asList(ByteBuffer.allocate(4).putInt(packet.getMagicBytes()).array()));
-        byteArrayList.addAll(Bytes.asList(packet.getMessageType().getMessageCode().getBytes()));
-
-        byte bytes [] = new byte[2];
-        bytes[0] = byteArrayList.get(4);
-        bytes[1] = byteArrayList.get(5);
-
-        if (new String(bytes).equals("T")){
-            System.out.println("Umaaaaaaaaaaaaaaaar "+new String(bytes));
-            exit(0);
-        }
-
-
-        byteArrayList.addAll(Bytes.asList(ByteBuffer.allocate(4).putInt(packet.getMessageSourceId()).array()));
-        byteArrayList.addAll(Bytes.asList(ByteBuffer.allocate(4).putInt(packet.getMessageDestinationId()).array()));
-        byteArrayList.addAll(Bytes.asList(ByteBuffer.allocate(4).putInt(packet.getMessageLength()).array()));
-        byteArrayList.addAll(Bytes.asList(packet.getMessage().getBytes()));
 
-        log.info("returning bytes array");
-        log.info("Execution of convertMessagePacketIntoTheByteArray method ended");
+        byte[] messageInBytes = new byte[PacketEncoder.encodedLength(packet)];
+        PacketEncoder.encode(packet, ByteBuffer.wrap(messageInBytes));
 
-        return Bytes.toArray(byteArrayList);
+        return messageInBytes;
 
     }
 
@@ -209,7 +326,6 @@ public class UserState {
      */
 
     public Packet getMessagePacket(String message, UserState userState) {
-        log.info("Execution of getMessagePacket started");
         String[] parts = message.split("\\|");
 
         return Packet.builder().magicBytes(userState.getMagicNumberAssignedByServer().get()).messageType(MessageType.DATA).
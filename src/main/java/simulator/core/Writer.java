@@ -3,10 +3,19 @@ package simulator.core;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import com.domain.Packet;
+import simulator.capture.TrafficCapture;
+import simulator.journal.EventJournal;
+import simulator.journal.JournalEvent;
+import simulator.load.LoadSimulator;
+import simulator.metrics.Metrics;
+import simulator.properties.SimulatorProperties;
+import simulator.schedule.MessageContent;
+import simulator.schedule.SendSchedule;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -21,9 +30,18 @@ import java.nio.channels.SocketChannel;
 
 @Slf4j
 @RequiredArgsConstructor
-public class Writer extends Thread {
+public class Writer implements Runnable {
+    private static final int INITIAL_WRITE_BUFFER_SIZE = 1024;
+    //largest write buffer a writer keeps, larger frames are written from a buffer of their own
+    private static final int MAX_KEPT_WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final boolean LATENCY_MODE = SimulatorProperties.isLatencyMode();
+    private static final long SOCKET_FULL_BACKOFF_NANOS = 50_000;
     private final SocketChannel clientSocketChannel;
     private final UserState userState;
+    private ByteBuffer keptWriteBuffer = ByteBuffer.allocateDirect(INITIAL_WRITE_BUFFER_SIZE);
+    private ByteBuffer messageToServerBuffer = keptWriteBuffer;
+    private long intendedSendNanos;
+    private boolean sendingStarted;
 
 
     /**
@@ -35,18 +53,19 @@ public class Writer extends Thread {
 
     @Override
     public void run() {
-        log.info("Execution of writer thread started");
 
         try {
 
-            log.info("Calling initiateRequestToServerFlow() method");
             initiateRequestToServerFlow();
 
         } catch (Exception exception) {
             log.error("Error occurred while trying to send message to server ");
             log.error("Exception Occurred ", exception);
             log.error("Closing writer thread");
-            exception.printStackTrace();
+            userState.recordEvent(JournalEvent.ERROR, 0, 0);
+            Metrics.getErrors().increment();
+        } finally {
+            EventJournal.threadEnded();
         }
     }
 
@@ -56,81 +75,206 @@ public class Writer extends Thread {
      * message. Otherwise initiate login process.
      */
     public void initiateRequestToServerFlow() throws InterruptedException {
-        log.info("Execution of initiateRequestToServerFlow method started");
+
+        if (!userState.awaitUserIdAllocated()) {
+            return;
+        }
 
         while (clientSocketChannel.isOpen()) {
-            log.info("Client socket channel is open checking user id of client assigned by server");
             if(userState.getUserIdOfClientAllocatedByServer().get() != 0){
                 if (userState.getLoggedInFlag().get()) {
-                    log.info("User is logged in");
-                    log.info("Calling startSendingMessagesToServer() method");
                     startSendingMessagesToServer();
                 } else {
-                    log.info("User is not logged in");
-                    log.info("Calling initiateLoginProcess() method");
-                    byte [] message = userState.initiateLoginProcess(clientSocketChannel);
-                    writingMessageToServer(message);
-                    waitingForLoginResponseFromServer();
+                    Packet loginPacket = userState.initiateLoginProcess(clientSocketChannel);
+                    int bytes = writingMessageToServer(loginPacket);
+                    userState.recordEvent(JournalEvent.LOGIN_SENT, bytes, 0);
+                    if (!waitingForLoginResponseFromServer()) {
+                        break;
+                    }
 
                 }
             }
         }
-        log.info("Execution of initiateRequestToServerFlow method ended");
+        if (sendingStarted) {
+            LoadSimulator.getSendSchedule().senderStopped();
+        }
     }
 
-    private void waitingForLoginResponseFromServer() throws InterruptedException {
-        log.info("Execution of waitingForLoginResponseFromServer started");
+    private boolean waitingForLoginResponseFromServer() throws InterruptedException {
 
-        synchronized (userState.getLoggedInFlag()){
-            while(!userState.getLoggedInFlag().get()){
-                userState.getLoggedInFlag().wait();
-            }
-        }
+        return userState.awaitLoggedIn();
 
-        log.info("Execution of waitingForLoginResponseFromServer ended");
     }
 
     /**
      * This method starts sending message to server.
-     * It will take input and converts it into byte []
-     * array and than send message to server
+     * In case a send rate is configured we first wait
+     * until intended time of this message has come.
+     * Only picking the destination is done under the
+     * shared lock, the write itself is not serialized
      */
 
     private void startSendingMessagesToServer() {
-        synchronized (Writer.class) {
-            log.info("Execution of startSendingMessagesToServer method started");
-            log.info("Calling takeAndAnalyzeUserInput method");
+        SendSchedule sendSchedule = LoadSimulator.getSendSchedule();
+
+        if (!sendingStarted) {
+            sendingStarted = true;
+            sendSchedule.senderStarted();
+            intendedSendNanos = sendSchedule.nextIntendedSendNanos(System.nanoTime());
+        }
+
+        long sendTimestampNanos;
+        if (sendSchedule.isRateControlled()) {
+            waitingForIntendedSendTime();
+            sendTimestampNanos = intendedSendNanos;
+            intendedSendNanos = sendSchedule.nextIntendedSendNanos(intendedSendNanos);
+        } else {
+            sendTimestampNanos = System.nanoTime();
+        }
+
+        MessageContent messageContent = LoadSimulator.getMessageContent();
+        FrameTemplate frameTemplate = messageContent.getFrameTemplate();
+        if (frameTemplate != null) {
+            writingMessageFromTemplate(frameTemplate, messageContent.nextTextLength(frameTemplate),
+                    sendTimestampNanos);
+        } else {
             Packet packet = userState.getMessageToSend();
 
-            log.info("Calling writingMessageToServer method");
-            writingMessageToServer(userState.getBytesArrayFromPacket(packet));
-            log.info("Execution of startSendingMessagesToServer method started");
+            writingMessageToServer(packet, sendTimestampNanos);
         }
+        Metrics.getMessagesSent().increment();
     }
 
-    public int writingMessageToServer(byte[] messagePacketInBytes) {
-        log.info("Execution of writingMessageToServer started");
-        int bytes = 0;
+    /**
+     * This method parks the writer until intended send time
+     * of next message. If we are already late we send at once
+     * so the schedule is caught up
+     */
 
-        log.info("Creating buffer with allocation of private backend space with size {}", messagePacketInBytes.length);
-        ByteBuffer messageToServerBuffer = ByteBuffer.allocate(messagePacketInBytes.length);
-        messageToServerBuffer.put(messagePacketInBytes);
+    private void waitingForIntendedSendTime() {
+        long nanosToWait;
+        while ((nanosToWait = intendedSendNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(nanosToWait);
+        }
+    }
+
+    /**
+     * This method encodes packet into the buffer this writer
+     * reuses for every message and sends it to the server.
+     * Buffer only grows when a packet does not fit in it.
+     *
+     * @param packet which needs to be sent
+     * @return number of bytes written
+     */
+
+    public int writingMessageToServer(Packet packet) {
+        return encodingAndSendingToServer(packet, System.nanoTime());
+    }
+
+    /**
+     * This method sends DATA packet to the server. In latency mode
+     * send timestamp and sequence number are put in front of the
+     * message so receiver can measure its delay
+     *
+     * @param packet             which needs to be sent
+     * @param sendTimestampNanos time the message is meant to be sent
+     * @return number of bytes written
+     */
+
+    public int writingMessageToServer(Packet packet, long sendTimestampNanos) {
+        long sendStartedNanos = System.nanoTime();
+        int bytes;
+        long sequence = 0;
+        if (LATENCY_MODE) {
+            sequence = userState.nextSequenceNumber(packet.getMessageDestinationId());
+            prepareWriteBuffer(PacketEncoder.encodedLengthWithTimestamp(packet));
+            PacketEncoder.encodeWithTimestamp(packet, sendTimestampNanos, sequence, messageToServerBuffer);
+            bytes = sendingWriteBufferToServer(sendTimestampNanos);
+        } else {
+            bytes = encodingAndSendingToServer(packet, sendTimestampNanos);
+        }
+        long sendEndedNanos = System.nanoTime();
+        Metrics.getSendCallDuration().record(sendEndedNanos - sendStartedNanos);
+        EventJournal.recordAt(sendEndedNanos, JournalEvent.DATA_SENT, userState.getClientNumber(), bytes,
+                packet.getMessageDestinationId(), sequence);
+        return bytes;
+    }
+
+    /**
+     * This method sends DATA message copied from the template of
+     * the current payload profile, only header fields and latency
+     * prefix are written per message
+     *
+     * @param frameTemplate      template of the current payload profile
+     * @param textLength         bytes of message text drawn for this message
+     * @param sendTimestampNanos time the message is meant to be sent
+     * @return number of bytes written
+     */
+
+    public int writingMessageFromTemplate(FrameTemplate frameTemplate, int textLength, long sendTimestampNanos) {
+        long sendStartedNanos = System.nanoTime();
+        prepareWriteBuffer(frameTemplate.getFrameLength(textLength));
+        userState.writeMessageFromTemplate(frameTemplate, textLength, messageToServerBuffer, sendTimestampNanos);
+        int bytes = sendingWriteBufferToServer(sendTimestampNanos);
+        Metrics.getSendCallDuration().record(System.nanoTime() - sendStartedNanos);
+        return bytes;
+    }
+
+    private int encodingAndSendingToServer(Packet packet, long sendTimestampNanos) {
+        prepareWriteBuffer(PacketEncoder.encodedLength(packet));
+        PacketEncoder.encode(packet, messageToServerBuffer);
+        return sendingWriteBufferToServer(sendTimestampNanos);
+    }
+
+    /**
+     * Kept write buffer grows up to {@link #MAX_KEPT_WRITE_BUFFER_SIZE}.
+     * A larger frame gets a direct buffer which is dropped once it has
+     * been sent, so a writer does not hold on to its largest frame
+     */
+
+    private void prepareWriteBuffer(int frameLength) {
+        if (keptWriteBuffer.capacity() < frameLength && frameLength <= MAX_KEPT_WRITE_BUFFER_SIZE) {
+            keptWriteBuffer = ByteBuffer.allocateDirect(frameLength);
+        }
+        messageToServerBuffer = keptWriteBuffer.capacity() < frameLength
+                ? ByteBuffer.allocateDirect(frameLength) : keptWriteBuffer;
+        messageToServerBuffer.clear();
+    }
+
+    /**
+     * This method writes the whole frame. Channel is non blocking
+     * so when its send buffer is full we back off and try again
+     * instead of dropping rest of the frame
+     *
+     * @param sendTimestampNanos time the frame is meant to be sent
+     * @return number of bytes written
+     */
+
+    private int sendingWriteBufferToServer(long sendTimestampNanos) {
+        int bytes = 0;
         messageToServerBuffer.flip();
+        TrafficCapture.frameSent(sendTimestampNanos, userState.getClientNumber(), messageToServerBuffer, 0,
+                messageToServerBuffer.limit());
 
-        log.info("Sending message to the server");
         try {
-            bytes = clientSocketChannel.write(messageToServerBuffer);
+            while (messageToServerBuffer.hasRemaining() && clientSocketChannel.isOpen()) {
+                int written = clientSocketChannel.write(messageToServerBuffer);
+                bytes += written;
+                if (written == 0) {
+                    EventJournal.record(JournalEvent.SOCKET_FULL, userState.getClientNumber(),
+                            messageToServerBuffer.remaining(), 0, 0);
+                    LockSupport.parkNanos(SOCKET_FULL_BACKOFF_NANOS);
+                }
+            }
 
         } catch (IOException e) {
-            log.error("Error sending message");
-            e.printStackTrace();
+            log.error("Error sending message ", e);
+            userState.recordEvent(JournalEvent.ERROR, 0, 0);
+            Metrics.getErrors().increment();
         }
+        Metrics.getBytesSent().add(bytes);
+        messageToServerBuffer = keptWriteBuffer;
 
-        log.info("Message sent to server");
-        log.info("Clearing the buffer");
-        messageToServerBuffer.clear();
-
-        log.info("Execution of sendMessageToServer ended");
         return bytes;
     }
 }
@@ -0,0 +1,22 @@
+package simulator.distributed;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import simulator.metrics.CounterSnapshot;
+import simulator.metrics.HistogramSnapshot;
+
+/**
+ * This class is what one agent measured in one interval. Samples
+ * of all agents with the same sequence cover the same interval
+ * because all agents start together and use the same interval
+ */
+
+@Getter
+@AllArgsConstructor
+public class AgentSample {
+    //0 for first interval after start
+    private final int sequence;
+    private final long intervalNanos;
+    private final CounterSnapshot counters;
+    private final HistogramSnapshot latency;
+}
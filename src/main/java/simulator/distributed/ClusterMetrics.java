@@ -0,0 +1,137 @@
+package simulator.distributed;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.metrics.CounterSnapshot;
+import simulator.metrics.HistogramSnapshot;
+import simulator.metrics.IntervalReporter;
+import simulator.metrics.IntervalSample;
+import simulator.metrics.TimeSeriesWriter;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class merges samples of all agents into samples of the
+ * whole cluster. Counters are added and latency histograms are
+ * merged bucket by bucket, so cluster percentiles are exact and
+ * not an average of percentiles of the agents.
+ * <p>
+ * An interval is reported once every agent which is still
+ * running has sent its sample for it. Agents which finished or
+ * were lost are not waited for.
+ */
+
+@Slf4j
+public class ClusterMetrics {
+    private final int agents;
+    private final TimeSeriesWriter timeSeriesWriter;
+    private final BitSet runningAgents = new BitSet();
+    private final TreeMap<Integer, PendingInterval> pendingIntervals = new TreeMap<>();
+
+    private long elapsedNanos;
+    private CounterSnapshot total = CounterSnapshot.empty();
+    private HistogramSnapshot totalLatency = HistogramSnapshot.empty();
+
+    /**
+     * @param agents           number of agents of the run
+     * @param timeSeriesWriter file to write every cluster interval to or null
+     */
+
+    public ClusterMetrics(int agents, TimeSeriesWriter timeSeriesWriter) {
+        this.agents = agents;
+        this.timeSeriesWriter = timeSeriesWriter;
+        this.runningAgents.set(0, agents);
+    }
+
+    public synchronized void add(int agentIndex, AgentSample agentSample) {
+        pendingIntervals.computeIfAbsent(agentSample.getSequence(), sequence -> new PendingInterval())
+                .add(agentIndex, agentSample);
+        reportCompleteIntervals();
+    }
+
+    /**
+     * This method stops waiting for samples of an agent
+     * which has finished or whose connection has been lost
+     *
+     * @param agentIndex index of the agent
+     */
+
+    public synchronized void finish(int agentIndex) {
+        runningAgents.clear(agentIndex);
+        reportCompleteIntervals();
+    }
+
+    /**
+     * This method prints totals and latency of the
+     * whole cluster over the whole run
+     */
+
+    public synchronized void printReport() {
+        System.out.println("=========== Cluster report (" + agents + " agents) ===========");
+        System.out.println(totalLatency.toSummary("End to end latency"));
+        System.out.printf("Messages sent: %d, received: %d, bytes sent: %d, received: %d%n",
+                total.getMessagesSent(), total.getMessagesReceived(), total.getBytesSent(), total.getBytesReceived());
+        System.out.printf("Connects: %d, failed: %d, logins: %d, errors: %d%n", total.getConnectsEstablished(),
+                total.getConnectsFailed(), total.getLoginsCompleted(), total.getErrors());
+        if (totalLatency.getTotalCount() > 0) {
+            System.out.println(total.toDeliveryReport());
+        }
+
+        if (timeSeriesWriter != null) {
+            try {
+                timeSeriesWriter.close();
+            } catch (IOException exception) {
+                log.error("Could not close time series file ", exception);
+            }
+        }
+    }
+
+    private void reportCompleteIntervals() {
+        Map.Entry<Integer, PendingInterval> oldest;
+        while ((oldest = pendingIntervals.firstEntry()) != null && oldest.getValue().isComplete()) {
+            pendingIntervals.pollFirstEntry();
+            report(oldest.getValue());
+        }
+    }
+
+    private void report(PendingInterval pendingInterval) {
+        elapsedNanos += pendingInterval.intervalNanos;
+        total = total.plus(pendingInterval.counters);
+        totalLatency = totalLatency.merge(pendingInterval.latency);
+
+        IntervalSample sample = new IntervalSample(System.currentTimeMillis(), elapsedNanos,
+                pendingInterval.intervalNanos, pendingInterval.counters, total, pendingInterval.latency);
+        System.out.println("cluster(" + pendingInterval.reportedAgents.cardinality() + "/" + agents + ") "
+                + IntervalReporter.toLine(sample));
+        if (timeSeriesWriter != null) {
+            try {
+                timeSeriesWriter.write(sample);
+            } catch (IOException exception) {
+                log.error("Could not write time series sample ", exception);
+            }
+        }
+    }
+
+    private final class PendingInterval {
+        private final BitSet reportedAgents = new BitSet();
+        private long intervalNanos;
+        private CounterSnapshot counters = CounterSnapshot.empty();
+        private HistogramSnapshot latency = HistogramSnapshot.empty();
+
+        private void add(int agentIndex, AgentSample agentSample) {
+            reportedAgents.set(agentIndex);
+            //agents measure the same interval on their own clocks
+            intervalNanos = Math.max(intervalNanos, agentSample.getIntervalNanos());
+            counters = counters.plus(agentSample.getCounters());
+            latency = latency.merge(agentSample.getLatency());
+        }
+
+        private boolean isComplete() {
+            BitSet missingAgents = (BitSet) runningAgents.clone();
+            missingAgents.andNot(reportedAgents);
+            return missingAgents.isEmpty();
+        }
+    }
+}
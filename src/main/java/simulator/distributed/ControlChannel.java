@@ -0,0 +1,189 @@
+package simulator.distributed;
+
+import simulator.metrics.CounterSnapshot;
+import simulator.metrics.HistogramSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is one end of a control connection between
+ * coordinator and an agent.
+ * <p>
+ * Every message is one byte of {@link ControlMessageType}
+ * followed by the fields of that type in big endian order.
+ * Strings are written as modified UTF-8. Control traffic is a
+ * few messages per second, so it runs on a plain blocking socket.
+ * <p>
+ * Sending is synchronized, so samples can be sent from the
+ * reporter thread while the main thread sends other messages.
+ * Reading is meant for one thread only.
+ */
+
+public class ControlChannel implements Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_SCENARIO_LINES = 100_000;
+
+    private final Socket socket;
+    private final DataInputStream input;
+    private final DataOutputStream output;
+
+    public ControlChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public static ControlChannel connect(InetSocketAddress coordinatorAddress) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(coordinatorAddress, CONNECT_TIMEOUT_MILLIS);
+            return new ControlChannel(socket);
+        } catch (IOException exception) {
+            socket.close();
+            throw exception;
+        }
+    }
+
+    public synchronized void sendHello(String agentName) throws IOException {
+        output.writeByte(ControlMessageType.HELLO.getCode());
+        output.writeUTF(agentName);
+        output.flush();
+    }
+
+    public synchronized void sendScenario(ScenarioAssignment scenarioAssignment) throws IOException {
+        output.writeByte(ControlMessageType.SCENARIO.getCode());
+        output.writeInt(scenarioAssignment.getAgentIndex());
+        output.writeInt(scenarioAssignment.getAgents());
+        output.writeLong(scenarioAssignment.getReportIntervalMillis());
+        output.writeInt(scenarioAssignment.getScenarioLines().size());
+        for (String line : scenarioAssignment.getScenarioLines()) {
+            output.writeUTF(line);
+        }
+        output.flush();
+    }
+
+    public synchronized void sendReady() throws IOException {
+        output.writeByte(ControlMessageType.READY.getCode());
+        output.flush();
+    }
+
+    public synchronized void sendStart(long delayMillis) throws IOException {
+        output.writeByte(ControlMessageType.START.getCode());
+        output.writeLong(delayMillis);
+        output.flush();
+    }
+
+    public synchronized void sendSample(AgentSample agentSample) throws IOException {
+        output.writeByte(ControlMessageType.SAMPLE.getCode());
+        output.writeInt(agentSample.getSequence());
+        output.writeLong(agentSample.getIntervalNanos());
+        agentSample.getCounters().write(output);
+        agentSample.getLatency().writeSparse(output);
+        output.flush();
+    }
+
+    public synchronized void sendFinished() throws IOException {
+        output.writeByte(ControlMessageType.FINISHED.getCode());
+        output.flush();
+    }
+
+    public synchronized void sendAbort(String reason) throws IOException {
+        output.writeByte(ControlMessageType.ABORT.getCode());
+        output.writeUTF(reason == null ? "" : reason);
+        output.flush();
+    }
+
+    /**
+     * This method blocks until next message arrives and returns
+     * its type. Fields of the message need to be read with the
+     * read method of that type before reading next type
+     *
+     * @return type of next message
+     * @throws IOException if connection is closed or type is unknown
+     */
+
+    public ControlMessageType readType() throws IOException {
+        int code = input.read();
+        if (code < 0) {
+            throw new EOFException("Control connection closed by " + socket.getRemoteSocketAddress());
+        }
+        return ControlMessageType.fromCode(code)
+                .orElseThrow(() -> new IOException("Unknown control message " + code));
+    }
+
+    /**
+     * This method reads next message and fails if it is not of
+     * the expected type. ABORT is reported with its reason
+     *
+     * @param expectedType type which has to come next
+     * @throws IOException if another message arrived
+     */
+
+    public void expect(ControlMessageType expectedType) throws IOException {
+        ControlMessageType controlMessageType = readType();
+        if (controlMessageType == ControlMessageType.ABORT) {
+            throw new IOException("Aborted by " + socket.getRemoteSocketAddress() + ": " + readAbortReason());
+        }
+        if (controlMessageType != expectedType) {
+            throw new IOException("Expected " + expectedType + " but got " + controlMessageType);
+        }
+    }
+
+    public String readHello() throws IOException {
+        return input.readUTF();
+    }
+
+    public ScenarioAssignment readScenario() throws IOException {
+        int agentIndex = input.readInt();
+        int agents = input.readInt();
+        long reportIntervalMillis = input.readLong();
+        int numberOfLines = input.readInt();
+        if (agents <= 0 || agentIndex < 0 || agentIndex >= agents
+                || reportIntervalMillis <= 0 || numberOfLines < 0 || numberOfLines > MAX_SCENARIO_LINES) {
+            throw new IOException("Invalid scenario assignment " + agentIndex + "/" + agents
+                    + " with " + numberOfLines + " lines");
+        }
+
+        List<String> scenarioLines = new ArrayList<>(numberOfLines);
+        for (int i = 0; i < numberOfLines; i++) {
+            scenarioLines.add(input.readUTF());
+        }
+        return new ScenarioAssignment(agentIndex, agents, reportIntervalMillis, scenarioLines);
+    }
+
+    public long readStartDelay() throws IOException {
+        return input.readLong();
+    }
+
+    public AgentSample readSample() throws IOException {
+        int sequence = input.readInt();
+        long intervalNanos = input.readLong();
+        CounterSnapshot counters = CounterSnapshot.read(input);
+        HistogramSnapshot latency = HistogramSnapshot.readSparse(input);
+        return new AgentSample(sequence, intervalNanos, counters, latency);
+    }
+
+    public String readAbortReason() throws IOException {
+        return input.readUTF();
+    }
+
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
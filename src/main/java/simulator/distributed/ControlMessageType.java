@@ -0,0 +1,46 @@
+package simulator.distributed;
+
+import java.util.Optional;
+
+/**
+ * This enum represents messages of the control protocol between
+ * coordinator and agents.
+ * <p>
+ * HELLO is sent by an agent once it has connected.
+ * SCENARIO gives the agent its index, number of agents and the
+ * lines of the scenario file.
+ * READY tells that the scenario has been parsed.
+ * START tells agents how many milliseconds from now to start.
+ * SAMPLE carries counters and latency histogram of one interval.
+ * FINISHED is sent by an agent after its last sample.
+ * ABORT carries a reason and ends the run in either direction.
+ */
+
+public enum ControlMessageType {
+    HELLO(1),
+    SCENARIO(2),
+    READY(3),
+    START(4),
+    SAMPLE(5),
+    FINISHED(6),
+    ABORT(7);
+
+    private final int code;
+
+    ControlMessageType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static Optional<ControlMessageType> fromCode(int code) {
+        for (ControlMessageType controlMessageType : values()) {
+            if (controlMessageType.code == code) {
+                return Optional.of(controlMessageType);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,155 @@
+package simulator.distributed;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.metrics.TimeSeriesWriter;
+import simulator.scenario.Scenario;
+import simulator.scenario.ScenarioParser;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class drives a scenario from several agent processes,
+ * which can run on several machines when one machine runs out
+ * of ports, file descriptors or CPU.
+ * <p>
+ * Coordinator waits until all agents have connected, sends every
+ * agent the scenario together with its index, waits until all of
+ * them have parsed it and then tells all of them to start after
+ * the same delay. Every agent runs its share of users and rate
+ * and sends its samples, which are merged into cluster samples.
+ */
+
+@Slf4j
+public class LoadCoordinator {
+    private static final long START_DELAY_MILLIS = 2000;
+
+    private final List<String> scenarioLines;
+    private final int agents;
+    private final int controlPort;
+    private final long reportIntervalMillis;
+    private final TimeSeriesWriter timeSeriesWriter;
+
+    /**
+     * @param scenarioLines        lines of the scenario file
+     * @param agents               number of agents to wait for
+     * @param controlPort          port agents connect to
+     * @param reportIntervalMillis interval of samples
+     * @param timeSeriesWriter     file to write cluster samples to or null
+     * @throws IllegalArgumentException if scenario is not valid
+     */
+
+    public LoadCoordinator(List<String> scenarioLines, int agents, int controlPort, long reportIntervalMillis,
+                           TimeSeriesWriter timeSeriesWriter) {
+        Scenario scenario = ScenarioParser.parse(scenarioLines);
+        log.info("Coordinating scenario with {} phases on {} agents", scenario.getPhases().size(), agents);
+        this.scenarioLines = scenarioLines;
+        this.agents = agents;
+        this.controlPort = controlPort;
+        this.reportIntervalMillis = reportIntervalMillis;
+        this.timeSeriesWriter = timeSeriesWriter;
+    }
+
+    /**
+     * This method runs the scenario on all agents and
+     * returns once every agent has finished or was lost
+     *
+     * @throws IOException          if control port can not be bound or an agent fails before start
+     * @throws InterruptedException if run is interrupted
+     */
+
+    public void run() throws IOException, InterruptedException {
+        List<ControlChannel> controlChannels = new ArrayList<>(agents);
+        try {
+            try (ServerSocket serverSocket = new ServerSocket(controlPort)) {
+                System.out.printf("Waiting for %d agents on port %d%n", agents, serverSocket.getLocalPort());
+                while (controlChannels.size() < agents) {
+                    ControlChannel controlChannel = new ControlChannel(serverSocket.accept());
+                    controlChannels.add(controlChannel);
+                    controlChannel.expect(ControlMessageType.HELLO);
+                    System.out.printf("Agent %d/%d connected: %s from %s%n", controlChannels.size(), agents,
+                            controlChannel.readHello(), controlChannel.getRemoteAddress());
+                }
+            }
+
+            for (int i = 0; i < agents; i++) {
+                controlChannels.get(i).sendScenario(new ScenarioAssignment(i, agents, reportIntervalMillis,
+                        scenarioLines));
+            }
+            for (ControlChannel controlChannel : controlChannels) {
+                controlChannel.expect(ControlMessageType.READY);
+            }
+        } catch (IOException exception) {
+            abort(controlChannels, exception.getMessage());
+            throw exception;
+        }
+
+        ClusterMetrics clusterMetrics = new ClusterMetrics(agents, timeSeriesWriter);
+        List<Thread> collectors = new ArrayList<>(agents);
+        for (int i = 0; i < agents; i++) {
+            collectors.add(startCollector(i, controlChannels.get(i), clusterMetrics));
+        }
+        for (ControlChannel controlChannel : controlChannels) {
+            controlChannel.sendStart(START_DELAY_MILLIS);
+        }
+        System.out.printf("All %d agents start in %d ms%n", agents, START_DELAY_MILLIS);
+
+        try {
+            for (Thread collector : collectors) {
+                collector.join();
+            }
+        } catch (InterruptedException exception) {
+            abort(controlChannels, "coordinator interrupted");
+            throw exception;
+        } finally {
+            clusterMetrics.printReport();
+            for (ControlChannel controlChannel : controlChannels) {
+                closeQuietly(controlChannel);
+            }
+        }
+    }
+
+    private static Thread startCollector(int agentIndex, ControlChannel controlChannel, ClusterMetrics clusterMetrics) {
+        Thread collector = new Thread(() -> {
+            try {
+                ControlMessageType controlMessageType;
+                while ((controlMessageType = controlChannel.readType()) == ControlMessageType.SAMPLE) {
+                    clusterMetrics.add(agentIndex, controlChannel.readSample());
+                }
+
+                if (controlMessageType == ControlMessageType.ABORT) {
+                    System.out.printf("Agent %d aborted: %s%n", agentIndex + 1, controlChannel.readAbortReason());
+                } else if (controlMessageType != ControlMessageType.FINISHED) {
+                    log.error("Unexpected {} from agent {}", controlMessageType, agentIndex + 1);
+                }
+            } catch (IOException exception) {
+                System.out.printf("Lost agent %d: %s%n", agentIndex + 1, exception.getMessage());
+            } finally {
+                clusterMetrics.finish(agentIndex);
+            }
+        }, "agent-collector-" + (agentIndex + 1));
+        collector.start();
+        return collector;
+    }
+
+    private static void abort(List<ControlChannel> controlChannels, String reason) {
+        for (ControlChannel controlChannel : controlChannels) {
+            try {
+                controlChannel.sendAbort(reason);
+            } catch (IOException exception) {
+                log.info("Could not abort agent at {}", controlChannel.getRemoteAddress());
+            }
+            closeQuietly(controlChannel);
+        }
+    }
+
+    private static void closeQuietly(ControlChannel controlChannel) {
+        try {
+            controlChannel.close();
+        } catch (IOException exception) {
+            log.info("Could not close control connection ", exception);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package simulator.distributed;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * This class is the scenario coordinator sends to one agent
+ * together with the share of the scenario the agent runs
+ */
+
+@Getter
+@AllArgsConstructor
+public class ScenarioAssignment {
+    private final int agentIndex;
+    private final int agents;
+    //agents report in same intervals so samples line up
+    private final long reportIntervalMillis;
+    private final List<String> scenarioLines;
+}
@@ -0,0 +1,111 @@
+package simulator.distributed;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import simulator.metrics.IntervalReporter;
+import simulator.metrics.IntervalSample;
+import simulator.scenario.Scenario;
+import simulator.scenario.ScenarioParser;
+import simulator.scenario.ScenarioRunner;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs its share of a scenario on behalf of a
+ * coordinator. It connects to the coordinator, waits for the
+ * scenario and the start signal, runs the scenario and sends
+ * counters and latency histogram of every interval.
+ * <p>
+ * Losing the coordinator stops the run, so agents never keep
+ * loading the server without anybody collecting results.
+ */
+
+@Slf4j
+@RequiredArgsConstructor
+public class SimulatorAgent {
+    private final InetSocketAddress coordinatorAddress;
+
+    private volatile boolean finished;
+
+    /**
+     * This method runs one scenario and returns once it
+     * is over or the coordinator has aborted it
+     *
+     * @throws IOException          if coordinator can not be reached or scenario is invalid
+     * @throws InterruptedException if run is interrupted or aborted
+     */
+
+    public void run() throws IOException, InterruptedException {
+        try (ControlChannel controlChannel = ControlChannel.connect(coordinatorAddress)) {
+            controlChannel.sendHello(ManagementFactory.getRuntimeMXBean().getName());
+            controlChannel.expect(ControlMessageType.SCENARIO);
+            ScenarioAssignment scenarioAssignment = controlChannel.readScenario();
+
+            Scenario scenario;
+            try {
+                scenario = ScenarioParser.parse(scenarioAssignment.getScenarioLines())
+                        .shareOf(scenarioAssignment.getAgentIndex(), scenarioAssignment.getAgents());
+            } catch (IllegalArgumentException exception) {
+                controlChannel.sendAbort(exception.getMessage());
+                throw new IOException("Invalid scenario from coordinator", exception);
+            }
+            controlChannel.sendReady();
+            System.out.printf("Agent %d/%d is ready%n", scenarioAssignment.getAgentIndex() + 1,
+                    scenarioAssignment.getAgents());
+
+            controlChannel.expect(ControlMessageType.START);
+            TimeUnit.MILLISECONDS.sleep(controlChannel.readStartDelay());
+            watchCoordinator(controlChannel, Thread.currentThread());
+
+            AtomicInteger sequence = new AtomicInteger();
+            IntervalReporter intervalReporter = new IntervalReporter(scenarioAssignment.getReportIntervalMillis(),
+                    null, sample -> sendSample(controlChannel, sequence.getAndIncrement(), sample));
+            intervalReporter.start();
+            try {
+                new ScenarioRunner(scenario).run();
+            } finally {
+                intervalReporter.stop();
+                finished = true;
+            }
+            controlChannel.sendFinished();
+        }
+    }
+
+    private void sendSample(ControlChannel controlChannel, int sequence, IntervalSample sample) {
+        try {
+            controlChannel.sendSample(new AgentSample(sequence, sample.getIntervalNanos(), sample.getInterval(),
+                    sample.getIntervalLatency()));
+        } catch (IOException exception) {
+            log.error("Could not send sample to coordinator ", exception);
+        }
+    }
+
+    /**
+     * Coordinator sends nothing after START but ABORT, so
+     * anything arriving or the connection closing ends the run
+     */
+
+    private void watchCoordinator(ControlChannel controlChannel, Thread runThread) {
+        Thread watcher = new Thread(() -> {
+            String reason;
+            try {
+                ControlMessageType controlMessageType = controlChannel.readType();
+                reason = controlMessageType == ControlMessageType.ABORT
+                        ? controlChannel.readAbortReason() : "unexpected " + controlMessageType;
+            } catch (IOException exception) {
+                reason = exception.getMessage();
+            }
+
+            if (!finished) {
+                System.out.println("Run aborted by coordinator: " + reason);
+                runThread.interrupt();
+            }
+        }, "coordinator-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
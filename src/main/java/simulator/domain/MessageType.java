@@ -12,6 +12,20 @@ public enum MessageType {
     GENERATED_ID("ID"),
     DATA("DT");
 
+    private static final MessageType[] MESSAGE_TYPES_BY_CODE = new MessageType[1 << 16];
+
+    static {
+        for (MessageType messageType : values()) {
+            String upperCase = messageType.messageCode.toUpperCase();
+            String lowerCase = messageType.messageCode.toLowerCase();
+            for (char first : new char[]{upperCase.charAt(0), lowerCase.charAt(0)}) {
+                for (char second : new char[]{upperCase.charAt(1), lowerCase.charAt(1)}) {
+                    MESSAGE_TYPES_BY_CODE[codeIndex((byte) first, (byte) second)] = messageType;
+                }
+            }
+        }
+    }
+
     private final String messageCode;
 
     MessageType(String code) {
@@ -23,4 +37,19 @@ public enum MessageType {
                 filter(messageType -> messageType.messageCode.equalsIgnoreCase(text))
                 .findFirst();
     }
+
+    /**
+     * This method finds message type from the two code bytes
+     * of a frame without creating any object
+     *
+     * @return message type or null if code is unknown
+     */
+
+    public static MessageType fromCode(byte first, byte second) {
+        return MESSAGE_TYPES_BY_CODE[codeIndex(first, second)];
+    }
+
+    private static int codeIndex(byte first, byte second) {
+        return ((first & 0xFF) << 8) | (second & 0xFF);
+    }
 }
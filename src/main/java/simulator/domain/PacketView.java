@@ -0,0 +1,152 @@
+package simulator.domain;
+
+import com.domain.Packet;
+import simulator.properties.Constants;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is a reusable read only view of a frame which is still
+ * sitting in the receive buffer. Header fields are read in place on
+ * every call and message is only decoded into a String when somebody
+ * asks for it.
+ * <p>
+ * A view is only valid until the bytes of the frame are overwritten,
+ * so it must not be kept once processing of the frame has finished.
+ * Same view is meant to be wrapped around every frame of a buffer.
+ *
+ * @see Packet
+ */
+
+public class PacketView {
+    private ByteBuffer buffer;
+    private int frameOffset;
+    private String message;
+
+    /**
+     * This method points this view to the frame starting at
+     * given offset of the buffer
+     *
+     * @param buffer      which contains complete frame
+     * @param frameOffset absolute index of first byte of the frame
+     * @return this view
+     */
+
+    public PacketView wrap(ByteBuffer buffer, int frameOffset) {
+        this.buffer = buffer;
+        this.frameOffset = frameOffset;
+        this.message = null;
+        return this;
+    }
+
+    public int getMagicBytes() {
+        return buffer.getInt(frameOffset + Constants.START_OF_MAGIC_BYTES_INCLUSIVE);
+    }
+
+    /**
+     * @return message type or null if the code is unknown
+     */
+
+    public MessageType getMessageType() {
+        return MessageType.fromCode(buffer.get(frameOffset + Constants.START_OF_MESSAGE_TYPE_INCLUSIVE),
+                buffer.get(frameOffset + Constants.START_OF_MESSAGE_TYPE_INCLUSIVE + 1));
+    }
+
+    public int getMessageSourceId() {
+        return buffer.getInt(frameOffset + Constants.START_OF_SOURCE_ID_INCLUSIVE);
+    }
+
+    public int getMessageDestinationId() {
+        return buffer.getInt(frameOffset + Constants.START_OF_DEST_ID_INCLUSIVE);
+    }
+
+    public int getMessageLength() {
+        return buffer.getInt(frameOffset + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE);
+    }
+
+    /**
+     * @return absolute index of first message byte in the buffer
+     */
+
+    public int getMessageOffset() {
+        return frameOffset + Constants.START_OF_MESSAGE_INCLUSIVE;
+    }
+
+    /**
+     * @return send timestamp of a DATA packet sent in latency mode
+     */
+
+    public long getSendTimestampNanos() {
+        return buffer.getLong(getMessageOffset() + Constants.START_OF_SEND_TIMESTAMP_INCLUSIVE);
+    }
+
+    /**
+     * @return sequence number of a DATA packet sent in latency mode
+     */
+
+    public long getSequenceNumber() {
+        return buffer.getLong(getMessageOffset() + Constants.START_OF_SEQUENCE_NUMBER_INCLUSIVE);
+    }
+
+    /**
+     * @return true if message is long enough to carry timestamp and sequence
+     */
+
+    public boolean hasLatencyPrefix() {
+        return getMessageLength() >= Constants.LATENCY_PREFIX_LENGTH;
+    }
+
+    public int getFrameOffset() {
+        return frameOffset;
+    }
+
+    public int getFrameLength() {
+        return Constants.START_OF_MESSAGE_INCLUSIVE + getMessageLength();
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * This method decodes message on first call and
+     * returns the same String afterwards
+     *
+     * @return message of the frame
+     */
+
+    public String getMessage() {
+        if (message == null) {
+            message = decodeMessage();
+        }
+        return message;
+    }
+
+    /**
+     * This method creates an independent packet object
+     * which can be kept after buffer is reused
+     *
+     * @return packet
+     */
+
+    public Packet toPacket() {
+        return Packet.builder().magicBytes(getMagicBytes()).messageType(getMessageType()).
+                messageSourceId(getMessageSourceId()).messageDestinationId(getMessageDestinationId()).
+                messageLength(getMessageLength()).message(getMessage()).build();
+    }
+
+    private String decodeMessage() {
+        int messageLength = getMessageLength();
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + getMessageOffset(), messageLength,
+                    StandardCharsets.UTF_8);
+        }
+
+        byte[] messageInBytes = new byte[messageLength];
+        for (int i = 0; i < messageLength; i++) {
+            messageInBytes[i] = buffer.get(getMessageOffset() + i);
+        }
+        return new String(messageInBytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+package simulator.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.metrics.Metrics;
+import simulator.schedule.ArrivalProcess;
+import simulator.schedule.SessionLength;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class drives users through whole session lifecycles
+ * <p>
+ * connect -> login -> chat -> LOGOUT -> server closes -> next session
+ * <p>
+ * Sessions start at the churn rate, spread by the arrival process,
+ * and every session stays logged in for a length drawn from its
+ * session length distribution. A user who has logged out comes back
+ * as a new session with a new connection and a new id, so the number
+ * of users online settles at churn rate times mean session length.
+ * <p>
+ * While logged in a session chats like every other client, following
+ * the shared send schedule. Time of every stage is recorded, see
+ * {@link ChurnSession}.
+ */
+
+@Slf4j
+public class ChurnEngine implements ConnectListener {
+    private final EventLoopGroup eventLoopGroup;
+    private final InetSocketAddress serverAddress;
+    private final Semaphore pendingConnects;
+
+    private final AtomicInteger sessionsStarted = new AtomicInteger();
+    private final AtomicInteger sessionsCompleted = new AtomicInteger();
+    private final AtomicInteger logoutTimeouts = new AtomicInteger();
+    private final AtomicInteger sessionsAborted = new AtomicInteger();
+    private final AtomicInteger failedConnections = new AtomicInteger();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    public ChurnEngine(EventLoopGroup eventLoopGroup, InetSocketAddress serverAddress, int maxPendingConnects) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.serverAddress = serverAddress;
+        this.pendingConnects = new Semaphore(maxPendingConnects);
+    }
+
+    /**
+     * This method starts sessions for given duration. Sessions which
+     * are still running then go on until their own logout.
+     *
+     * @param sessionsPerSecond churn rate, must be greater than zero
+     * @param arrivalProcess    how session starts are spread over time
+     * @param meanSessionNanos  mean time a session stays logged in
+     * @param sessionLength     distribution of session lengths
+     * @param durationNanos     time sessions are started for, 0 means until interrupted
+     * @throws InterruptedException if churn is interrupted
+     */
+
+    public void run(double sessionsPerSecond, ArrivalProcess arrivalProcess, long meanSessionNanos,
+                    SessionLength sessionLength, long durationNanos) throws InterruptedException {
+        log.info("Churning {} sessions per second with {} session length of {} ms", sessionsPerSecond,
+                sessionLength, meanSessionNanos / 1_000_000);
+        long intendedStartNanos = System.nanoTime();
+        long endNanos = intendedStartNanos + durationNanos;
+
+        while (durationNanos <= 0 || intendedStartNanos - endNanos < 0) {
+            waitUntil(intendedStartNanos);
+            intendedStartNanos += arrivalProcess.nextIntervalNanos(sessionsPerSecond);
+
+            pendingConnects.acquire();
+            ChurnSession churnSession = new ChurnSession(this, sessionLength.nextLengthNanos(meanSessionNanos));
+            sessionsStarted.incrementAndGet();
+            activeSessions.incrementAndGet();
+            try {
+                eventLoopGroup.connect(serverAddress, this, null, churnSession);
+            } catch (IOException exception) {
+                log.error("Could not start connect ", exception);
+                pendingConnects.release();
+                failedConnections.incrementAndGet();
+                activeSessions.decrementAndGet();
+                Metrics.getConnectsFailed().increment();
+            }
+        }
+    }
+
+    @Override
+    public void onConnectFinished(Connection connection, boolean connected, long connectNanos) {
+        pendingConnects.release();
+
+        if (connected) {
+            Metrics.getConnectLatency().record(connectNanos);
+            Metrics.getConnectsEstablished().increment();
+        } else {
+            failedConnections.incrementAndGet();
+            Metrics.getConnectsFailed().increment();
+        }
+    }
+
+    /**
+     * This method is called once per session when its
+     * connection has been closed
+     *
+     * @param connected true if connect had finished successfully
+     * @param completed true if server closed the connection after LOGOUT
+     * @param timedOut  true if server did not close it in time after LOGOUT
+     */
+
+    void sessionEnded(boolean connected, boolean completed, boolean timedOut) {
+        activeSessions.decrementAndGet();
+        if (completed) {
+            sessionsCompleted.incrementAndGet();
+        } else if (timedOut) {
+            logoutTimeouts.incrementAndGet();
+        } else if (connected) {
+            sessionsAborted.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return short description used in progress output
+     */
+
+    public String describe() {
+        return String.format("sessions started=%d completed=%d logoutTimeouts=%d aborted=%d failedConnects=%d active=%d",
+                sessionsStarted.get(), sessionsCompleted.get(), logoutTimeouts.get(), sessionsAborted.get(),
+                failedConnections.get(), activeSessions.get());
+    }
+
+    private static void waitUntil(long intendedNanos) throws InterruptedException {
+        long nanosToWait;
+        while ((nanosToWait = intendedNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(nanosToWait);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
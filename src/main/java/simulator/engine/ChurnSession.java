@@ -0,0 +1,130 @@
+package simulator.engine;
+
+import simulator.metrics.Metrics;
+import simulator.schedule.SendScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is one session of a churning user. It measures the
+ * stages the connection goes through and is the timer which ends
+ * the session:
+ * <p>
+ * connect -> CONNECTED            connect latency
+ * CONNECTED -> LOGGED_IN          login latency
+ * LOGGED_IN + session length      LOGOUT is sent
+ * LOGOUT sent -> server closed    logout latency
+ * connect -> closed               session lifetime
+ * <p>
+ * A server which does not close the connection within the logout
+ * timeout after LOGOUT has its connection closed by the client, and
+ * the session is counted as timed out instead of completed.
+ * <p>
+ * All methods but the constructor are called from the event loop
+ * of the connection only, a connect which finishes at once is
+ * completed by the loop as well
+ */
+
+class ChurnSession implements SendScheduler.ScheduledSender {
+    private static final long LOGOUT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final ChurnEngine churnEngine;
+    private final long sessionLengthNanos;
+    private final long connectStartedNanos = System.nanoTime();
+    private Connection connection;
+    private long connectedNanos;
+    private long logoutSentNanos;
+    private long timerNanos;
+    private int schedulerIndex = SendScheduler.NOT_SCHEDULED;
+    private boolean timedOut;
+    private boolean closed;
+
+    ChurnSession(ChurnEngine churnEngine, long sessionLengthNanos) {
+        this.churnEngine = churnEngine;
+        this.sessionLengthNanos = sessionLengthNanos;
+    }
+
+    void connected(Connection connection, long nowNanos) {
+        this.connection = connection;
+        this.connectedNanos = nowNanos;
+    }
+
+    /**
+     * This method starts the session length once the user is
+     * logged in
+     */
+
+    void loggedIn(long nowNanos) {
+        Metrics.getLoginLatency().record(nowNanos - connectedNanos);
+        schedule(nowNanos + sessionLengthNanos);
+    }
+
+    /**
+     * This method starts the logout timeout once LOGOUT has
+     * been queued
+     */
+
+    void logoutSent(long nowNanos) {
+        logoutSentNanos = nowNanos;
+        schedule(nowNanos + LOGOUT_TIMEOUT_NANOS);
+    }
+
+    void closed(long nowNanos) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (connection != null) {
+            connection.getEventLoop().getSessionTimers().cancel(this);
+        }
+
+        boolean completed = logoutSentNanos != 0 && !timedOut;
+        if (completed) {
+            Metrics.getLogoutLatency().record(nowNanos - logoutSentNanos);
+            Metrics.getSessionLifetime().record(nowNanos - connectStartedNanos);
+        }
+        churnEngine.sessionEnded(connection != null, completed, timedOut);
+    }
+
+    @Override
+    public long getIntendedSendNanos() {
+        return timerNanos;
+    }
+
+    @Override
+    public int getSchedulerIndex() {
+        return schedulerIndex;
+    }
+
+    @Override
+    public void setSchedulerIndex(int schedulerIndex) {
+        this.schedulerIndex = schedulerIndex;
+    }
+
+    /**
+     * Timer is due either because session length is over or
+     * because server has not closed the connection after LOGOUT
+     */
+
+    @Override
+    public void onSendDue(long nowNanos) {
+        if (logoutSentNanos == 0) {
+            connection.endSession();
+        } else {
+            timedOut = true;
+            connection.close();
+        }
+    }
+
+    /**
+     * Timer is taken out before it is moved, a scheduled
+     * timer must not change its time
+     */
+
+    private void schedule(long nanos) {
+        SendScheduler<ChurnSession> sessionTimers = connection.getEventLoop().getSessionTimers();
+        sessionTimers.cancel(this);
+        timerNanos = nanos;
+        sessionTimers.schedule(this);
+    }
+}
@@ -0,0 +1,20 @@
+package simulator.engine;
+
+/**
+ * This interface is notified once a non blocking
+ * connect of a connection has finished, either
+ * successfully or not
+ */
+
+public interface ConnectListener {
+
+    ConnectListener NONE = (connection, connected, connectNanos) -> { };
+
+    /**
+     * @param connection   whose connect has finished
+     * @param connected    true if connection is established
+     * @param connectNanos time from connect call until it finished
+     */
+
+    void onConnectFinished(Connection connection, boolean connected, long connectNanos);
+}
@@ -0,0 +1,652 @@
+package simulator.engine;
+
+import com.domain.Packet;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import simulator.capture.ReplayScript;
+import simulator.capture.TrafficCapture;
+import simulator.core.ConnectionState;
+import simulator.core.FrameTemplate;
+import simulator.core.PacketEncoder;
+import simulator.core.Reader;
+import simulator.core.UserState;
+import simulator.domain.MessageType;
+import simulator.journal.EventJournal;
+import simulator.journal.JournalEvent;
+import simulator.load.LoadSimulator;
+import simulator.metrics.Metrics;
+import simulator.properties.SimulatorProperties;
+import simulator.schedule.MessageContent;
+import simulator.schedule.SendSchedule;
+import simulator.schedule.SendScheduler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class represents one simulated client inside
+ * an event loop. It holds the channel, the user state
+ * and the reader of that client and reacts on the
+ * readiness events the owning event loop hands to it.
+ * <p>
+ * Frames are never written directly. They are appended to
+ * the outbound queue of the connection which is flushed with
+ * gathering writes. OP_WRITE is only registered while the queue
+ * could not be written completely, and once the queue grows past
+ * the high watermark the connection stops generating load until
+ * it has drained below the low watermark.
+ * <p>
+ * A connection with a replay script sends the frames of a
+ * captured connection at their scheduled times instead of
+ * generating messages.
+ * <p>
+ * A connection of a churn session logs out once its session is
+ * over and keeps reading until the server has closed it.
+ * <p>
+ * All methods of this class are called from the owning event
+ * loop thread only, except for connect and abandon which are
+ * called by the connecting thread before the connection has
+ * been handed over to its loop. Even a connect which finishes
+ * at once is completed by the loop, so listeners and churn
+ * sessions only ever see the loop thread
+ */
+
+@Slf4j
+public class Connection implements SendScheduler.ScheduledSender {
+    private static final boolean LATENCY_MODE = SimulatorProperties.isLatencyMode();
+    private static final long HIGH_WATERMARK_BYTES = SimulatorProperties.getOutboundHighWatermarkBytes();
+    private static final long LOW_WATERMARK_BYTES = HIGH_WATERMARK_BYTES / 2;
+
+    @Getter
+    private final SocketChannel socketChannel;
+    @Getter
+    private final UserState userState = new UserState();
+    private final Reader reader;
+    private final OutboundQueue outboundQueue;
+    //null unless this connection replays a capture
+    private final ReplayScript replayScript;
+    //null unless this connection is one session of a churning user
+    private final ChurnSession churnSession;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final EventLoop eventLoop;
+    private SelectionKey selectionKey;
+    private boolean loginSent;
+
+    private ConnectListener connectListener = ConnectListener.NONE;
+    private long connectStartedNanos;
+    //time a connect which finished at once has finished, 0 otherwise
+    private long immediateConnectNanos;
+    private boolean connectFinished;
+
+    @Getter
+    private long intendedSendNanos;
+    //index in the send scheduler of the loop, written by the scheduler only
+    @Getter
+    @Setter
+    private int schedulerIndex = SendScheduler.NOT_SCHEDULED;
+    private boolean sendDue;
+    private boolean paced;
+    private boolean saturating;
+    private boolean backpressured;
+    private boolean replaying;
+    private boolean loggingOut;
+    private boolean flushRequested;
+    //queued bytes last added to the shared queue depth
+    private long reportedQueuedBytes;
+
+    /**
+     * Event loop is fixed before the channel is registered with
+     * it, so other threads can hand work to the loop right away
+     * and the connection borrows its buffers from pools of the loop
+     *
+     * @param socketChannel channel of this client
+     * @param eventLoop     which will own this connection
+     * @param replayScript  frames to replay or null to generate messages
+     * @param churnSession  session this connection belongs to or null
+     */
+
+    protected Connection(SocketChannel socketChannel, EventLoop eventLoop, ReplayScript replayScript,
+                         ChurnSession churnSession) {
+        this.socketChannel = socketChannel;
+        this.eventLoop = eventLoop;
+        this.replayScript = replayScript;
+        this.churnSession = churnSession;
+        this.reader = new Reader(eventLoop.getReadBufferPool());
+        this.outboundQueue = new OutboundQueue(eventLoop.getChunkPool());
+    }
+
+    /**
+     * This method starts non blocking connect to the server.
+     * Connect on loopback can finish at once, listener is then
+     * notified once the event loop has registered the connection
+     *
+     * @param serverAddress   address of chat server
+     * @param connectListener notified once connect has finished
+     * @throws IOException in case connect could not be started
+     */
+
+    protected void connect(InetSocketAddress serverAddress, ConnectListener connectListener) throws IOException {
+        this.connectListener = connectListener;
+        userState.moveTo(ConnectionState.CONNECTING);
+        userState.recordEvent(JournalEvent.CONNECT_STARTED, 0, 0);
+        connectStartedNanos = System.nanoTime();
+        if (socketChannel.connect(serverAddress)) {
+            immediateConnectNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * This method cleans up a connection whose connect could not
+     * be started. It has never been handed over to its event loop,
+     * so it is called by the connecting thread. Listener is not
+     * notified, caller counts the failure itself
+     */
+
+    void abandon() {
+        connectFinished = true;
+        userState.recordEvent(JournalEvent.CONNECT_FAILED, 0, 0);
+        userState.moveTo(ConnectionState.CLOSED);
+        outboundQueue.release();
+        reader.release();
+
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing socket", e);
+        }
+    }
+
+    /**
+     * This method registers channel of this connection
+     * with the selector of its event loop. In case connect
+     * has not finished yet we wait for connect event first,
+     * otherwise the connect is completed right here
+     *
+     * @throws ClosedChannelException dealt by event loop
+     */
+
+    protected void register() throws ClosedChannelException {
+        boolean connected = socketChannel.isConnected();
+        selectionKey = socketChannel.register(eventLoop.getSelector(),
+                connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+        if (connected) {
+            finishedConnecting(true);
+        }
+    }
+
+    /**
+     * This method finishes the non blocking connect and
+     * switches interest of the channel to read events
+     *
+     * @throws IOException in case connect failed
+     */
+
+    protected void onConnectable() throws IOException {
+        if (socketChannel.finishConnect()) {
+            finishedConnecting(true);
+            selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * This method reads whatever server has sent and then
+     * moves the user further in login flow.
+     *
+     * @throws IOException in case writing the login failed
+     */
+
+    protected void onReadable() throws IOException {
+        reader.readingFromServer(socketChannel, userState);
+
+        if (!socketChannel.isOpen()) {
+            close();
+            return;
+        }
+
+        progressLoginFlow();
+    }
+
+    /**
+     * This method is called when socket has space in its send
+     * buffer. First we write what is left in the queue. Paced
+     * clients then send the message that became due meanwhile,
+     * other clients fill the queue up to the high watermark
+     *
+     * @throws IOException in case write failed
+     */
+
+    protected void onWritable() throws IOException {
+        if (!flush() || !userState.getLoggedInFlag().get() || replayScript != null || loggingOut) {
+            return;
+        }
+
+        if (paced || LoadSimulator.getSendSchedule().isRateControlled()) {
+            if (!paced) {
+                startPacedSending();
+            }
+            return;
+        }
+
+        saturating = true;
+        while (!backpressured) {
+            encodeMessageForWrite(System.nanoTime());
+            updateBackpressure();
+        }
+        flush();
+    }
+
+    /**
+     * This method is called by scheduler of the event loop once
+     * intended send time of this client has passed. While the
+     * connection is backpressured the send waits for the queue to
+     * drain but keeps its intended time
+     *
+     * @param nowNanos current time
+     */
+
+    @Override
+    public void onSendDue(long nowNanos) {
+        if (replaying) {
+            if (backpressured) {
+                sendDue = true;
+            } else {
+                sendReplayFrame();
+            }
+            return;
+        }
+
+        if (!LoadSimulator.getSendSchedule().isRateControlled()) {
+            stopPacedSending();
+            saturating = true;
+            updateWriteInterest();
+            return;
+        }
+
+        if (backpressured) {
+            sendDue = true;
+            return;
+        }
+
+        sendScheduledMessage();
+    }
+
+    /**
+     * This method is called by the event loop once all due
+     * sends of this round have been queued, so all frames queued
+     * by this connection in the round go out in one write
+     */
+
+    protected void onFlushRequested() {
+        flushRequested = false;
+        if (!socketChannel.isOpen()) {
+            return;
+        }
+
+        try {
+            flush();
+        } catch (IOException | CancelledKeyException exception) {
+            log.error("Closing connection because of error ", exception);
+            userState.recordEvent(JournalEvent.ERROR, 0, 0);
+            Metrics.getErrors().increment();
+            close();
+        }
+    }
+
+    /**
+     * This method queues message whose intended time has come
+     * and schedules next one out of this intended time. Message
+     * carries its intended send time, so latency measured from it
+     * also contains time the message had to wait for its send
+     */
+
+    private void sendScheduledMessage() {
+        encodeMessageForWrite(intendedSendNanos);
+        updateBackpressure();
+        intendedSendNanos = LoadSimulator.getSendSchedule().nextIntendedSendNanos(intendedSendNanos);
+        eventLoop.getSendScheduler().schedule(this);
+        requestFlush();
+    }
+
+    /**
+     * This method queues next frame of the replay script and
+     * schedules the one after it. Frames of the script which are
+     * already due are sent one after another by the scheduler
+     */
+
+    private void sendReplayFrame() {
+        int frameLength = replayScript.nextFrameLength();
+        ByteBuffer frame = outboundQueue.beginFrame(frameLength);
+        if (replayScript.writeNext(frame, userState, intendedSendNanos) == MessageType.DATA) {
+            Metrics.getMessagesSent().increment();
+        }
+        endFrame(frame, frameLength, intendedSendNanos);
+        updateBackpressure();
+        scheduleNextReplayFrame();
+        requestFlush();
+    }
+
+    private void startReplay() {
+        replaying = true;
+        replayScript.started(userState);
+        scheduleNextReplayFrame();
+    }
+
+    private void scheduleNextReplayFrame() {
+        if (replayScript.hasNext()) {
+            intendedSendNanos = replayScript.nextIntendedSendNanos();
+            eventLoop.getSendScheduler().schedule(this);
+        } else {
+            replaying = false;
+            replayScript.finished();
+        }
+    }
+
+    private void startPacedSending() {
+        SendSchedule sendSchedule = LoadSimulator.getSendSchedule();
+        paced = true;
+        saturating = false;
+        sendSchedule.senderStarted();
+        intendedSendNanos = sendSchedule.nextIntendedSendNanos(System.nanoTime());
+        eventLoop.getSendScheduler().schedule(this);
+        updateWriteInterest();
+    }
+
+    private void stopPacedSending() {
+        if (paced) {
+            paced = false;
+            sendDue = false;
+            LoadSimulator.getSendSchedule().senderStopped();
+        }
+    }
+
+    /**
+     * Once server has assigned us an id we send login packet
+     * and once server has sent us magic number we start
+     * sending messages, either paced by the scheduler of the
+     * loop or as fast as write events come in
+     *
+     * @throws IOException in case writing the login failed
+     */
+
+    private void progressLoginFlow() throws IOException {
+        if (!loginSent && userState.getUserIdOfClientAllocatedByServer().get() != 0) {
+            int bytes = encodeForWrite(userState.getLoginPacket(userState), System.nanoTime());
+            userState.recordEvent(JournalEvent.LOGIN_SENT, bytes, 0);
+            loginSent = true;
+            flush();
+        }
+
+        if (userState.getLoggedInFlag().get() && !paced && !saturating && !replaying && !loggingOut
+                && selectionKey.isValid()) {
+            if (churnSession != null) {
+                churnSession.loggedIn(System.nanoTime());
+            }
+            if (replayScript != null) {
+                if (!replayScript.hasStarted()) {
+                    startReplay();
+                }
+            } else if (LoadSimulator.getSendSchedule().isRateControlled()) {
+                startPacedSending();
+            } else {
+                saturating = true;
+                updateWriteInterest();
+            }
+        }
+    }
+
+    /**
+     * This method appends packet to the outbound queue
+     *
+     * @param packet         which needs to be sent
+     * @param timestampNanos time the packet is meant to be sent
+     * @return length of the frame
+     */
+
+    private int encodeForWrite(Packet packet, long timestampNanos) {
+        int frameLength = PacketEncoder.encodedLength(packet);
+        ByteBuffer frame = outboundQueue.beginFrame(frameLength);
+        PacketEncoder.encode(packet, frame);
+        endFrame(frame, frameLength, timestampNanos);
+        return frameLength;
+    }
+
+    /**
+     * This method adds frame which has just been written to
+     * the buffer of {@link OutboundQueue#beginFrame(int)} to the
+     * queue and to the traffic capture
+     */
+
+    private void endFrame(ByteBuffer frame, int frameLength, long timestampNanos) {
+        TrafficCapture.frameSent(timestampNanos, userState.getClientNumber(), frame,
+                frame.position() - frameLength, frameLength);
+        outboundQueue.endFrame();
+    }
+
+    /**
+     * This method appends next DATA message to the outbound queue.
+     * Fixed size payloads are copied from the frame template of the
+     * current profile, default text is encoded per message. In
+     * latency mode send timestamp and sequence are added to it
+     *
+     * @param sendTimestampNanos time the message is meant to be sent
+     */
+
+    private void encodeMessageForWrite(long sendTimestampNanos) {
+        Metrics.getMessagesSent().increment();
+        MessageContent messageContent = LoadSimulator.getMessageContent();
+        FrameTemplate frameTemplate = messageContent.getFrameTemplate();
+        if (frameTemplate != null) {
+            int textLength = messageContent.nextTextLength(frameTemplate);
+            int frameLength = frameTemplate.getFrameLength(textLength);
+            ByteBuffer frame = outboundQueue.beginFrame(frameLength);
+            userState.writeMessageFromTemplate(frameTemplate, textLength, frame, sendTimestampNanos);
+            endFrame(frame, frameLength, sendTimestampNanos);
+            return;
+        }
+
+        Packet packet = userState.getMessageToSend();
+        int frameLength;
+        long sequence = 0;
+        if (LATENCY_MODE) {
+            sequence = userState.nextSequenceNumber(packet.getMessageDestinationId());
+            frameLength = PacketEncoder.encodedLengthWithTimestamp(packet);
+            ByteBuffer frame = outboundQueue.beginFrame(frameLength);
+            PacketEncoder.encodeWithTimestamp(packet, sendTimestampNanos, sequence, frame);
+            endFrame(frame, frameLength, sendTimestampNanos);
+        } else {
+            frameLength = encodeForWrite(packet, sendTimestampNanos);
+        }
+        EventJournal.record(JournalEvent.DATA_SENT, userState.getClientNumber(), frameLength,
+                packet.getMessageDestinationId(), sequence);
+    }
+
+    private void requestFlush() {
+        if (!flushRequested) {
+            flushRequested = true;
+            eventLoop.requestFlush(this);
+        }
+    }
+
+    /**
+     * This method writes as much of the outbound queue as the
+     * socket accepts. A paced send which had to wait for the
+     * queue to drain is queued as soon as it is possible again
+     *
+     * @return true if nothing is left to be written
+     * @throws IOException in case write failed
+     */
+
+    private boolean flush() throws IOException {
+        long queuedBytes = outboundQueue.getQueuedBytes();
+        long flushStartedNanos = System.nanoTime();
+        boolean flushed = outboundQueue.flush(socketChannel);
+        long flushEndedNanos = System.nanoTime();
+        Metrics.getSendCallDuration().record(flushEndedNanos - flushStartedNanos);
+
+        long queuedBytesAfterFlush = outboundQueue.getQueuedBytes();
+        int bytesWritten = (int) (queuedBytes - queuedBytesAfterFlush);
+        if (queuedBytes > 0) {
+            EventJournal.recordAt(flushEndedNanos, flushed ? JournalEvent.WRITE : JournalEvent.SOCKET_FULL,
+                    userState.getClientNumber(), bytesWritten, 0, queuedBytesAfterFlush);
+        }
+        Metrics.getBytesSent().add(bytesWritten);
+        Metrics.getQueuedBytes().add(queuedBytesAfterFlush - reportedQueuedBytes);
+        reportedQueuedBytes = queuedBytesAfterFlush;
+        updateBackpressure();
+        updateWriteInterest();
+
+        if (sendDue && !backpressured) {
+            sendDue = false;
+            if (replaying) {
+                sendReplayFrame();
+            } else {
+                sendScheduledMessage();
+            }
+        }
+        return flushed;
+    }
+
+    private void updateBackpressure() {
+        long queuedBytes = outboundQueue.getQueuedBytes();
+        if (!backpressured && queuedBytes > HIGH_WATERMARK_BYTES) {
+            backpressured = true;
+            EventJournal.record(JournalEvent.BACKPRESSURE_ON, userState.getClientNumber(), 0, 0, queuedBytes);
+        } else if (backpressured && queuedBytes <= LOW_WATERMARK_BYTES) {
+            backpressured = false;
+            EventJournal.record(JournalEvent.BACKPRESSURE_OFF, userState.getClientNumber(), 0, 0, queuedBytes);
+        }
+    }
+
+    /**
+     * OP_WRITE is only wanted while queue has bytes the socket did
+     * not take or while client sends as fast as socket allows
+     */
+
+    private void updateWriteInterest() {
+        if (selectionKey == null || !selectionKey.isValid()) {
+            return;
+        }
+
+        boolean wantsWrite = !outboundQueue.isEmpty() || (saturating && userState.getLoggedInFlag().get());
+        int interestOps = wantsWrite ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (selectionKey.interestOps() != interestOps) {
+            selectionKey.interestOps(interestOps);
+        }
+    }
+
+    private void finishedConnecting(boolean connected) {
+        if (!connectFinished) {
+            connectFinished = true;
+            long finishedNanos = immediateConnectNanos != 0 ? immediateConnectNanos : System.nanoTime();
+            long connectNanos = finishedNanos - connectStartedNanos;
+            if (connected) {
+                userState.moveTo(ConnectionState.CONNECTED);
+                if (churnSession != null) {
+                    churnSession.connected(this, connectStartedNanos + connectNanos);
+                }
+            }
+            userState.recordEvent(connected ? JournalEvent.CONNECTED : JournalEvent.CONNECT_FAILED, 0, connectNanos);
+            connectListener.onConnectFinished(this, connected, connectNanos);
+        }
+    }
+
+    /**
+     * This method sends LOGOUT to the server if the user has
+     * logged in and closes the connection afterwards. LOGOUT is
+     * written with whatever else is still queued, if the socket
+     * does not take it at once it is dropped with the connection
+     */
+
+    protected void logout() {
+        if (!socketChannel.isOpen()) {
+            return;
+        }
+
+        if (userState.getLoggedInFlag().get()) {
+            int bytes = encodeForWrite(userState.getLogOutPacket(userState), System.nanoTime());
+            userState.recordEvent(JournalEvent.LOGOUT_SENT, bytes, 0);
+            try {
+                outboundQueue.flush(socketChannel);
+            } catch (IOException exception) {
+                log.error("Could not write logout ", exception);
+            }
+        }
+        close();
+    }
+
+    /**
+     * This method ends a churn session. Sending stops, LOGOUT is
+     * queued behind whatever is still queued and the connection
+     * stays open until the server closes it
+     */
+
+    void endSession() {
+        if (!socketChannel.isOpen() || loggingOut) {
+            return;
+        }
+
+        loggingOut = true;
+        if (paced) {
+            eventLoop.getSendScheduler().cancel(this);
+            stopPacedSending();
+        }
+        saturating = false;
+
+        long nowNanos = System.nanoTime();
+        int bytes = encodeForWrite(userState.getLogOutPacket(userState), nowNanos);
+        userState.recordEvent(JournalEvent.LOGOUT_SENT, bytes, 0);
+        churnSession.logoutSent(nowNanos);
+        requestFlush();
+    }
+
+    /**
+     * Graceful shutdown of this connection
+     */
+
+    protected void close() {
+        finishedConnecting(false);
+        if (userState.getConnectionState().get() != ConnectionState.CLOSED) {
+            userState.recordEvent(JournalEvent.CLOSED, 0, 0);
+        }
+        userState.leavePeerDirectory();
+        userState.moveTo(ConnectionState.CLOSED);
+        Metrics.getQueuedBytes().add(-reportedQueuedBytes);
+        reportedQueuedBytes = 0;
+        outboundQueue.release();
+        reader.release();
+
+        if (paced) {
+            eventLoop.getSendScheduler().cancel(this);
+            stopPacedSending();
+        }
+        if (replaying) {
+            eventLoop.getSendScheduler().cancel(this);
+            replaying = false;
+        }
+        if (replayScript != null) {
+            replayScript.finished();
+        }
+
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing socket", e);
+        }
+
+        if (churnSession != null) {
+            churnSession.closed(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package simulator.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.capture.ReplayScript;
+import simulator.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class opens connections the way users arrive after a
+ * deploy: at a configured rate and with a cap on connects which
+ * have been started but not finished yet. Every connect is non
+ * blocking and its time until the server accepted it is recorded
+ * in the connect latency histogram.
+ * <p>
+ * Rate of zero opens connections as fast as the pending cap allows.
+ * <p>
+ * Established connections are remembered so a ramp down can log
+ * them out again, most recently opened connections first.
+ */
+
+@Slf4j
+public class ConnectionRamp implements ConnectListener {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final EventLoopGroup eventLoopGroup;
+    private final InetSocketAddress serverAddress;
+    private final double connectionsPerSecond;
+    private final int maxPendingConnects;
+    private final Semaphore pendingConnects;
+
+    private final AtomicInteger establishedConnections = new AtomicInteger();
+    private final AtomicInteger failedConnections = new AtomicInteger();
+    private final Deque<Connection> openConnections = new ConcurrentLinkedDeque<>();
+
+    public ConnectionRamp(EventLoopGroup eventLoopGroup, InetSocketAddress serverAddress,
+                          double connectionsPerSecond, int maxPendingConnects) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.serverAddress = serverAddress;
+        this.connectionsPerSecond = connectionsPerSecond;
+        this.maxPendingConnects = maxPendingConnects;
+        this.pendingConnects = new Semaphore(maxPendingConnects);
+    }
+
+    /**
+     * This method starts given amount of connects following the
+     * ramp rate. It returns once the last connect has been started.
+     *
+     * @param numberOfConnections which need to be opened
+     * @throws InterruptedException if ramp is interrupted
+     */
+
+    public void open(int numberOfConnections) throws InterruptedException {
+        open(numberOfConnections, connectionsPerSecond);
+    }
+
+    /**
+     * This method starts given amount of connects at given rate.
+     * It returns once the last connect has been started.
+     *
+     * @param numberOfConnections  which need to be opened
+     * @param connectionsPerSecond rate of this ramp, 0 means no limit
+     * @throws InterruptedException if ramp is interrupted
+     */
+
+    public void open(int numberOfConnections, double connectionsPerSecond) throws InterruptedException {
+        open(numberOfConnections, connectionsPerSecond, null);
+    }
+
+    /**
+     * This method opens one connection per script following the
+     * ramp rate, every connection replays its script once logged in
+     *
+     * @param replayScripts scripts of captured connections
+     * @throws InterruptedException if ramp is interrupted
+     */
+
+    public void replay(List<ReplayScript> replayScripts) throws InterruptedException {
+        open(replayScripts.size(), connectionsPerSecond, replayScripts);
+    }
+
+    private void open(int numberOfConnections, double connectionsPerSecond, List<ReplayScript> replayScripts)
+            throws InterruptedException {
+        log.info("Ramping up {} connections at {} per second", numberOfConnections, connectionsPerSecond);
+        long intervalNanos = connectionsPerSecond > 0 ? (long) (NANOS_PER_SECOND / connectionsPerSecond) : 0;
+        long intendedConnectNanos = System.nanoTime();
+
+        for (int i = 0; i < numberOfConnections; i++) {
+            waitUntil(intendedConnectNanos);
+            intendedConnectNanos += intervalNanos;
+
+            pendingConnects.acquire();
+            ReplayScript replayScript = replayScripts == null ? null : replayScripts.get(i);
+            try {
+                eventLoopGroup.connect(serverAddress, this, replayScript);
+            } catch (IOException exception) {
+                log.error("Could not start connect ", exception);
+                if (replayScript != null) {
+                    replayScript.finished();
+                }
+                pendingConnects.release();
+                failedConnections.incrementAndGet();
+                Metrics.getConnectsFailed().increment();
+            }
+        }
+
+        log.info("All {} connects have been started", numberOfConnections);
+    }
+
+    /**
+     * This method logs out given amount of connections at given
+     * rate, most recently opened ones first. Connections which have
+     * been closed meanwhile are skipped and do not count.
+     *
+     * @param numberOfConnections  which need to be closed
+     * @param connectionsPerSecond rate of this ramp down, 0 means no limit
+     * @return number of connections which have been logged out
+     */
+
+    public int close(int numberOfConnections, double connectionsPerSecond) {
+        log.info("Ramping down {} connections at {} per second", numberOfConnections, connectionsPerSecond);
+        long intervalNanos = connectionsPerSecond > 0 ? (long) (NANOS_PER_SECOND / connectionsPerSecond) : 0;
+        long intendedCloseNanos = System.nanoTime();
+
+        int closedConnections = 0;
+        Connection connection;
+        while (closedConnections < numberOfConnections && (connection = openConnections.pollLast()) != null) {
+            if (!connection.getSocketChannel().isOpen()) {
+                continue;
+            }
+
+            waitUntil(intendedCloseNanos);
+            intendedCloseNanos += intervalNanos;
+            connection.getEventLoop().logout(connection);
+            closedConnections++;
+        }
+        return closedConnections;
+    }
+
+    /**
+     * @return connections which have been established and not
+     * been closed by a ramp down, some of them can have been
+     * closed by the server meanwhile
+     */
+
+    public int getOpenConnections() {
+        return openConnections.size();
+    }
+
+    /**
+     * This method blocks until every started connect has finished
+     *
+     * @param timeout maximum time to wait
+     * @param unit    of the timeout
+     * @return true if nothing is pending anymore
+     * @throws InterruptedException if waiting is interrupted
+     */
+
+    public boolean awaitPendingConnects(long timeout, TimeUnit unit) throws InterruptedException {
+        if (pendingConnects.tryAcquire(maxPendingConnects, timeout, unit)) {
+            pendingConnects.release(maxPendingConnects);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void onConnectFinished(Connection connection, boolean connected, long connectNanos) {
+        pendingConnects.release();
+
+        if (connected) {
+            establishedConnections.incrementAndGet();
+            openConnections.addLast(connection);
+            Metrics.getConnectLatency().record(connectNanos);
+            Metrics.getConnectsEstablished().increment();
+        } else {
+            failedConnections.incrementAndGet();
+            Metrics.getConnectsFailed().increment();
+        }
+    }
+
+    public int getEstablishedConnections() {
+        return establishedConnections.get();
+    }
+
+    public int getFailedConnections() {
+        return failedConnections.get();
+    }
+
+    private static void waitUntil(long intendedNanos) {
+        long nanosToWait;
+        while ((nanosToWait = intendedNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(nanosToWait);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package simulator.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import simulator.core.BufferPool;
+import simulator.core.Reader;
+import simulator.journal.JournalEvent;
+import simulator.metrics.Metrics;
+import simulator.schedule.SendScheduler;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a single event loop thread. It owns one
+ * selector which multiplexes reads, writes and connects
+ * of thousands of connections.
+ * <p>
+ * Connections are handed over from other threads through
+ * a registration queue and from then onwards they are
+ * only touched by this thread
+ * <p>
+ * Every loop has its own pools of read buffers and write
+ * chunks, which its connections borrow from while they read
+ * or have bytes queued
+ * <p>
+ * Sessions of churning users are ended by a second timer, so a
+ * connection can wait for its next send and its logout at once
+ */
+
+@Slf4j
+public class EventLoop extends Thread {
+    private static final int READ_BUFFERS_PER_SLAB = 16;
+    private static final int CHUNKS_PER_SLAB = 256;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final Selector selector;
+    private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> pendingLogouts = new ConcurrentLinkedQueue<>();
+    @Getter(AccessLevel.PACKAGE)
+    private final SendScheduler<Connection> sendScheduler = new SendScheduler<>();
+    @Getter(AccessLevel.PACKAGE)
+    private final SendScheduler<ChurnSession> sessionTimers = new SendScheduler<>();
+    private final ArrayDeque<Connection> connectionsToFlush = new ArrayDeque<>();
+    @Getter(AccessLevel.PACKAGE)
+    private final BufferPool readBufferPool = new BufferPool(Reader.READ_BUFFER_SIZE, READ_BUFFERS_PER_SLAB);
+    @Getter(AccessLevel.PACKAGE)
+    private final BufferPool chunkPool = new BufferPool(OutboundQueue.CHUNK_SIZE, CHUNKS_PER_SLAB);
+    private volatile boolean running = true;
+
+    public EventLoop(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * This method hands connection over to this event loop.
+     * It can be called from any thread
+     *
+     * @param connection which needs to be registered
+     */
+
+    public void register(Connection connection) {
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * This method asks the loop to log connection out and
+     * close it. It can be called from any thread
+     *
+     * @param connection which needs to be logged out
+     */
+
+    public void logout(Connection connection) {
+        pendingLogouts.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * This method remembers connection which queued frames
+     * in this round so it is flushed once the round is over.
+     * It must only be called from this loop
+     *
+     * @param connection which needs to be flushed
+     */
+
+    void requestFlush(Connection connection) {
+        connectionsToFlush.add(connection);
+    }
+
+    /**
+     * This method stops the event loop. All connections
+     * of this loop are closed by loop thread itself
+     */
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        log.info("Event loop {} started", getName());
+
+        try {
+            while (running) {
+                waitForEvents();
+                registerPendingConnections();
+                logoutPendingConnections();
+                processSelectedKeys();
+                long nowNanos = System.nanoTime();
+                sendScheduler.runDueSends(nowNanos);
+                sessionTimers.runDueSends(nowNanos);
+                flushRequestedConnections();
+            }
+        } catch (Exception exception) {
+            log.error("Event loop {} stopped because of error ", getName(), exception);
+        } finally {
+            finallyBlockExecutionForGraceFulShutdown();
+            log.info("Event loop {} ended", getName());
+        }
+    }
+
+    /**
+     * This method blocks until some channel is ready or
+     * until next paced send or session timer of this loop is due
+     *
+     * @throws IOException dealt above
+     */
+
+    private void waitForEvents() throws IOException {
+        long nowNanos = System.nanoTime();
+        long nanosUntilNextSend = Math.min(sendScheduler.nanosUntilNextSend(nowNanos),
+                sessionTimers.nanosUntilNextSend(nowNanos));
+
+        if (nanosUntilNextSend == SendScheduler.NOTHING_SCHEDULED) {
+            selector.select();
+        } else if (nanosUntilNextSend == 0) {
+            selector.selectNow();
+        } else {
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanosUntilNextSend)));
+        }
+    }
+
+    /**
+     * This method registers all connections which were
+     * handed over since last select
+     */
+
+    private void registerPendingConnections() {
+        Connection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                connection.register();
+            } catch (IOException exception) {
+                log.error("Could not register connection ", exception);
+                connection.close();
+            }
+        }
+    }
+
+    private void logoutPendingConnections() {
+        Connection connection;
+        while ((connection = pendingLogouts.poll()) != null) {
+            connection.logout();
+        }
+    }
+
+    /**
+     * This method dispatches all ready events to their
+     * connections. Failure of one connection only closes
+     * that connection
+     */
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+
+            Connection connection = (Connection) selectionKey.attachment();
+            try {
+                if (selectionKey.isValid() && selectionKey.isConnectable()) {
+                    connection.onConnectable();
+                }
+                if (selectionKey.isValid() && selectionKey.isReadable()) {
+                    connection.onReadable();
+                }
+                if (selectionKey.isValid() && selectionKey.isWritable()) {
+                    connection.onWritable();
+                }
+            } catch (IOException | CancelledKeyException exception) {
+                log.error("Closing connection because of error ", exception);
+                connection.getUserState().recordEvent(JournalEvent.ERROR, 0, 0);
+                Metrics.getErrors().increment();
+                connection.close();
+            }
+        }
+    }
+
+    private void flushRequestedConnections() {
+        Connection connection;
+        while ((connection = connectionsToFlush.poll()) != null) {
+            connection.onFlushRequested();
+        }
+    }
+
+    /**
+     * Graceful shutdown of all connections and selector
+     */
+
+    private void finallyBlockExecutionForGraceFulShutdown() {
+        for (SelectionKey selectionKey : selector.keys()) {
+            ((Connection) selectionKey.attachment()).close();
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing selector");
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package simulator.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.capture.ReplayScript;
+import simulator.properties.SimulatorProperties;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is a fixed pool of event loops. Every new
+ * connection is assigned to one of the loops in round
+ * robin fashion so one simulator process can drive a
+ * very large number of clients with only a handful of
+ * threads. Connections are spread over the configured
+ * source addresses, see {@link SourceAddresses}
+ */
+
+@Slf4j
+public class EventLoopGroup {
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+    private final SourceAddresses sourceAddresses = SimulatorProperties.getSourceAddresses();
+
+    public EventLoopGroup(int numberOfEventLoops) throws IOException {
+        log.info("Starting {} event loops", numberOfEventLoops);
+        eventLoops = new EventLoop[numberOfEventLoops];
+
+        for (int i = 0; i < numberOfEventLoops; i++) {
+            eventLoops[i] = new EventLoop("event-loop-" + i);
+            eventLoops[i].start();
+        }
+    }
+
+    /**
+     * This method returns the event loop which should
+     * own the next connection
+     *
+     * @return event loop
+     */
+
+    public EventLoop next() {
+        return eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+    }
+
+    /**
+     * This method opens a non blocking connection to the
+     * server and hands it over to one of the event loops.
+     *
+     * @param serverAddress address of chat server
+     * @return connection which has been created
+     * @throws IOException in case channel could not be opened
+     */
+
+    public Connection connect(InetSocketAddress serverAddress) throws IOException {
+        return connect(serverAddress, ConnectListener.NONE);
+    }
+
+    /**
+     * This method starts a non blocking connect to the server
+     * and hands the connection over to one of the event loops
+     * which finishes the connect once server has accepted it.
+     *
+     * @param serverAddress   address of chat server
+     * @param connectListener notified once connect has finished
+     * @return connection which has been created
+     * @throws IOException in case channel could not be opened
+     */
+
+    public Connection connect(InetSocketAddress serverAddress, ConnectListener connectListener) throws IOException {
+        return connect(serverAddress, connectListener, null);
+    }
+
+    /**
+     * This method starts a connect like {@link #connect(InetSocketAddress, ConnectListener)}
+     * for a connection which replays captured frames instead of
+     * generating messages
+     *
+     * @param serverAddress   address of chat server
+     * @param connectListener notified once connect has finished
+     * @param replayScript    frames to replay or null to generate messages
+     * @return connection which has been created
+     * @throws IOException in case channel could not be opened
+     */
+
+    public Connection connect(InetSocketAddress serverAddress, ConnectListener connectListener,
+                              ReplayScript replayScript) throws IOException {
+        return connect(serverAddress, connectListener, replayScript, null);
+    }
+
+    /**
+     * This method starts a connect for one session of a churning
+     * user, which logs out again once its session is over
+     *
+     * @param serverAddress   address of chat server
+     * @param connectListener notified once connect has finished
+     * @param replayScript    frames to replay or null to generate messages
+     * @param churnSession    session of a churning user or null
+     * @return connection which has been created
+     * @throws IOException in case channel could not be opened
+     */
+
+    Connection connect(InetSocketAddress serverAddress, ConnectListener connectListener,
+                       ReplayScript replayScript, ChurnSession churnSession) throws IOException {
+        SocketChannel socketChannel = SocketChannel.open();
+        EventLoop eventLoop = next();
+        Connection connection = new Connection(socketChannel, eventLoop, replayScript, churnSession);
+        try {
+            socketChannel.configureBlocking(false);
+            sourceAddresses.bind(socketChannel);
+            connection.connect(serverAddress, connectListener);
+        } catch (IOException exception) {
+            connection.abandon();
+            throw exception;
+        }
+
+        eventLoop.register(connection);
+        return connection;
+    }
+
+    /**
+     * This method stops all event loops
+     */
+
+    public void shutdown() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
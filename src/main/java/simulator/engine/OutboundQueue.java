@@ -0,0 +1,173 @@
+package simulator.engine;
+
+import simulator.core.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * This class queues frames of one connection which have not
+ * been written to the socket yet. Frames are encoded back to back
+ * into chunks, so many small frames share one chunk, and chunks are
+ * flushed with a single gathering write.
+ * <p>
+ * Every chunk in the queue holds its unwritten bytes between its
+ * position and limit. A frame is appended behind the limit of the
+ * last chunk through {@link #beginFrame(int)} and {@link #endFrame()}.
+ * <p>
+ * A queue created with a {@link BufferPool} takes its chunks from
+ * the pool and gives every chunk back as soon as it has been
+ * written, so a connection with nothing to send holds no chunk.
+ * Frames larger than a pooled chunk get a chunk of their own.
+ * <p>
+ * This class is not thread safe, it belongs to one event loop.
+ */
+
+public class OutboundQueue {
+    static final int CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_CHUNKS_PER_WRITE = 64;
+
+    private final BufferPool chunkPool;
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+    private final ByteBuffer[] gatheringArray = new ByteBuffer[MAX_CHUNKS_PER_WRITE];
+
+    private ByteBuffer appendChunk;
+    private int appendReadPosition;
+    private int appendStartPosition;
+    private long queuedBytes;
+
+    public OutboundQueue() {
+        this(null);
+    }
+
+    /**
+     * @param chunkPool pool of the event loop or null for
+     *                  chunks owned by this queue
+     */
+
+    public OutboundQueue(BufferPool chunkPool) {
+        this.chunkPool = chunkPool;
+    }
+
+    /**
+     * This method returns a buffer into which the caller writes
+     * exactly one frame starting at its current position. Frame
+     * is only part of the queue after {@link #endFrame()}.
+     *
+     * @param frameLength number of bytes of the frame
+     * @return buffer to encode frame into
+     */
+
+    public ByteBuffer beginFrame(int frameLength) {
+        ByteBuffer lastChunk = chunks.peekLast();
+        if (lastChunk == null || lastChunk.capacity() - lastChunk.limit() < frameLength) {
+            lastChunk = newChunk(frameLength);
+            lastChunk.limit(0);
+            chunks.addLast(lastChunk);
+        }
+
+        appendChunk = lastChunk;
+        appendReadPosition = lastChunk.position();
+        appendStartPosition = lastChunk.limit();
+        lastChunk.limit(lastChunk.capacity());
+        lastChunk.position(appendStartPosition);
+        return lastChunk;
+    }
+
+    /**
+     * This method adds frame written since {@link #beginFrame(int)}
+     * to the queue
+     */
+
+    public void endFrame() {
+        int appendEndPosition = appendChunk.position();
+        appendChunk.limit(appendEndPosition);
+        appendChunk.position(appendReadPosition);
+        queuedBytes += appendEndPosition - appendStartPosition;
+        appendChunk = null;
+    }
+
+    /**
+     * This method writes as much of the queue as the socket
+     * accepts using one gathering write per batch of chunks.
+     * Fully written chunks are dropped except the last one which
+     * is kept for the next frames
+     *
+     * @param channel to write to
+     * @return true if queue is empty afterwards
+     * @throws IOException in case write failed
+     */
+
+    public boolean flush(GatheringByteChannel channel) throws IOException {
+        while (queuedBytes > 0) {
+            int chunksToWrite = 0;
+            Iterator<ByteBuffer> iterator = chunks.iterator();
+            while (iterator.hasNext() && chunksToWrite < MAX_CHUNKS_PER_WRITE) {
+                gatheringArray[chunksToWrite++] = iterator.next();
+            }
+
+            long written = channel.write(gatheringArray, 0, chunksToWrite);
+            queuedBytes -= written;
+            releaseWrittenChunks();
+
+            for (int i = 0; i < chunksToWrite; i++) {
+                gatheringArray[i] = null;
+            }
+
+            if (written == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return queuedBytes == 0;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * This method drops everything which is still queued and gives
+     * pooled chunks back. It is called once the connection has been
+     * closed
+     */
+
+    public void release() {
+        ByteBuffer chunk;
+        while ((chunk = chunks.pollFirst()) != null) {
+            if (chunkPool != null) {
+                chunkPool.release(chunk);
+            }
+        }
+        queuedBytes = 0;
+    }
+
+    private ByteBuffer newChunk(int frameLength) {
+        if (chunkPool == null) {
+            return ByteBuffer.allocate(Math.max(CHUNK_SIZE, frameLength));
+        }
+        return frameLength <= chunkPool.getBufferSize()
+                ? chunkPool.acquire() : ByteBuffer.allocateDirect(frameLength);
+    }
+
+    private void releaseWrittenChunks() {
+        ByteBuffer firstChunk;
+        while ((firstChunk = chunks.peekFirst()) != null && !firstChunk.hasRemaining()) {
+            if (chunkPool != null) {
+                chunkPool.release(chunks.pollFirst());
+                continue;
+            }
+            if (chunks.size() == 1 && firstChunk.capacity() == CHUNK_SIZE) {
+                firstChunk.clear().limit(0);
+                return;
+            }
+            chunks.pollFirst();
+        }
+    }
+}
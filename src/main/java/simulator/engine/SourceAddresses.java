@@ -0,0 +1,140 @@
+package simulator.engine;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class spreads outgoing connections over several local
+ * addresses. Every local address has its own range of ephemeral
+ * ports towards the server, so with 127.0.0.1 to 127.0.0.8 one
+ * simulator can hold eight times as many connections to a server
+ * on loopback as with the default address alone.
+ * <p>
+ * Addresses are given as comma separated list of addresses and
+ * ranges of IPv4 addresses:
+ * <pre>
+ * 127.0.0.1-127.0.0.8
+ * 127.0.0.1,127.0.0.5,127.0.1.1-127.0.1.4
+ * </pre>
+ * Without any address channels are not bound and the operating
+ * system picks the local address.
+ * <p>
+ * Addresses are taken round robin, so this class can be used by
+ * any number of connecting threads at the same time
+ */
+
+public class SourceAddresses {
+    private static final int MAX_ADDRESSES = 65536;
+
+    private final InetAddress[] addresses;
+    private final AtomicInteger nextAddress = new AtomicInteger();
+
+    private SourceAddresses(InetAddress[] addresses) {
+        this.addresses = addresses;
+    }
+
+    public static SourceAddresses none() {
+        return new SourceAddresses(new InetAddress[0]);
+    }
+
+    /**
+     * This method reads addresses from their text
+     *
+     * @param text addresses as described above, null or empty for none
+     * @return source addresses
+     * @throws IllegalArgumentException if text is not a valid list of addresses
+     */
+
+    public static SourceAddresses parse(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return none();
+        }
+
+        List<InetAddress> addresses = new ArrayList<>();
+        for (String part : text.split(",")) {
+            String addressOrRange = part.trim();
+            int separator = addressOrRange.indexOf('-');
+            if (separator < 0) {
+                addresses.add(address(addressOrRange));
+                continue;
+            }
+
+            int first = toInt(address(addressOrRange.substring(0, separator).trim()));
+            int last = toInt(address(addressOrRange.substring(separator + 1).trim()));
+            long count = (last & 0xFFFFFFFFL) - (first & 0xFFFFFFFFL) + 1;
+            if (count <= 0 || addresses.size() + count > MAX_ADDRESSES) {
+                throw new IllegalArgumentException("Invalid address range " + addressOrRange);
+            }
+            for (long i = 0; i < count; i++) {
+                addresses.add(fromInt(first + (int) i));
+            }
+        }
+        return new SourceAddresses(addresses.toArray(new InetAddress[0]));
+    }
+
+    /**
+     * This method binds channel to the next source address
+     * before it is connected. Ports of a source address are
+     * shared with connections of other source addresses
+     *
+     * @param socketChannel channel which has not been connected yet
+     * @throws IOException if channel can not be bound
+     */
+
+    public void bind(SocketChannel socketChannel) throws IOException {
+        if (addresses.length == 0) {
+            return;
+        }
+
+        InetAddress address = addresses[Math.floorMod(nextAddress.getAndIncrement(), addresses.length)];
+        socketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        socketChannel.bind(new InetSocketAddress(address, 0));
+    }
+
+    public int size() {
+        return addresses.length;
+    }
+
+    @Override
+    public String toString() {
+        if (addresses.length == 0) {
+            return "default";
+        }
+        return addresses.length == 1 ? addresses[0].getHostAddress()
+                : addresses[0].getHostAddress() + " and " + (addresses.length - 1) + " more";
+    }
+
+    private static InetAddress address(String text) {
+        try {
+            InetAddress address = InetAddress.getByName(text);
+            if (!(address instanceof Inet4Address)) {
+                throw new IllegalArgumentException("Source address needs to be IPv4 but was " + text);
+            }
+            return address;
+        } catch (UnknownHostException exception) {
+            throw new IllegalArgumentException("Unknown source address " + text, exception);
+        }
+    }
+
+    private static int toInt(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+    }
+
+    private static InetAddress fromInt(int address) {
+        try {
+            return InetAddress.getByAddress(new byte[]{(byte) (address >>> 24), (byte) (address >>> 16),
+                    (byte) (address >>> 8), (byte) address});
+        } catch (UnknownHostException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
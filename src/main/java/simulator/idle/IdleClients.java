@@ -0,0 +1,79 @@
+package simulator.idle;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.core.ConnectionState;
+import simulator.engine.SourceAddresses;
+import simulator.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * This class holds a large number of idle users on a few idle
+ * loops, for finding how many logged in connections the server
+ * can hold and how much memory they cost it.
+ * <p>
+ * Users, connect rate and cap on pending connects are split
+ * evenly between the loops, every loop then opens its share on
+ * its own. Connections are spread over the source addresses, so
+ * more users can be held than one local address has ports.
+ */
+
+@Slf4j
+public class IdleClients {
+    private final IdleLoop[] idleLoops;
+
+    /**
+     * @param numberOfLoops          selector threads holding the users
+     * @param serverAddress          address of chat server
+     * @param sourceAddresses        local addresses connections are bound to
+     * @param users                  number of idle users
+     * @param connectionsPerSecond   connect rate of all loops together, 0 means no limit
+     * @param maxPendingConnects     connects which may be unfinished at once
+     * @param keepaliveIntervalNanos time between two keepalives of a user, 0 for none
+     * @throws IOException if a selector can not be opened
+     */
+
+    public IdleClients(int numberOfLoops, InetSocketAddress serverAddress, SourceAddresses sourceAddresses, int users,
+                       double connectionsPerSecond, int maxPendingConnects, long keepaliveIntervalNanos)
+            throws IOException {
+        log.info("Holding {} idle users on {} loops from source addresses {}, keepalive every {} ms", users,
+                numberOfLoops, sourceAddresses, keepaliveIntervalNanos / 1_000_000);
+        idleLoops = new IdleLoop[numberOfLoops];
+
+        for (int i = 0; i < numberOfLoops; i++) {
+            int usersOfLoop = users / numberOfLoops + (i < users % numberOfLoops ? 1 : 0);
+            idleLoops[i] = new IdleLoop("idle-loop-" + i, serverAddress, sourceAddresses, usersOfLoop,
+                    connectionsPerSecond / numberOfLoops, Math.max(1, maxPendingConnects / numberOfLoops),
+                    keepaliveIntervalNanos);
+        }
+    }
+
+    public void start() {
+        for (IdleLoop idleLoop : idleLoops) {
+            idleLoop.start();
+        }
+    }
+
+    /**
+     * This method stops all loops, which close their users
+     */
+
+    public void shutdown() {
+        for (IdleLoop idleLoop : idleLoops) {
+            idleLoop.shutdown();
+        }
+    }
+
+    /**
+     * @return short description used in progress output
+     */
+
+    public String describe() {
+        return String.format("users connecting=%d connected=%d loggedIn=%d, connects failed=%d",
+                Metrics.getConnectionStates().getUsers(ConnectionState.CONNECTING),
+                Metrics.getConnectionStates().getUsers(ConnectionState.CONNECTED),
+                Metrics.getConnectionStates().getUsers(ConnectionState.LOGGED_IN),
+                Metrics.getConnectsFailed().sum());
+    }
+}
@@ -0,0 +1,158 @@
+package simulator.idle;
+
+import simulator.core.ConnectionState;
+import simulator.metrics.Metrics;
+
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * This class holds the connections of one idle loop. Every
+ * connection is a slot, its state lives in primitive arrays
+ * indexed by that slot instead of objects per connection:
+ * <pre>
+ * channels              channel of the connection
+ * states                ordinal of its {@link ConnectionState}
+ * userIds               id the server assigned, 0 until then
+ * magicNumbers          magic number the server sent with the login
+ * connectStartedNanos   time the connect was started
+ * unreadBytes           start of a frame which was not read completely
+ * unwrittenBytes        end of a frame the socket did not take
+ * </pre>
+ * Unread and unwritten bytes are null for nearly all connections,
+ * idle users exchange a few small frames only. Slots are never
+ * reused, a closed connection keeps its slot in state CLOSED.
+ * <p>
+ * All methods are called from the owning idle loop only
+ */
+
+class IdleConnectionTable {
+    private static final ConnectionState[] CONNECTION_STATES = ConnectionState.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private SocketChannel[] channels = new SocketChannel[INITIAL_CAPACITY];
+    private byte[] states = new byte[INITIAL_CAPACITY];
+    private int[] userIds = new int[INITIAL_CAPACITY];
+    private int[] magicNumbers = new int[INITIAL_CAPACITY];
+    private long[] connectStartedNanos = new long[INITIAL_CAPACITY];
+    private byte[][] unreadBytes = new byte[INITIAL_CAPACITY][];
+    private byte[][] unwrittenBytes = new byte[INITIAL_CAPACITY][];
+    private int size;
+
+    /**
+     * This method adds a connection whose connect
+     * has just been started
+     *
+     * @param socketChannel channel of the connection
+     * @param nowNanos      time the connect was started
+     * @return slot of the connection
+     */
+
+    int add(SocketChannel socketChannel, long nowNanos) {
+        if (size == channels.length) {
+            grow();
+        }
+
+        int slot = size++;
+        channels[slot] = socketChannel;
+        states[slot] = (byte) ConnectionState.NEW.ordinal();
+        connectStartedNanos[slot] = nowNanos;
+        moveTo(slot, ConnectionState.CONNECTING);
+        return slot;
+    }
+
+    int size() {
+        return size;
+    }
+
+    SocketChannel getChannel(int slot) {
+        return channels[slot];
+    }
+
+    ConnectionState getState(int slot) {
+        return CONNECTION_STATES[states[slot]];
+    }
+
+    /**
+     * This method moves connection to a new state and keeps
+     * the state gauge up to date. Once closed a connection
+     * does not move anymore
+     */
+
+    void moveTo(int slot, ConnectionState newState) {
+        ConnectionState oldState = getState(slot);
+        if (oldState == ConnectionState.CLOSED) {
+            return;
+        }
+        states[slot] = (byte) newState.ordinal();
+        Metrics.getConnectionStates().transition(oldState, newState);
+    }
+
+    boolean isLoggedIn(int slot) {
+        return states[slot] == ConnectionState.LOGGED_IN.ordinal();
+    }
+
+    int getUserId(int slot) {
+        return userIds[slot];
+    }
+
+    void setUserId(int slot, int userId) {
+        userIds[slot] = userId;
+    }
+
+    int getMagicNumber(int slot) {
+        return magicNumbers[slot];
+    }
+
+    void setMagicNumber(int slot, int magicNumber) {
+        magicNumbers[slot] = magicNumber;
+    }
+
+    long getConnectStartedNanos(int slot) {
+        return connectStartedNanos[slot];
+    }
+
+    /**
+     * @return unread bytes, which are taken out of the table
+     */
+
+    byte[] takeUnreadBytes(int slot) {
+        byte[] bytes = unreadBytes[slot];
+        unreadBytes[slot] = null;
+        return bytes;
+    }
+
+    void setUnreadBytes(int slot, byte[] bytes) {
+        unreadBytes[slot] = bytes;
+    }
+
+    byte[] getUnwrittenBytes(int slot) {
+        return unwrittenBytes[slot];
+    }
+
+    void setUnwrittenBytes(int slot, byte[] bytes) {
+        unwrittenBytes[slot] = bytes;
+    }
+
+    /**
+     * This method drops everything a closed connection held
+     * on to except its state
+     */
+
+    void release(int slot) {
+        channels[slot] = null;
+        unreadBytes[slot] = null;
+        unwrittenBytes[slot] = null;
+    }
+
+    private void grow() {
+        int capacity = channels.length * 2;
+        channels = Arrays.copyOf(channels, capacity);
+        states = Arrays.copyOf(states, capacity);
+        userIds = Arrays.copyOf(userIds, capacity);
+        magicNumbers = Arrays.copyOf(magicNumbers, capacity);
+        connectStartedNanos = Arrays.copyOf(connectStartedNanos, capacity);
+        unreadBytes = Arrays.copyOf(unreadBytes, capacity);
+        unwrittenBytes = Arrays.copyOf(unwrittenBytes, capacity);
+    }
+}
@@ -0,0 +1,450 @@
+package simulator.idle;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.core.ConnectionState;
+import simulator.core.FrameTemplate;
+import simulator.core.PacketEncoder;
+import simulator.core.Reader;
+import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.engine.SourceAddresses;
+import simulator.metrics.Metrics;
+import simulator.properties.Constants;
+import simulator.properties.SimulatorProperties;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is a selector thread which opens its share of idle
+ * users and keeps them logged in. Users connect at the ramp rate
+ * of the loop, log in and then only send a keepalive message to
+ * themselves now and then, if keepalives are switched on.
+ * <p>
+ * Per user the loop only keeps a slot of its {@link IdleConnectionTable},
+ * the channel and its selection key. All users of a loop read into one
+ * shared buffer and write from one shared buffer, bytes of a frame which
+ * could not be read or written completely are the only thing copied
+ * aside. The key of a user is attached to its slot.
+ * <p>
+ * Keepalives go round robin through the table, so every user sends
+ * one per keepalive interval and the loop sends them evenly spread
+ * instead of all at once. Idle users are not added to the peer
+ * directory, nobody else sends messages to them.
+ */
+
+@Slf4j
+class IdleLoop extends Thread {
+    private static final boolean LATENCY_MODE = SimulatorProperties.isLatencyMode();
+    private static final String KEEPALIVE_MESSAGE = "keepalive";
+
+    private final Selector selector;
+    private final IdleConnectionTable connectionTable = new IdleConnectionTable();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(Reader.READ_BUFFER_SIZE);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(256);
+    private final PacketView packetView = new PacketView();
+    private final FrameTemplate keepaliveTemplate = new FrameTemplate(KEEPALIVE_MESSAGE, LATENCY_MODE);
+
+    private final InetSocketAddress serverAddress;
+    private final SourceAddresses sourceAddresses;
+    private final int connectsToStart;
+    private final int maxPendingConnects;
+    private final long connectIntervalNanos;
+    private final long keepaliveIntervalNanos;
+
+    private int connectsStarted;
+    private int pendingConnects;
+    private long nextConnectNanos;
+    private long nextKeepaliveNanos;
+    private int keepaliveCursor;
+    private volatile boolean running = true;
+
+    /**
+     * @param name                   of the thread
+     * @param serverAddress          address of chat server
+     * @param sourceAddresses        local addresses connections are bound to
+     * @param connectsToStart        users this loop opens
+     * @param connectionsPerSecond   connect rate of this loop, 0 means no limit
+     * @param maxPendingConnects     connects of this loop which may be unfinished at once
+     * @param keepaliveIntervalNanos time between two keepalives of a user, 0 for none
+     * @throws IOException if selector can not be opened
+     */
+
+    IdleLoop(String name, InetSocketAddress serverAddress, SourceAddresses sourceAddresses, int connectsToStart,
+             double connectionsPerSecond, int maxPendingConnects, long keepaliveIntervalNanos) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+        this.serverAddress = serverAddress;
+        this.sourceAddresses = sourceAddresses;
+        this.connectsToStart = connectsToStart;
+        this.maxPendingConnects = maxPendingConnects;
+        this.connectIntervalNanos = connectionsPerSecond > 0 ? (long) (1_000_000_000L / connectionsPerSecond) : 0;
+        this.keepaliveIntervalNanos = keepaliveIntervalNanos;
+    }
+
+    /**
+     * This method stops the loop, its connections are
+     * closed by loop thread itself
+     */
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        log.info("Idle loop {} started with {} users", getName(), connectsToStart);
+        nextConnectNanos = System.nanoTime();
+        nextKeepaliveNanos = nextConnectNanos;
+
+        try {
+            while (running) {
+                waitForEvents();
+                processSelectedKeys();
+                long nowNanos = System.nanoTime();
+                startDueConnects(nowNanos);
+                sendDueKeepalives(nowNanos);
+            }
+        } catch (Exception exception) {
+            log.error("Idle loop {} stopped because of error ", getName(), exception);
+        } finally {
+            closeAll();
+            log.info("Idle loop {} ended", getName());
+        }
+    }
+
+    /**
+     * This method blocks until some channel is ready or until
+     * next connect or next keepalive of this loop is due
+     *
+     * @throws IOException dealt above
+     */
+
+    private void waitForEvents() throws IOException {
+        long nowNanos = System.nanoTime();
+        long nanosUntilNextEvent = Long.MAX_VALUE;
+        if (connectsStarted < connectsToStart && pendingConnects < maxPendingConnects) {
+            nanosUntilNextEvent = Math.max(0, nextConnectNanos - nowNanos);
+        }
+        if (keepaliveIntervalNanos > 0 && connectionTable.size() > 0) {
+            nanosUntilNextEvent = Math.min(nanosUntilNextEvent, Math.max(0, nextKeepaliveNanos - nowNanos));
+        }
+
+        if (nanosUntilNextEvent == Long.MAX_VALUE) {
+            selector.select();
+        } else if (nanosUntilNextEvent == 0) {
+            selector.selectNow();
+        } else {
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanosUntilNextEvent)));
+        }
+    }
+
+    /**
+     * This method dispatches all ready events to their users.
+     * Failure of one user only closes that user
+     */
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+
+            int slot = (Integer) selectionKey.attachment();
+            try {
+                if (selectionKey.isValid() && selectionKey.isConnectable()) {
+                    onConnectable(slot, selectionKey);
+                }
+                if (selectionKey.isValid() && selectionKey.isReadable()) {
+                    onReadable(slot);
+                }
+                if (selectionKey.isValid() && selectionKey.isWritable()) {
+                    onWritable(slot, selectionKey);
+                }
+            } catch (IOException | CancelledKeyException exception) {
+                log.error("Closing idle connection because of error ", exception);
+                Metrics.getErrors().increment();
+                close(slot);
+            }
+        }
+    }
+
+    /**
+     * This method starts connects which are due following
+     * the rate of this loop and its cap on pending connects
+     */
+
+    private void startDueConnects(long nowNanos) {
+        while (connectsStarted < connectsToStart && pendingConnects < maxPendingConnects
+                && nextConnectNanos - nowNanos <= 0) {
+            connectsStarted++;
+            nextConnectNanos += connectIntervalNanos;
+            startConnect(nowNanos);
+        }
+    }
+
+    private void startConnect(long nowNanos) {
+        SocketChannel socketChannel = null;
+        try {
+            socketChannel = SocketChannel.open();
+            socketChannel.configureBlocking(false);
+            sourceAddresses.bind(socketChannel);
+        } catch (IOException exception) {
+            log.error("Could not start connect ", exception);
+            closeQuietly(socketChannel);
+            Metrics.getConnectsFailed().increment();
+            return;
+        }
+
+        int slot = connectionTable.add(socketChannel, nowNanos);
+        pendingConnects++;
+        try {
+            boolean connected = socketChannel.connect(serverAddress);
+            socketChannel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, slot);
+            if (connected) {
+                finishedConnecting(slot, System.nanoTime());
+            }
+        } catch (IOException exception) {
+            log.error("Could not start connect ", exception);
+            close(slot);
+        }
+    }
+
+    private void onConnectable(int slot, SelectionKey selectionKey) throws IOException {
+        if (connectionTable.getChannel(slot).finishConnect()) {
+            finishedConnecting(slot, System.nanoTime());
+            selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void finishedConnecting(int slot, long nowNanos) {
+        pendingConnects--;
+        connectionTable.moveTo(slot, ConnectionState.CONNECTED);
+        Metrics.getConnectLatency().record(nowNanos - connectionTable.getConnectStartedNanos(slot));
+        Metrics.getConnectsEstablished().increment();
+    }
+
+    /**
+     * This method reads whatever server has sent to the user into
+     * the shared buffer, after the start of a frame left over from
+     * last read, and processes every complete frame. Start of an
+     * incomplete frame is copied aside for the next read
+     *
+     * @throws IOException if read failed or a frame can not be held
+     */
+
+    private void onReadable(int slot) throws IOException {
+        readBuffer.clear();
+        byte[] unreadBytes = connectionTable.takeUnreadBytes(slot);
+        if (unreadBytes != null) {
+            readBuffer.put(unreadBytes);
+        }
+
+        int bytesRead = connectionTable.getChannel(slot).read(readBuffer);
+        if (bytesRead == -1) {
+            close(slot);
+            return;
+        }
+        Metrics.getBytesReceived().add(bytesRead);
+        readBuffer.flip();
+
+        long nowNanos = System.nanoTime();
+        int messagesRead = 0;
+        while (readBuffer.remaining() >= Constants.START_OF_MESSAGE_INCLUSIVE) {
+            int frameOffset = readBuffer.position();
+            int messageLength = readBuffer.getInt(frameOffset + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE);
+            int frameLength = Constants.START_OF_MESSAGE_INCLUSIVE + messageLength;
+            if (messageLength < 0 || frameLength > readBuffer.capacity()) {
+                throw new IOException("Idle user can not receive frame with message length " + messageLength);
+            }
+            if (readBuffer.remaining() < frameLength) {
+                break;
+            }
+
+            if (processFrame(slot, packetView.wrap(readBuffer, frameOffset), nowNanos)) {
+                messagesRead++;
+            }
+            readBuffer.position(frameOffset + frameLength);
+        }
+        Metrics.getMessagesReceived().add(messagesRead);
+
+        if (readBuffer.hasRemaining()) {
+            byte[] incompleteFrame = new byte[readBuffer.remaining()];
+            readBuffer.get(incompleteFrame);
+            connectionTable.setUnreadBytes(slot, incompleteFrame);
+        }
+    }
+
+    /**
+     * Once server has assigned an id the user logs in, once the
+     * login has been accepted it is logged in for the rest of the run
+     *
+     * @return true if frame was a DATA message
+     */
+
+    private boolean processFrame(int slot, PacketView packet, long nowNanos) throws IOException {
+        MessageType messageType = packet.getMessageType();
+
+        if (messageType == MessageType.DATA) {
+            if (LATENCY_MODE && packet.hasLatencyPrefix()) {
+                Metrics.getEndToEndLatency().record(nowNanos - packet.getSendTimestampNanos());
+            }
+            return true;
+        }
+
+        if (messageType == MessageType.GENERATED_ID) {
+            connectionTable.setUserId(slot, packet.getMessageDestinationId());
+            writeBuffer.clear();
+            PacketEncoder.writeHeader(connectionTable.getMagicNumber(slot), MessageType.LOGIN,
+                    packet.getMessageDestinationId(), Constants.SERVER_SOURCE_ID,
+                    Constants.NO_MASSAGE_LENGTH_DEFINED, writeBuffer);
+            write(slot);
+        } else if (messageType == MessageType.LOGIN) {
+            connectionTable.setMagicNumber(slot, packet.getMagicBytes());
+            connectionTable.moveTo(slot, ConnectionState.LOGGED_IN);
+            Metrics.getLoginsCompleted().increment();
+        }
+        return false;
+    }
+
+    /**
+     * This method sends the keepalives which are due. A loop which
+     * fell behind sends at most one keepalive per user and then
+     * starts over from now, so keepalives never come in bursts
+     */
+
+    private void sendDueKeepalives(long nowNanos) throws IOException {
+        int users = connectionTable.size();
+        if (keepaliveIntervalNanos <= 0 || users == 0) {
+            return;
+        }
+
+        long keepaliveStepNanos = Math.max(1, keepaliveIntervalNanos / users);
+        int keepalivesLeft = users;
+        while (nextKeepaliveNanos - nowNanos <= 0 && keepalivesLeft-- > 0) {
+            int slot = keepaliveCursor;
+            keepaliveCursor = keepaliveCursor + 1 == users ? 0 : keepaliveCursor + 1;
+            if (connectionTable.isLoggedIn(slot) && connectionTable.getUnwrittenBytes(slot) == null) {
+                sendKeepalive(slot, nextKeepaliveNanos);
+            }
+            nextKeepaliveNanos += keepaliveStepNanos;
+        }
+        if (nextKeepaliveNanos - nowNanos <= 0) {
+            nextKeepaliveNanos = nowNanos + keepaliveStepNanos;
+        }
+    }
+
+    private void sendKeepalive(int slot, long sendTimestampNanos) {
+        int userId = connectionTable.getUserId(slot);
+        writeBuffer.clear();
+        keepaliveTemplate.writeTo(writeBuffer, connectionTable.getMagicNumber(slot), userId, userId,
+                sendTimestampNanos, 0);
+        try {
+            write(slot);
+            Metrics.getMessagesSent().increment();
+        } catch (IOException | CancelledKeyException exception) {
+            log.error("Closing idle connection because of error ", exception);
+            Metrics.getErrors().increment();
+            close(slot);
+        }
+    }
+
+    /**
+     * This method writes the frame in the shared write buffer.
+     * Bytes the socket does not take are copied aside and written
+     * once the socket is writable again
+     */
+
+    private void write(int slot) throws IOException {
+        writeBuffer.flip();
+        SocketChannel socketChannel = connectionTable.getChannel(slot);
+        Metrics.getBytesSent().add(socketChannel.write(writeBuffer));
+
+        if (writeBuffer.hasRemaining()) {
+            byte[] unwrittenBytes = new byte[writeBuffer.remaining()];
+            writeBuffer.get(unwrittenBytes);
+            connectionTable.setUnwrittenBytes(slot, unwrittenBytes);
+            socketChannel.keyFor(selector).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void onWritable(int slot, SelectionKey selectionKey) throws IOException {
+        byte[] unwrittenBytes = connectionTable.getUnwrittenBytes(slot);
+        if (unwrittenBytes == null) {
+            selectionKey.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+
+        ByteBuffer unwritten = ByteBuffer.wrap(unwrittenBytes);
+        Metrics.getBytesSent().add(connectionTable.getChannel(slot).write(unwritten));
+        if (unwritten.hasRemaining()) {
+            connectionTable.setUnwrittenBytes(slot, Arrays.copyOfRange(unwrittenBytes, unwritten.position(),
+                    unwrittenBytes.length));
+        } else {
+            connectionTable.setUnwrittenBytes(slot, null);
+            selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Graceful shutdown of one user. A connect which had not
+     * finished yet counts as failed
+     */
+
+    private void close(int slot) {
+        SocketChannel socketChannel = connectionTable.getChannel(slot);
+        if (socketChannel == null) {
+            return;
+        }
+
+        if (connectionTable.getState(slot) == ConnectionState.CONNECTING) {
+            pendingConnects--;
+            Metrics.getConnectsFailed().increment();
+        }
+        connectionTable.moveTo(slot, ConnectionState.CLOSED);
+        connectionTable.release(slot);
+
+        SelectionKey selectionKey = socketChannel.keyFor(selector);
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        closeQuietly(socketChannel);
+    }
+
+    /**
+     * Graceful shutdown of all users and selector
+     */
+
+    private void closeAll() {
+        for (int slot = 0; slot < connectionTable.size(); slot++) {
+            close(slot);
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing selector");
+        }
+    }
+
+    private static void closeQuietly(SocketChannel socketChannel) {
+        if (socketChannel == null) {
+            return;
+        }
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing socket", e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package simulator.journal;
+
+import simulator.properties.SimulatorProperties;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is the binary event journal of the simulator. It
+ * takes the place of per packet log statements: every thread
+ * records fixed size events into its own preallocated ring, which
+ * costs a clock read and four array stores, and the rings of all
+ * threads are dumped to a file once a run has failed.
+ * <p>
+ * Threads which end, like the client threads of thread per client
+ * modes, hand their ring over with {@link #threadEnded()}. Only the
+ * rings of the last {@link #MAX_ENDED_RINGS} ended threads are kept
+ * for the dump, so a run with many short lived threads does not
+ * hold on to the ring of every thread it ever had.
+ * <p>
+ * Client number in a record is the local number of the simulated
+ * client and not the id the server assigns, the latter is recorded
+ * with ID_ASSIGNED. Dumps are turned into readable traces with
+ * {@link JournalDump}.
+ */
+
+public class EventJournal {
+    private static final int RECORDS_PER_THREAD = SimulatorProperties.getJournalRecordsPerThread();
+    private static final boolean ENABLED = RECORDS_PER_THREAD > 0;
+    static final int MAX_ENDED_RINGS = 1024;
+
+    //shared between different threads, rings of running threads
+    private static final Set<JournalRing> rings = ConcurrentHashMap.newKeySet();
+    //shared between different threads, newest rings of ended threads, guarded by itself
+    private static final Deque<JournalRing> endedRings = new ArrayDeque<>();
+    private static final ThreadLocal<JournalRing> ringOfThread = ThreadLocal.withInitial(() -> {
+        JournalRing ring = new JournalRing(Thread.currentThread().getName(), RECORDS_PER_THREAD);
+        rings.add(ring);
+        return ring;
+    });
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static void record(JournalEvent event, int clientNumber) {
+        if (ENABLED) {
+            ringOfThread.get().record(System.nanoTime(), event, clientNumber, 0, 0, 0);
+        }
+    }
+
+    /**
+     * This method records one event on the ring of calling thread
+     *
+     * @param event        what happened
+     * @param clientNumber local number of the client
+     * @param size         size named by the event, usually bytes
+     * @param detail       detail named by the event
+     * @param value        value named by the event
+     */
+
+    public static void record(JournalEvent event, int clientNumber, int size, int detail, long value) {
+        if (ENABLED) {
+            ringOfThread.get().record(System.nanoTime(), event, clientNumber, size, detail, value);
+        }
+    }
+
+    /**
+     * This method records one event at a time caller has just
+     * taken anyway. Reading the clock is the most expensive part
+     * of a record, so hot paths which time themselves pass it in
+     *
+     * @param timestampNanos current {@link System#nanoTime()}
+     * @param event          what happened
+     * @param clientNumber   local number of the client
+     * @param size           size named by the event, usually bytes
+     * @param detail         detail named by the event
+     * @param value          value named by the event
+     */
+
+    public static void recordAt(long timestampNanos, JournalEvent event, int clientNumber, int size, int detail,
+                                long value) {
+        if (ENABLED) {
+            ringOfThread.get().record(timestampNanos, event, clientNumber, size, detail, value);
+        }
+    }
+
+    /**
+     * This method is called by a thread as the last thing it does.
+     * Its ring moves to the rings of ended threads, dropping the
+     * oldest of them once there are too many
+     */
+
+    public static void threadEnded() {
+        if (!ENABLED) {
+            return;
+        }
+
+        JournalRing ring = ringOfThread.get();
+        ringOfThread.remove();
+        rings.remove(ring);
+        synchronized (endedRings) {
+            endedRings.addLast(ring);
+            if (endedRings.size() > MAX_ENDED_RINGS) {
+                endedRings.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * This method writes rings of all running threads and of
+     * the last ended threads to a file
+     *
+     * @param file to write to, existing file is replaced
+     * @return number of records written
+     * @throws IOException if file can not be written
+     */
+
+    public static long dump(Path file) throws IOException {
+        List<JournalRing> snapshot = new ArrayList<>(rings);
+        synchronized (endedRings) {
+            snapshot.addAll(endedRings);
+        }
+        return JournalFile.write(file, snapshot);
+    }
+}
@@ -0,0 +1,112 @@
+package simulator.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class turns a journal dump into a readable trace, one
+ * line per record ordered by time over all threads:
+ * <pre>
+ * java -cp ... simulator.journal.JournalDump journal.bin [--client n] [--event name] [--last n]
+ * </pre>
+ * --client only prints records of one client, --event only
+ * records of one event type and --last only the newest records,
+ * which is usually where a failed run went wrong.
+ */
+
+public class JournalDump {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JournalDump <file> [--client n] [--event name] [--last n]");
+            System.exit(1);
+        }
+
+        Path file = Paths.get(args[0]);
+        Integer client = null;
+        JournalEvent event = null;
+        int last = Integer.MAX_VALUE;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--client":
+                    client = Integer.parseInt(value);
+                    break;
+                case "--event":
+                    event = JournalEvent.fromText(value)
+                            .orElseThrow(() -> new IllegalArgumentException("Unknown event " + value));
+                    break;
+                case "--last":
+                    last = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        JournalFile.Dump dump = JournalFile.read(file);
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+        System.out.printf("Journal dumped at %s, %d records kept of %d recorded%n",
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT).format(new Date(dump.getWallClockMillis())),
+                dump.getRecords().size(), dump.getEventsRecorded());
+
+        List<JournalRecord> records = dump.getRecords();
+        long firstNanos = records.isEmpty() ? 0 : records.get(0).getTimestampNanos();
+        int matching = 0;
+        for (JournalRecord record : records) {
+            if (matches(record, client, event)) {
+                matching++;
+            }
+        }
+
+        int toSkip = Math.max(0, matching - last);
+        for (JournalRecord record : records) {
+            if (!matches(record, client, event) || toSkip-- > 0) {
+                continue;
+            }
+            System.out.println(timeFormat.format(new Date(dump.toWallClockMillis(record.getTimestampNanos())))
+                    + String.format(Locale.ROOT, " %12.3fms ", (record.getTimestampNanos() - firstNanos) / NANOS_PER_MILLI)
+                    + format(record));
+        }
+    }
+
+    /**
+     * This method formats one record without its time
+     *
+     * @param record of a dump
+     * @return thread, client, event and the numbers the event uses
+     */
+
+    public static String format(JournalRecord record) {
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-18s client %-7d ",
+                record.getThreadName(), record.getClientNumber()));
+
+        JournalEvent event = JournalEvent.fromCode(record.getEventCode()).orElse(null);
+        if (event == null) {
+            return line.append("UNKNOWN(").append(record.getEventCode()).append(')').toString();
+        }
+
+        line.append(event.name());
+        appendField(line, event.getSizeLabel(), record.getSize());
+        appendField(line, event.getDetailLabel(), record.getDetail());
+        appendField(line, event.getValueLabel(), record.getValue());
+        return line.toString();
+    }
+
+    private static boolean matches(JournalRecord record, Integer client, JournalEvent event) {
+        return (client == null || record.getClientNumber() == client)
+                && (event == null || record.getEventCode() == event.getCode());
+    }
+
+    private static void appendField(StringBuilder line, String label, long value) {
+        if (label != null) {
+            line.append(' ').append(label).append('=').append(value);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package simulator.journal;
+
+import java.util.Optional;
+
+/**
+ * This enum represents what can be recorded in the event journal.
+ * Besides time and client every record has three numbers: size,
+ * detail and value. Every event names the numbers it uses, so the
+ * dump tool only prints those.
+ */
+
+public enum JournalEvent {
+    CONNECT_STARTED(1, null, null, null),
+    CONNECTED(2, null, null, "connectNanos"),
+    CONNECT_FAILED(3, null, null, "connectNanos"),
+    ID_ASSIGNED(4, null, "serverId", null),
+    LOGIN_SENT(5, "bytes", "serverId", null),
+    LOGGED_IN(6, null, "serverId", null),
+    DATA_SENT(7, "bytes", "destination", "sequence"),
+    READ(8, "bytes", "messages", null),
+    WRITE(9, "bytes", null, "queuedBytes"),
+    SOCKET_FULL(10, "bytes", null, null),
+    BACKPRESSURE_ON(11, null, null, "queuedBytes"),
+    BACKPRESSURE_OFF(12, null, null, "queuedBytes"),
+    LOGOUT_SENT(13, "bytes", "serverId", null),
+    END_OF_STREAM(14, null, "serverId", null),
+    CLOSED(15, null, "serverId", null),
+    ERROR(16, null, "serverId", null);
+
+    private final int code;
+    private final String sizeLabel;
+    private final String detailLabel;
+    private final String valueLabel;
+
+    JournalEvent(int code, String sizeLabel, String detailLabel, String valueLabel) {
+        this.code = code;
+        this.sizeLabel = sizeLabel;
+        this.detailLabel = detailLabel;
+        this.valueLabel = valueLabel;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getSizeLabel() {
+        return sizeLabel;
+    }
+
+    public String getDetailLabel() {
+        return detailLabel;
+    }
+
+    public String getValueLabel() {
+        return valueLabel;
+    }
+
+    public static Optional<JournalEvent> fromCode(int code) {
+        for (JournalEvent journalEvent : values()) {
+            if (journalEvent.code == code) {
+                return Optional.of(journalEvent);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static Optional<JournalEvent> fromText(String text) {
+        for (JournalEvent journalEvent : values()) {
+            if (journalEvent.name().equalsIgnoreCase(text)) {
+                return Optional.of(journalEvent);
+            }
+        }
+        return Optional.empty();
+    }
+}
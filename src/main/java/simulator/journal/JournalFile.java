@@ -0,0 +1,117 @@
+package simulator.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class writes and reads journal dumps. A dump is
+ * <pre>
+ * magic | version | wall clock millis | nano time | number of rings
+ * per ring: thread name | events recorded | records kept | records
+ * </pre>
+ * with every record being time, client number, event code, size,
+ * detail and value. Wall clock and nano time are taken together
+ * when the dump is written, so record times can be shown as
+ * wall clock time.
+ */
+
+public class JournalFile {
+    private static final int MAGIC = 0x534A4E4C;
+    private static final int VERSION = 1;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Dump {
+        private final long wallClockMillis;
+        private final long nanoTime;
+        private final long eventsRecorded;
+        //records of all threads, oldest first
+        private final List<JournalRecord> records;
+
+        public long toWallClockMillis(long timestampNanos) {
+            return wallClockMillis - (nanoTime - timestampNanos) / 1_000_000;
+        }
+    }
+
+    static long write(Path file, List<JournalRing> rings) throws IOException {
+        long written = 0;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeLong(System.nanoTime());
+            output.writeInt(rings.size());
+
+            for (JournalRing ring : rings) {
+                long recorded = ring.getRecorded();
+                long[] records = ring.copyRecords();
+                int kept = records.length / JournalRing.LONGS_PER_RECORD;
+                output.writeUTF(ring.getThreadName());
+                output.writeLong(recorded);
+                output.writeInt(kept);
+
+                for (int i = 0; i < records.length; i += JournalRing.LONGS_PER_RECORD) {
+                    output.writeLong(records[i]);
+                    output.writeInt(JournalRing.clientNumber(records[i + 1]));
+                    output.writeInt(JournalRing.eventCode(records[i + 1]));
+                    output.writeInt(JournalRing.size(records[i + 2]));
+                    output.writeInt(JournalRing.detail(records[i + 2]));
+                    output.writeLong(records[i + 3]);
+                }
+                written += kept;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * This method reads a dump and merges records of
+     * all threads into one trace ordered by time
+     *
+     * @param file written by {@link EventJournal#dump(Path)}
+     * @return dump
+     * @throws IOException if file can not be read or is no journal dump
+     */
+
+    public static Dump read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file + " is not a journal dump");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+
+            long wallClockMillis = input.readLong();
+            long nanoTime = input.readLong();
+            int numberOfRings = input.readInt();
+
+            long eventsRecorded = 0;
+            List<JournalRecord> records = new ArrayList<>();
+            for (int ring = 0; ring < numberOfRings; ring++) {
+                String threadName = input.readUTF();
+                eventsRecorded += input.readLong();
+                int kept = input.readInt();
+                for (int i = 0; i < kept; i++) {
+                    records.add(new JournalRecord(threadName, input.readLong(), input.readInt(), input.readInt(),
+                            input.readInt(), input.readInt(), input.readLong()));
+                }
+            }
+
+            records.sort(Comparator.comparingLong(JournalRecord::getTimestampNanos));
+            return new Dump(wallClockMillis, nanoTime, eventsRecorded, records);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package simulator.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * This class is one decoded record of a journal dump
+ */
+
+@Getter
+@AllArgsConstructor
+public class JournalRecord {
+    private final String threadName;
+    private final long timestampNanos;
+    private final int clientNumber;
+    private final int eventCode;
+    private final int size;
+    private final int detail;
+    private final long value;
+}
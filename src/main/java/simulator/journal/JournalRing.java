@@ -0,0 +1,88 @@
+package simulator.journal;
+
+/**
+ * This class is the event ring of one thread. Records are kept
+ * in a preallocated long array, four longs per record, and the
+ * oldest record is overwritten once the ring is full, so recording
+ * never allocates and never blocks.
+ * <p>
+ * Only the owning thread writes. A dump taken while the owner is
+ * still running can see the newest few records half written,
+ * which is acceptable for a post mortem trace.
+ */
+
+class JournalRing {
+    static final int LONGS_PER_RECORD = 4;
+    private static final long LOW_INT_MASK = 0xFFFFFFFFL;
+
+    private final String threadName;
+    private final long[] records;
+    private final int mask;
+    private long recorded;
+
+    /**
+     * @param threadName name of the owning thread
+     * @param capacity   records kept, rounded up to a power of two
+     */
+
+    JournalRing(String threadName, int capacity) {
+        int roundedCapacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.threadName = threadName;
+        this.records = new long[roundedCapacity * LONGS_PER_RECORD];
+        this.mask = roundedCapacity - 1;
+    }
+
+    void record(long timestampNanos, JournalEvent event, int clientNumber, int size, int detail, long value) {
+        int slot = (int) (recorded & mask) * LONGS_PER_RECORD;
+        records[slot] = timestampNanos;
+        records[slot + 1] = ((long) clientNumber << 32) | event.getCode();
+        records[slot + 2] = ((long) size << 32) | (detail & LOW_INT_MASK);
+        records[slot + 3] = value;
+        recorded++;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * This method copies records which are still in
+     * the ring, oldest first
+     *
+     * @return four longs per record
+     */
+
+    long[] copyRecords() {
+        long recordedSoFar = recorded;
+        int capacity = mask + 1;
+        int kept = (int) Math.min(recordedSoFar, capacity);
+        long[] copy = new long[kept * LONGS_PER_RECORD];
+
+        long first = recordedSoFar - kept;
+        for (int i = 0; i < kept; i++) {
+            int slot = (int) ((first + i) & mask) * LONGS_PER_RECORD;
+            System.arraycopy(records, slot, copy, i * LONGS_PER_RECORD, LONGS_PER_RECORD);
+        }
+        return copy;
+    }
+
+    static int clientNumber(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    static int eventCode(long packed) {
+        return (int) (packed & LOW_INT_MASK);
+    }
+
+    static int size(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    static int detail(long packed) {
+        return (int) (packed & LOW_INT_MASK);
+    }
+}
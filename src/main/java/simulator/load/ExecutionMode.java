@@ -0,0 +1,73 @@
+package simulator.load;
+
+import simulator.utility.VirtualThreads;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This enum represents how simulated clients are executed.
+ * <p>
+ * EVENT_LOOP multiplexes all clients over a few selector threads.
+ * PLATFORM_THREADS gives every client its own selector, reader
+ * thread and writer thread.
+ * VIRTUAL_THREADS gives every client a reader and a writer virtual
+ * thread over a blocking channel, which keeps the simple per client
+ * control flow without an OS thread per client.
+ * IDLE holds users which log in and then stay mostly silent in
+ * compact tables of a few selector threads, to find how many
+ * connections the server can hold.
+ */
+
+public enum ExecutionMode {
+    EVENT_LOOP,
+    PLATFORM_THREADS,
+    VIRTUAL_THREADS,
+    IDLE;
+
+    /**
+     * This method returns factory of the threads which run
+     * the logic of a single client in thread per client modes
+     *
+     * @return thread factory
+     */
+
+    public ThreadFactory newClientThreadFactory() {
+        if (this == VIRTUAL_THREADS) {
+            return VirtualThreads.newThreadFactory("client-");
+        }
+
+        AtomicLong threadNumber = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "client-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return true if clients use blocking channels
+     */
+
+    public boolean isBlocking() {
+        return this == VIRTUAL_THREADS;
+    }
+
+    /**
+     * @return true if every client runs on threads of its own
+     */
+
+    public boolean isThreadPerClient() {
+        return this == PLATFORM_THREADS || this == VIRTUAL_THREADS;
+    }
+
+    public static Optional<ExecutionMode> fromText(String text) {
+        for (ExecutionMode executionMode : values()) {
+            if (executionMode.name().equalsIgnoreCase(text)) {
+                return Optional.of(executionMode);
+            }
+        }
+        return Optional.empty();
+    }
+}
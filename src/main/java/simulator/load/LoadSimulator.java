@@ -1,14 +1,43 @@
 package simulator.load;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import simulator.capture.CaptureFile;
+import simulator.capture.CaptureReplay;
+import simulator.capture.CaptureWriter;
+import simulator.capture.TrafficCapture;
 import simulator.core.InternalCore;
+import simulator.core.PeerDirectory;
+import simulator.distributed.LoadCoordinator;
+import simulator.distributed.SimulatorAgent;
+import simulator.engine.ChurnEngine;
+import simulator.engine.ConnectionRamp;
+import simulator.engine.EventLoopGroup;
+import simulator.idle.IdleClients;
+import simulator.journal.EventJournal;
+import simulator.metrics.IntervalReporter;
+import simulator.metrics.Metrics;
+import simulator.metrics.MetricsHttpServer;
+import simulator.metrics.TimeSeriesWriter;
+import simulator.properties.Constants;
+import simulator.properties.SimulatorProperties;
+import simulator.scenario.Scenario;
+import simulator.scenario.ScenarioParser;
+import simulator.scenario.ScenarioRunner;
+import simulator.schedule.MessageContent;
+import simulator.schedule.SendSchedule;
 import simulator.utility.InputValidator;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 @Slf4j
@@ -20,25 +49,59 @@ public class LoadSimulator {
 
     //shared between different threads
     @Getter
-    private static final List<Integer> clientsConnectedToUser = new ArrayList<>();
+    private static final PeerDirectory peerDirectory = new PeerDirectory();
+
+    //shared between different threads
+    @Getter
+    private static final SendSchedule sendSchedule = SendSchedule.fromProperties();
+
+    //shared between different threads
+    @Getter
+    private static final MessageContent messageContent = MessageContent.fromProperties();
+
+    private static final String SCENARIO_OPTION = "--scenario";
+    private static final String COORDINATOR_OPTION = "--coordinator";
+    private static final String AGENT_OPTION = "--agent";
+    private static final String REPLAY_OPTION = "--replay";
 
     public static void main(String[] args) {
         try {
 
+            if (args.length == 2 && SCENARIO_OPTION.equals(args[0])) {
+                runScenario(Paths.get(args[1]));
+                return;
+            }
+            if (args.length == 3 && COORDINATOR_OPTION.equals(args[0])) {
+                runCoordinator(Paths.get(args[1]), Integer.parseInt(args[2]));
+                return;
+            }
+            if (args.length == 2 && REPLAY_OPTION.equals(args[0])) {
+                runReplay(Paths.get(args[1]));
+                return;
+            }
+            if (args.length == 2 && AGENT_OPTION.equals(args[0])) {
+                dumpJournalOnShutdown();
+                startCapture();
+                new SimulatorAgent(coordinatorAddress(args[1])).run();
+                return;
+            }
+
             log.info("=== Please mention number of clients needed for simulation===");
             Scanner scanner = new Scanner(System.in);
             String clients = scanner.nextLine();
             InputValidator.commandLineArguments().accept(clients);
 
-            Runnable runnable =
-                    () ->{
-                        InternalCore client = new InternalCore(5000, "localhost");
-                        client.initiateApplication();
-                    };
+            ExecutionMode executionMode = SimulatorProperties.getExecutionMode();
+            log.info("Running clients in {} mode", executionMode);
+            RunPhases runPhases = RunPhases.fromProperties();
+            startReporting();
 
-            for(int i = 0; i <Integer.parseInt(clients); i++){
-                Thread thread = new Thread(runnable);
-                thread.start();
+            if (executionMode == ExecutionMode.EVENT_LOOP) {
+                startEventLoopClients(Integer.parseInt(clients), runPhases);
+            } else if (executionMode == ExecutionMode.IDLE) {
+                startIdleClients(Integer.parseInt(clients), runPhases);
+            } else {
+                startThreadPerClient(Integer.parseInt(clients), executionMode, runPhases);
             }
 
 
@@ -47,4 +110,284 @@ public class LoadSimulator {
             log.error("Cause of error ", exception);
         }
     }
+
+    /**
+     * This method starts the per interval report and the metrics
+     * endpoint and prints the final report once the JVM shuts down
+     *
+     * @throws IOException              if time series file can not be created
+     *                                  or metrics port can not be bound
+     * @throws IllegalArgumentException if time series file is set without
+     *                                  a report interval to write it
+     */
+
+    private static void startReporting() throws IOException {
+        dumpJournalOnShutdown();
+        startCapture();
+        long reportIntervalMillis = SimulatorProperties.getReportIntervalMillis();
+        String metricsFile = SimulatorProperties.getMetricsFile();
+        if (metricsFile != null && reportIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Metrics file " + metricsFile + " needs a report interval, but "
+                    + SimulatorProperties.REPORT_INTERVAL_MILLIS + " is " + reportIntervalMillis);
+        }
+
+        int httpPort = SimulatorProperties.getHttpPort();
+        if (httpPort > 0) {
+            MetricsHttpServer metricsHttpServer =
+                    new MetricsHttpServer(httpPort, reportIntervalMillis > 0 ? reportIntervalMillis : 1000);
+            metricsHttpServer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(metricsHttpServer::stop));
+        }
+
+        if (reportIntervalMillis <= 0) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::printReport));
+            return;
+        }
+
+        TimeSeriesWriter timeSeriesWriter = metricsFile == null ? null : TimeSeriesWriter.forFile(Paths.get(metricsFile));
+        IntervalReporter intervalReporter = new IntervalReporter(reportIntervalMillis, timeSeriesWriter);
+        intervalReporter.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            intervalReporter.stop();
+            Metrics.printReport();
+        }));
+    }
+
+    /**
+     * Journal is dumped to the configured file after every run.
+     * Without a configured file it is only dumped when the run
+     * had errors, so there is a trace of what led to them
+     */
+
+    private static void dumpJournalOnShutdown() {
+        if (!EventJournal.isEnabled()) {
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            String journalFile = SimulatorProperties.getJournalFile();
+            if (journalFile == null) {
+                if (Metrics.getErrors().sum() == 0) {
+                    return;
+                }
+                journalFile = Constants.DEFAULT_JOURNAL_FILE;
+            }
+
+            Path journalPath = Paths.get(journalFile);
+            try {
+                long records = EventJournal.dump(journalPath);
+                System.out.println("Event journal with " + records + " records written to "
+                        + journalPath.toAbsolutePath());
+            } catch (IOException exception) {
+                log.error("Could not write event journal ", exception);
+            }
+        }));
+    }
+
+    /**
+     * This method starts capturing traffic if a capture file has
+     * been configured. Capture is finished once the JVM shuts down
+     *
+     * @throws IOException if capture file can not be created
+     */
+
+    private static void startCapture() throws IOException {
+        String captureFile = SimulatorProperties.getCaptureFile();
+        if (captureFile == null) {
+            return;
+        }
+
+        TrafficCapture.start(Paths.get(captureFile));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                CaptureWriter captureWriter = TrafficCapture.stop();
+                System.out.println("Capture with " + captureWriter.getFramesWritten() + " frames written to "
+                        + captureWriter.getFile().toAbsolutePath() + ", " + captureWriter.getFramesDropped()
+                        + " frames dropped");
+            } catch (IOException exception) {
+                log.error("Could not finish capture ", exception);
+            }
+        }));
+    }
+
+    /**
+     * This method replays a capture without any prompt.
+     * Replays always run on event loops
+     *
+     * @param captureFile path of the capture
+     * @throws Exception dealt above
+     */
+
+    private static void runReplay(Path captureFile) throws Exception {
+        String newCaptureFile = SimulatorProperties.getCaptureFile();
+        if (newCaptureFile != null && Paths.get(newCaptureFile).toAbsolutePath().equals(captureFile.toAbsolutePath())) {
+            throw new IllegalArgumentException("Replay can not capture to the file it replays " + captureFile);
+        }
+        CaptureReplay captureReplay = new CaptureReplay(CaptureFile.open(captureFile),
+                SimulatorProperties.getReplaySpeed());
+        startReporting();
+        captureReplay.run();
+    }
+
+    /**
+     * This method runs a scenario file without any prompt.
+     * Scenarios always run on event loops
+     *
+     * @param scenarioFile path of the scenario
+     * @throws Exception dealt above
+     */
+
+    private static void runScenario(Path scenarioFile) throws Exception {
+        Scenario scenario = ScenarioParser.parse(scenarioFile);
+        log.info("Running scenario {} with {} phases", scenarioFile, scenario.getPhases().size());
+        startReporting();
+        new ScenarioRunner(scenario).run();
+    }
+
+    /**
+     * This method runs a scenario file on several agent processes
+     * and prints samples of the whole cluster
+     *
+     * @param scenarioFile path of the scenario
+     * @param agents       number of agents to wait for
+     * @throws Exception dealt above
+     */
+
+    private static void runCoordinator(Path scenarioFile, int agents) throws Exception {
+        if (agents <= 0) {
+            throw new IllegalArgumentException("Number of agents needs to be positive but was " + agents);
+        }
+        long reportIntervalMillis = SimulatorProperties.getReportIntervalMillis();
+        String metricsFile = SimulatorProperties.getMetricsFile();
+        TimeSeriesWriter timeSeriesWriter = metricsFile == null ? null : TimeSeriesWriter.forFile(Paths.get(metricsFile));
+        new LoadCoordinator(Files.readAllLines(scenarioFile, StandardCharsets.UTF_8), agents,
+                SimulatorProperties.getControlPort(), reportIntervalMillis > 0 ? reportIntervalMillis : 1000,
+                timeSeriesWriter).run();
+    }
+
+    /**
+     * @param coordinator host or host:port of the coordinator
+     * @return address, port defaults to the control port property
+     */
+
+    private static InetSocketAddress coordinatorAddress(String coordinator) {
+        int separator = coordinator.lastIndexOf(':');
+        if (separator < 0) {
+            return new InetSocketAddress(coordinator, SimulatorProperties.getControlPort());
+        }
+        return new InetSocketAddress(coordinator.substring(0, separator),
+                Integer.parseInt(coordinator.substring(separator + 1)));
+    }
+
+    /**
+     * This method runs all clients on a shared pool of
+     * event loops. With a churn rate sessions of churning
+     * users come and go on top of the clients until the
+     * run is over
+     *
+     * @param clients   number of clients
+     * @param runPhases started once all clients have been opened
+     * @throws Exception dealt above
+     */
+
+    private static void startEventLoopClients(int clients, RunPhases runPhases) throws Exception {
+        EventLoopGroup eventLoopGroup = new EventLoopGroup(SimulatorProperties.getEventLoops());
+        InetSocketAddress serverAddress =
+                new InetSocketAddress(SimulatorProperties.getServerHost(), SimulatorProperties.getServerPort());
+
+        ConnectionRamp connectionRamp = new ConnectionRamp(eventLoopGroup, serverAddress,
+                SimulatorProperties.getRampConnectionsPerSecond(), SimulatorProperties.getRampMaxPendingConnects());
+        connectionRamp.open(clients);
+
+        long runDurationSeconds = SimulatorProperties.getRunDurationSeconds();
+        runPhases.start();
+        double churnSessionsPerSecond = SimulatorProperties.getChurnSessionsPerSecond();
+        if (churnSessionsPerSecond > 0) {
+            ChurnEngine churnEngine = new ChurnEngine(eventLoopGroup, serverAddress,
+                    SimulatorProperties.getRampMaxPendingConnects());
+            if (runDurationSeconds <= 0) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Churn: " + churnEngine.describe())));
+            }
+            churnEngine.run(churnSessionsPerSecond, SimulatorProperties.getArrivalProcess(),
+                    (long) (SimulatorProperties.getChurnSessionSeconds() * 1_000_000_000L),
+                    SimulatorProperties.getChurnSessionLength(), TimeUnit.SECONDS.toNanos(runDurationSeconds));
+            //sessions still active are closed with the event loops
+            System.out.println("Churn: " + churnEngine.describe());
+        } else if (runDurationSeconds > 0) {
+            TimeUnit.SECONDS.sleep(runDurationSeconds);
+        }
+
+        if (runDurationSeconds > 0) {
+            log.info("Run duration is over, stopping simulation");
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    /**
+     * This method holds idle users on a few idle loops, which
+     * log in and then only send keepalives if configured
+     *
+     * @param clients   number of idle users
+     * @param runPhases started once the idle loops have been started
+     * @throws Exception dealt above
+     */
+
+    private static void startIdleClients(int clients, RunPhases runPhases) throws Exception {
+        InetSocketAddress serverAddress =
+                new InetSocketAddress(SimulatorProperties.getServerHost(), SimulatorProperties.getServerPort());
+        IdleClients idleClients = new IdleClients(SimulatorProperties.getEventLoops(), serverAddress,
+                SimulatorProperties.getSourceAddresses(), clients, SimulatorProperties.getRampConnectionsPerSecond(),
+                SimulatorProperties.getRampMaxPendingConnects(),
+                (long) (SimulatorProperties.getIdleKeepaliveSeconds() * 1_000_000_000L));
+        idleClients.start();
+
+        long runDurationSeconds = SimulatorProperties.getRunDurationSeconds();
+        runPhases.start();
+        if (runDurationSeconds <= 0) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Idle: " + idleClients.describe())));
+            return;
+        }
+
+        TimeUnit.SECONDS.sleep(runDurationSeconds);
+        System.out.println("Idle: " + idleClients.describe());
+        log.info("Run duration is over, stopping simulation");
+        idleClients.shutdown();
+    }
+
+    /**
+     * This method gives every client its own threads created
+     * by the factory of the execution mode. Client threads do
+     * not keep the JVM alive so main thread waits for the run
+     * to end
+     *
+     * @param clients       number of clients
+     * @param executionMode platform or virtual threads
+     * @param runPhases     started once all client threads have been started
+     * @throws InterruptedException dealt above
+     */
+
+    private static void startThreadPerClient(int clients, ExecutionMode executionMode, RunPhases runPhases)
+            throws InterruptedException {
+        ThreadFactory clientThreadFactory = executionMode.newClientThreadFactory();
+        Runnable runnable =
+                () -> {
+                    InternalCore client = new InternalCore(SimulatorProperties.getServerPort(),
+                            SimulatorProperties.getServerHost(), clientThreadFactory, executionMode.isBlocking());
+                    client.initiateApplication();
+                };
+
+        for (int i = 0; i < clients; i++) {
+            clientThreadFactory.newThread(runnable).start();
+        }
+
+        long runDurationSeconds = SimulatorProperties.getRunDurationSeconds();
+        runPhases.start();
+        if (runDurationSeconds > 0) {
+            TimeUnit.SECONDS.sleep(runDurationSeconds);
+            log.info("Run duration is over, stopping simulation");
+        } else {
+            Thread.currentThread().join();
+        }
+    }
 }
\ No newline at end of file
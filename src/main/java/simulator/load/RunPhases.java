@@ -0,0 +1,120 @@
+package simulator.load;
+
+import lombok.extern.slf4j.Slf4j;
+import simulator.metrics.Metrics;
+import simulator.properties.SimulatorProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class splits a run into warmup, measurement and cooldown,
+ * so that JIT compilation, connection setup and shutdown of the
+ * clients do not end up in the final report.
+ * <p>
+ * Warmup lasts for a given time, until a given number of messages
+ * has been received, or both. Cooldown is the end of the run
+ * duration. The run duration still is the length of the whole run
+ * and is not changed by the phases. Phases are started at the moment
+ * the run duration starts to count, once all clients have been
+ * opened, so both share one origin however long the ramp takes:
+ * <pre>
+ * |--- warmup ---|------- measurement -------|-- cooldown --|
+ * 0                                                   duration
+ * </pre>
+ * Phases are switched by their own thread, which takes a snapshot
+ * of all counters and histograms at both ends of the measurement.
+ * Nothing is reset and nothing is checked per message.
+ */
+
+@Slf4j
+public class RunPhases {
+    private static final long POLL_MILLIS = 10;
+
+    private final long warmupNanos;
+    private final long warmupMessages;
+    private final long cooldownNanos;
+    private final long runDurationNanos;
+
+    /**
+     * @param warmupNanos      minimum time of warmup
+     * @param warmupMessages   messages received before warmup ends
+     * @param cooldownNanos    time at the end of the run left out of the report
+     * @param runDurationNanos length of the whole run, 0 means until stopped
+     */
+
+    public RunPhases(long warmupNanos, long warmupMessages, long cooldownNanos, long runDurationNanos) {
+        if (runDurationNanos > 0 && warmupNanos + cooldownNanos >= runDurationNanos) {
+            throw new IllegalArgumentException("Warmup and cooldown leave no time to measure in a run of "
+                    + TimeUnit.NANOSECONDS.toSeconds(runDurationNanos) + "s");
+        }
+        this.warmupNanos = warmupNanos;
+        this.warmupMessages = warmupMessages;
+        this.cooldownNanos = cooldownNanos;
+        this.runDurationNanos = runDurationNanos;
+    }
+
+    public static RunPhases fromProperties() {
+        return new RunPhases((long) (SimulatorProperties.getWarmupSeconds() * 1_000_000_000L),
+                SimulatorProperties.getWarmupMessages(),
+                (long) (SimulatorProperties.getCooldownSeconds() * 1_000_000_000L),
+                TimeUnit.SECONDS.toNanos(SimulatorProperties.getRunDurationSeconds()));
+    }
+
+    /**
+     * @return true if the run has any phase, otherwise the
+     * report covers the whole run
+     */
+
+    public boolean isEnabled() {
+        return warmupNanos > 0 || warmupMessages > 0 || cooldownNanos > 0;
+    }
+
+    /**
+     * This method starts the thread switching phases. It has to
+     * be called when the run duration starts to count, as phases
+     * are timed from this moment. Without phases nothing is started
+     */
+
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (runDurationNanos <= 0 && cooldownNanos > 0) {
+            log.warn("Cooldown needs a run duration, measurement lasts until the run is stopped");
+        }
+
+        long startNanos = System.nanoTime();
+        Thread thread = new Thread(() -> switchPhases(startNanos), "run-phases");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void switchPhases(long startNanos) {
+        long cooldownStartNanos = startNanos + runDurationNanos - cooldownNanos;
+        try {
+            while (System.nanoTime() - startNanos < warmupNanos
+                    || Metrics.getMessagesReceived().sum() < warmupMessages) {
+                if (runDurationNanos > 0 && System.nanoTime() - cooldownStartNanos >= 0) {
+                    log.warn("Warmup did not end before cooldown, report covers the whole run");
+                    return;
+                }
+                TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+            }
+            Metrics.startMeasurement();
+            System.out.printf("Warmup ended after %.1fs, measurement started%n",
+                    (System.nanoTime() - startNanos) / 1_000_000_000.0);
+
+            if (runDurationNanos <= 0) {
+                return;
+            }
+            long nanosToWait;
+            while ((nanosToWait = cooldownStartNanos - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(nanosToWait);
+            }
+            Metrics.endMeasurement();
+            System.out.println("Measurement ended, cooling down");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
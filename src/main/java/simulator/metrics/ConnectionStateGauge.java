@@ -0,0 +1,37 @@
+package simulator.metrics;
+
+import simulator.core.ConnectionState;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts how many users are in every state right
+ * now. Every transition moves one user from its old state to
+ * its new state, states which are not counted are left out.
+ */
+
+public class ConnectionStateGauge {
+    private final LongAdder[] usersByState = new LongAdder[ConnectionState.values().length];
+
+    public ConnectionStateGauge() {
+        for (int i = 0; i < usersByState.length; i++) {
+            usersByState[i] = new LongAdder();
+        }
+    }
+
+    public void transition(ConnectionState from, ConnectionState to) {
+        if (from == to) {
+            return;
+        }
+        if (from.isCounted()) {
+            usersByState[from.ordinal()].decrement();
+        }
+        if (to.isCounted()) {
+            usersByState[to.ordinal()].increment();
+        }
+    }
+
+    public long getUsers(ConnectionState connectionState) {
+        return usersByState[connectionState.ordinal()].sum();
+    }
+}
@@ -0,0 +1,130 @@
+package simulator.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * This class is an immutable copy of all counters of a run
+ * taken at one point in time. Difference of two snapshots
+ * is what happened in between them.
+ */
+
+@Getter
+@AllArgsConstructor
+public class CounterSnapshot {
+    private final long messagesSent;
+    private final long messagesReceived;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long connectsEstablished;
+    private final long connectsFailed;
+    private final long loginsCompleted;
+    private final long errors;
+    private final long messagesDuplicated;
+    private final long messagesReordered;
+    private final long messagesLate;
+    private final long messagesMissing;
+
+    public static CounterSnapshot empty() {
+        return new CounterSnapshot(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Every DATA message is received once unless it has been
+     * duplicated or arrived too late to be checked
+     *
+     * @return messages received for the first time
+     */
+
+    public long getMessagesDelivered() {
+        return messagesReceived - messagesDuplicated - messagesLate;
+    }
+
+    /**
+     * This method describes integrity of delivery. Messages which
+     * are neither delivered nor missing were still in flight, sent
+     * to a peer who had left or lost after the last message their
+     * receiver got. For a measurement window this count can be
+     * negative, as messages in flight when it started are delivered
+     * within it
+     *
+     * @return line of the final report
+     */
+
+    public String toDeliveryReport() {
+        return String.format("Delivery: sent %d, delivered %d, missing %d, duplicated %d, reordered %d, late %d, "
+                        + "unaccounted %d", messagesSent, getMessagesDelivered(), messagesMissing, messagesDuplicated,
+                messagesReordered, messagesLate, messagesSent - getMessagesDelivered() - messagesMissing);
+    }
+
+    /**
+     * This method returns counts which were added
+     * after the earlier snapshot has been taken
+     *
+     * @param earlier snapshot of same counters
+     * @return difference of both snapshots
+     */
+
+    public CounterSnapshot minus(CounterSnapshot earlier) {
+        return new CounterSnapshot(messagesSent - earlier.messagesSent,
+                messagesReceived - earlier.messagesReceived,
+                bytesSent - earlier.bytesSent,
+                bytesReceived - earlier.bytesReceived,
+                connectsEstablished - earlier.connectsEstablished,
+                connectsFailed - earlier.connectsFailed,
+                loginsCompleted - earlier.loginsCompleted,
+                errors - earlier.errors,
+                messagesDuplicated - earlier.messagesDuplicated,
+                messagesReordered - earlier.messagesReordered,
+                messagesLate - earlier.messagesLate,
+                messagesMissing - earlier.messagesMissing);
+    }
+
+    /**
+     * This method adds counts of other snapshot, for
+     * example of another process, to counts of this one
+     *
+     * @param other snapshot
+     * @return sum of both snapshots
+     */
+
+    public CounterSnapshot plus(CounterSnapshot other) {
+        return new CounterSnapshot(messagesSent + other.messagesSent,
+                messagesReceived + other.messagesReceived,
+                bytesSent + other.bytesSent,
+                bytesReceived + other.bytesReceived,
+                connectsEstablished + other.connectsEstablished,
+                connectsFailed + other.connectsFailed,
+                loginsCompleted + other.loginsCompleted,
+                errors + other.errors,
+                messagesDuplicated + other.messagesDuplicated,
+                messagesReordered + other.messagesReordered,
+                messagesLate + other.messagesLate,
+                messagesMissing + other.messagesMissing);
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeLong(messagesSent);
+        output.writeLong(messagesReceived);
+        output.writeLong(bytesSent);
+        output.writeLong(bytesReceived);
+        output.writeLong(connectsEstablished);
+        output.writeLong(connectsFailed);
+        output.writeLong(loginsCompleted);
+        output.writeLong(errors);
+        output.writeLong(messagesDuplicated);
+        output.writeLong(messagesReordered);
+        output.writeLong(messagesLate);
+        output.writeLong(messagesMissing);
+    }
+
+    public static CounterSnapshot read(DataInput input) throws IOException {
+        return new CounterSnapshot(input.readLong(), input.readLong(), input.readLong(), input.readLong(),
+                input.readLong(), input.readLong(), input.readLong(), input.readLong(),
+                input.readLong(), input.readLong(), input.readLong(), input.readLong());
+    }
+}
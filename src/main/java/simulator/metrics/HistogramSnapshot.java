@@ -0,0 +1,189 @@
+package simulator.metrics;
+
+import lombok.Getter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * This class is an immutable copy of a latency histogram.
+ * Snapshots of different threads or processes can be merged
+ * bucket by bucket which keeps percentiles exact, as opposed
+ * to averaging percentiles of the parts.
+ */
+
+public class HistogramSnapshot {
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    private final long[] counts;
+
+    @Getter
+    private final long maxValue;
+
+    @Getter
+    private final long totalCount;
+
+    //exact sum of all recorded values in nanoseconds
+    @Getter
+    private final long sum;
+
+    public HistogramSnapshot(long[] counts, long maxValue, long sum) {
+        if (counts.length != LatencyHistogram.BUCKET_COUNT) {
+            throw new IllegalArgumentException("Expected " + LatencyHistogram.BUCKET_COUNT + " buckets but got " + counts.length);
+        }
+        this.counts = counts;
+        this.maxValue = maxValue;
+        this.sum = sum;
+
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    public static HistogramSnapshot empty() {
+        return new HistogramSnapshot(new long[LatencyHistogram.BUCKET_COUNT], 0, 0);
+    }
+
+    /**
+     * This method adds counts of other snapshot to counts
+     * of this one
+     *
+     * @param other snapshot
+     * @return new merged snapshot
+     */
+
+    public HistogramSnapshot merge(HistogramSnapshot other) {
+        long[] merged = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            merged[i] = counts[i] + other.counts[i];
+        }
+        return new HistogramSnapshot(merged, Math.max(maxValue, other.maxValue), sum + other.sum);
+    }
+
+    /**
+     * This method returns counts which were recorded after
+     * the earlier snapshot of the same histogram has been taken.
+     * Max of the difference is the top of its highest bucket
+     * which is not above max of this snapshot
+     *
+     * @param earlier snapshot of same histogram
+     * @return new snapshot of the difference
+     */
+
+    public HistogramSnapshot minus(HistogramSnapshot earlier) {
+        long[] difference = new long[counts.length];
+        int highestBucket = -1;
+        for (int i = 0; i < counts.length; i++) {
+            difference[i] = counts[i] - earlier.counts[i];
+            if (difference[i] > 0) {
+                highestBucket = i;
+            }
+        }
+
+        long max = highestBucket < 0 ? 0 : Math.min(LatencyHistogram.highestValueInBucket(highestBucket), maxValue);
+        return new HistogramSnapshot(difference, max, sum - earlier.sum);
+    }
+
+    /**
+     * This method returns value below which given
+     * percentage of all recorded values fall
+     *
+     * @param percentile between 0 and 100
+     * @return value in nanoseconds
+     */
+
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= countAtPercentile) {
+                return Math.min(LatencyHistogram.highestValueInBucket(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * This method writes the snapshot so that it can be sent to
+     * another process. Only buckets which have counts are written,
+     * so an interval with narrow latency takes a few hundred bytes
+     *
+     * @param output to write to
+     * @throws IOException if write failed
+     */
+
+    public void writeSparse(DataOutput output) throws IOException {
+        int usedBuckets = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                usedBuckets++;
+            }
+        }
+
+        output.writeLong(maxValue);
+        output.writeLong(sum);
+        output.writeInt(usedBuckets);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                output.writeShort(i);
+                output.writeLong(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * This method reads a snapshot written by {@link #writeSparse(DataOutput)}
+     *
+     * @param input to read from
+     * @return snapshot
+     * @throws IOException if read failed or a bucket is out of range
+     */
+
+    public static HistogramSnapshot readSparse(DataInput input) throws IOException {
+        long maxValue = input.readLong();
+        long sum = input.readLong();
+        int usedBuckets = input.readInt();
+        if (usedBuckets < 0 || usedBuckets > LatencyHistogram.BUCKET_COUNT) {
+            throw new IOException("Invalid number of buckets " + usedBuckets);
+        }
+
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        for (int i = 0; i < usedBuckets; i++) {
+            int bucket = input.readUnsignedShort();
+            if (bucket >= counts.length) {
+                throw new IOException("Invalid bucket " + bucket);
+            }
+            counts[bucket] = input.readLong();
+        }
+        return new HistogramSnapshot(counts, maxValue, sum);
+    }
+
+    public long getCountInBucket(int index) {
+        return counts[index];
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * This method returns one line summary in microseconds
+     *
+     * @param name of the measured latency
+     * @return summary
+     */
+
+    public String toSummary(String name) {
+        return String.format("%s: count=%d p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", name, totalCount,
+                getValueAtPercentile(50) / NANOS_PER_MICRO, getValueAtPercentile(99) / NANOS_PER_MICRO,
+                getValueAtPercentile(99.9) / NANOS_PER_MICRO, maxValue / NANOS_PER_MICRO);
+    }
+}
@@ -0,0 +1,139 @@
+package simulator.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class prints one line per interval with throughput,
+ * connection counts and latency of that interval and optionally
+ * writes the same numbers to a time series file.
+ * <p>
+ * Hot paths only add to striped counters and histograms. The
+ * reporter thread takes snapshots of them and subtracts the
+ * previous snapshot, so nothing is ever reset while load runs.
+ */
+
+@Slf4j
+public class IntervalReporter {
+    private static final double NANOS_PER_MICRO = 1_000.0;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    private final long intervalMillis;
+    private final TimeSeriesWriter timeSeriesWriter;
+    private final Consumer<IntervalSample> sampleListener;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "interval-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long startNanos = System.nanoTime();
+    private long previousNanos = startNanos;
+    private CounterSnapshot previousCounters = Metrics.snapshotCounters();
+    private HistogramSnapshot previousLatency = Metrics.getEndToEndLatency().snapshot();
+
+    /**
+     * @param intervalMillis   length of one interval
+     * @param timeSeriesWriter file to write every interval to or null
+     */
+
+    public IntervalReporter(long intervalMillis, TimeSeriesWriter timeSeriesWriter) {
+        this(intervalMillis, timeSeriesWriter, null);
+    }
+
+    /**
+     * @param intervalMillis   length of one interval
+     * @param timeSeriesWriter file to write every interval to or null
+     * @param sampleListener   called on reporter thread with every sample or null
+     */
+
+    public IntervalReporter(long intervalMillis, TimeSeriesWriter timeSeriesWriter,
+                            Consumer<IntervalSample> sampleListener) {
+        this.intervalMillis = intervalMillis;
+        this.timeSeriesWriter = timeSeriesWriter;
+        this.sampleListener = sampleListener;
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method stops the reporter after reporting
+     * the last, possibly shorter, interval
+     */
+
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+
+        if (timeSeriesWriter != null) {
+            try {
+                timeSeriesWriter.close();
+            } catch (IOException exception) {
+                log.error("Could not close time series file ", exception);
+            }
+        }
+    }
+
+    private synchronized void report() {
+        long nowNanos = System.nanoTime();
+        CounterSnapshot counters = Metrics.snapshotCounters();
+        HistogramSnapshot latency = Metrics.getEndToEndLatency().snapshot();
+
+        IntervalSample sample = new IntervalSample(System.currentTimeMillis(), nowNanos - startNanos,
+                nowNanos - previousNanos, counters.minus(previousCounters), counters, latency.minus(previousLatency));
+        previousNanos = nowNanos;
+        previousCounters = counters;
+        previousLatency = latency;
+
+        System.out.println(toLine(sample));
+        if (timeSeriesWriter != null) {
+            try {
+                timeSeriesWriter.write(sample);
+            } catch (IOException exception) {
+                log.error("Could not write time series sample ", exception);
+            }
+        }
+        if (sampleListener != null) {
+            sampleListener.accept(sample);
+        }
+    }
+
+    /**
+     * This method formats one sample the way it is printed
+     *
+     * @param sample of one interval
+     * @return line without line break
+     */
+
+    public static String toLine(IntervalSample sample) {
+        CounterSnapshot interval = sample.getInterval();
+        HistogramSnapshot latency = sample.getIntervalLatency();
+        return String.format(Locale.ROOT,
+                "[%7.1fs] sent %.0f/s recv %.0f/s out %.2f MB/s in %.2f MB/s | connects +%d failed +%d logins +%d"
+                        + " errors +%d | latency p50 %.1fus p99 %.1fus max %.1fus"
+                        + " | missing %d dup +%d reord +%d late +%d",
+                sample.getElapsedSeconds(),
+                sample.perSecond(interval.getMessagesSent()), sample.perSecond(interval.getMessagesReceived()),
+                sample.perSecond(interval.getBytesSent()) / BYTES_PER_MEGABYTE,
+                sample.perSecond(interval.getBytesReceived()) / BYTES_PER_MEGABYTE,
+                interval.getConnectsEstablished(), interval.getConnectsFailed(), interval.getLoginsCompleted(),
+                interval.getErrors(),
+                latency.getValueAtPercentile(50) / NANOS_PER_MICRO, latency.getValueAtPercentile(99) / NANOS_PER_MICRO,
+                latency.getMaxValue() / NANOS_PER_MICRO,
+                sample.getTotal().getMessagesMissing(), interval.getMessagesDuplicated(),
+                interval.getMessagesReordered(), interval.getMessagesLate());
+    }
+}
@@ -0,0 +1,37 @@
+package simulator.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * This class is what the reporter measured in one interval:
+ * counts and latency of the interval itself together with the
+ * totals since the run has started
+ */
+
+@Getter
+@AllArgsConstructor
+public class IntervalSample {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    //wall clock time the interval ended at
+    private final long timestampMillis;
+    private final long elapsedNanos;
+    private final long intervalNanos;
+    private final CounterSnapshot interval;
+    private final CounterSnapshot total;
+    private final HistogramSnapshot intervalLatency;
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / NANOS_PER_SECOND;
+    }
+
+    /**
+     * @param count counted during this interval
+     * @return count per second of this interval
+     */
+
+    public double perSecond(long count) {
+        return intervalNanos > 0 ? count * NANOS_PER_SECOND / intervalNanos : 0;
+    }
+}
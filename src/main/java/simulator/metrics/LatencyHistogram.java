@@ -0,0 +1,99 @@
+package simulator.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is a lock free histogram of latencies in nanoseconds.
+ * Buckets grow logarithmically: every power of two is split into
+ * {@link #SUB_BUCKETS_PER_POWER} linear sub buckets, so every value is
+ * stored with a relative error of at most 1/64, about 1.6 percent,
+ * while the whole range of a long fits in a few thousand counters.
+ * Percentiles report the highest value of their bucket, so they
+ * are never below the recorded value.
+ * <p>
+ * Recording is an atomic increment of the bucket and an atomic add
+ * to the sum of all values, so it is meant to be written mostly by
+ * one thread and read by anybody through
+ * {@link #snapshot()}.
+ */
+
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int SUB_BUCKETS_PER_POWER = SUB_BUCKET_COUNT >> 1;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS_PER_POWER;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong maxValue = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * This method records one value. Negative values are
+     * recorded as zero
+     *
+     * @param valueNanos latency in nanoseconds
+     */
+
+    public void record(long valueNanos) {
+        long value = Math.max(0, valueNanos);
+        counts.incrementAndGet(bucketIndex(value));
+        sum.addAndGet(value);
+
+        long currentMax;
+        while (value > (currentMax = maxValue.get())) {
+            if (maxValue.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * This method copies the counters. Values recorded while
+     * copying may or may not be part of snapshot
+     *
+     * @return snapshot
+     */
+
+    public HistogramSnapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(copy, maxValue.get(), sum.get());
+    }
+
+    /**
+     * Helper function which maps value to its bucket
+     *
+     * @param value non negative value
+     * @return index of bucket
+     */
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS_PER_POWER;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKETS_PER_POWER + subBucket;
+    }
+
+    /**
+     * Helper function which returns highest value
+     * that is stored in the bucket
+     *
+     * @param index of bucket
+     * @return highest value of the bucket
+     */
+
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKETS_PER_POWER + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKETS_PER_POWER + SUB_BUCKETS_PER_POWER;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
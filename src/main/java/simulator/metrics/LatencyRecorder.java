@@ -0,0 +1,59 @@
+package simulator.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class records one kind of latency from many threads.
+ * It keeps a histogram per stripe and every thread always
+ * writes into the same stripe. Threads get their stripe round
+ * robin the first time they record, and there are about twice
+ * as many stripes as processors, so event loops started one
+ * after another never share a stripe. Thread per client modes
+ * have more threads than stripes, threads which share a stripe
+ * contend on its counters and on its max. Stripes are only
+ * merged when a snapshot is taken.
+ */
+
+public class LatencyRecorder {
+    //shared between different threads, stripe index of every thread for all recorders
+    private static final AtomicInteger nextStripeOfThread = new AtomicInteger();
+    private static final ThreadLocal<Integer> stripeOfThread =
+            ThreadLocal.withInitial(nextStripeOfThread::getAndIncrement);
+
+    private final LatencyHistogram[] stripes;
+    private final int stripeMask;
+
+    public LatencyRecorder() {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        stripes = new LatencyHistogram[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new LatencyHistogram();
+        }
+        stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * This method records latency into the histogram
+     * of the calling thread
+     *
+     * @param valueNanos latency in nanoseconds
+     */
+
+    public void record(long valueNanos) {
+        stripes[stripeOfThread.get() & stripeMask].record(valueNanos);
+    }
+
+    /**
+     * This method merges histograms of all threads
+     *
+     * @return merged snapshot
+     */
+
+    public HistogramSnapshot snapshot() {
+        HistogramSnapshot merged = HistogramSnapshot.empty();
+        for (LatencyHistogram stripe : stripes) {
+            merged = merged.merge(stripe.snapshot());
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,181 @@
+package simulator.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds all the measurements of a run which
+ * are shared between event loops and reporting
+ */
+
+public class Metrics {
+
+    //shared between different threads
+    @Getter
+    private static final LatencyRecorder endToEndLatency = new LatencyRecorder();
+
+    //shared between different threads
+    @Getter
+    private static final LatencyRecorder connectLatency = new LatencyRecorder();
+
+    //stages of churn sessions, shared between different threads
+    @Getter
+    private static final LatencyRecorder loginLatency = new LatencyRecorder();
+
+    @Getter
+    private static final LatencyRecorder logoutLatency = new LatencyRecorder();
+
+    @Getter
+    private static final LatencyRecorder sessionLifetime = new LatencyRecorder();
+
+    //shared between different threads, striped so hot paths do not contend
+    @Getter
+    private static final LongAdder messagesSent = new LongAdder();
+
+    @Getter
+    private static final LongAdder messagesReceived = new LongAdder();
+
+    @Getter
+    private static final LongAdder bytesSent = new LongAdder();
+
+    @Getter
+    private static final LongAdder bytesReceived = new LongAdder();
+
+    @Getter
+    private static final LongAdder connectsEstablished = new LongAdder();
+
+    @Getter
+    private static final LongAdder connectsFailed = new LongAdder();
+
+    @Getter
+    private static final LongAdder loginsCompleted = new LongAdder();
+
+    @Getter
+    private static final LongAdder errors = new LongAdder();
+
+    //delivery checks of sequence numbers, see DeliveryTracker
+    @Getter
+    private static final LongAdder messagesDuplicated = new LongAdder();
+
+    @Getter
+    private static final LongAdder messagesReordered = new LongAdder();
+
+    @Getter
+    private static final LongAdder messagesLate = new LongAdder();
+
+    //sequences skipped by receivers and not filled yet, goes down when a reordered message arrives
+    @Getter
+    private static final LongAdder messagesMissing = new LongAdder();
+
+    @Getter
+    private static final LongAdder queuedBytes = new LongAdder();
+
+    //direct memory allocated by buffer pools of all event loops
+    @Getter
+    private static final LongAdder pooledBufferBytes = new LongAdder();
+
+    @Getter
+    private static final ConnectionStateGauge connectionStates = new ConnectionStateGauge();
+
+    //time spent in one send or read call on the socket
+    @Getter
+    private static final LatencyRecorder sendCallDuration = new LatencyRecorder();
+
+    @Getter
+    private static final LatencyRecorder readCallDuration = new LatencyRecorder();
+
+    //bounds of the measurement window, start is null while the whole run is reported
+    private static volatile RunSnapshot measurementStart;
+    private static volatile RunSnapshot measurementEnd;
+
+    /**
+     * This method reads all counters. Counters are read one
+     * after another so a snapshot taken while load is running
+     * is not exact to the single message
+     *
+     * @return snapshot of all counters
+     */
+
+    public static CounterSnapshot snapshotCounters() {
+        return new CounterSnapshot(messagesSent.sum(), messagesReceived.sum(), bytesSent.sum(), bytesReceived.sum(),
+                connectsEstablished.sum(), connectsFailed.sum(), loginsCompleted.sum(), errors.sum(),
+                messagesDuplicated.sum(), messagesReordered.sum(), messagesLate.sum(), messagesMissing.sum());
+    }
+
+    /**
+     * This method reads counters and all histograms of the
+     * final report
+     *
+     * @return snapshot of the run so far
+     */
+
+    public static RunSnapshot snapshotRun() {
+        return new RunSnapshot(System.nanoTime(), snapshotCounters(), endToEndLatency.snapshot(),
+                connectLatency.snapshot(), loginLatency.snapshot(), logoutLatency.snapshot(),
+                sessionLifetime.snapshot());
+    }
+
+    /**
+     * This method starts the measurement window. From now on
+     * the final report only covers what happens after this call
+     * and before {@link #endMeasurement()}
+     */
+
+    public static void startMeasurement() {
+        measurementEnd = null;
+        measurementStart = snapshotRun();
+    }
+
+    /**
+     * This method ends the measurement window, what happens
+     * afterwards is left out of the final report
+     */
+
+    public static void endMeasurement() {
+        if (measurementStart != null) {
+            measurementEnd = snapshotRun();
+        }
+    }
+
+    /**
+     * This method prints final latency report of the run, or
+     * of its measurement window if one has been started. A
+     * window which has not been ended lasts until the report
+     */
+
+    public static void printReport() {
+        RunSnapshot report = snapshotRun();
+        RunSnapshot start = measurementStart;
+        if (start == null) {
+            System.out.println("=========== Simulation report ===========");
+        } else {
+            RunSnapshot end = measurementEnd;
+            report = (end == null ? report : end).minus(start);
+            System.out.printf("=========== Simulation report of %.1fs measurement window ===========%n",
+                    report.getNanos() / 1_000_000_000.0);
+        }
+
+        System.out.println(report.getConnectLatency().toSummary("Connect latency"));
+        System.out.println(report.getEndToEndLatency().toSummary("End to end latency"));
+        if (report.getLoginLatency().getTotalCount() > 0) {
+            System.out.println(report.getLoginLatency().toSummary("Churn login latency"));
+            System.out.println(report.getLogoutLatency().toSummary("Churn logout latency"));
+            System.out.println(report.getSessionLifetime().toSummary("Churn session lifetime"));
+        }
+
+        CounterSnapshot counters = report.getCounters();
+        System.out.printf("Messages sent: %d, received: %d, bytes sent: %d, received: %d%n",
+                counters.getMessagesSent(), counters.getMessagesReceived(),
+                counters.getBytesSent(), counters.getBytesReceived());
+        System.out.printf("Connects: %d, failed: %d, logins: %d, errors: %d%n", counters.getConnectsEstablished(),
+                counters.getConnectsFailed(), counters.getLoginsCompleted(), counters.getErrors());
+        if (report.getEndToEndLatency().getTotalCount() > 0) {
+            System.out.println(counters.toDeliveryReport());
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("Heap used: %d MB, live platform threads: %d%n",
+                (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024), Thread.activeCount());
+    }
+}
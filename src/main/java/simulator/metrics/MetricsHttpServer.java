@@ -0,0 +1,219 @@
+package simulator.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import simulator.core.ConnectionState;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class serves metrics of the running simulator in
+ * Prometheus text format on /metrics.
+ * <p>
+ * A scrape never reads live counters or histograms. A refresher
+ * thread renders the whole page from snapshots once per refresh
+ * interval and a scrape only writes out the last rendered page,
+ * so scrapes neither block nor slow down the event loops no
+ * matter how often they come.
+ * <p>
+ * Quantiles are those of the last refresh interval, counts and
+ * totals are cumulative since start of the run.
+ */
+
+@Slf4j
+public class MetricsHttpServer {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final HttpServer httpServer;
+    private final long refreshMillis;
+    private final AtomicReference<byte[]> renderedPage = new AtomicReference<>(new byte[0]);
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long previousNanos = System.nanoTime();
+    private CounterSnapshot previousCounters = Metrics.snapshotCounters();
+    private HistogramSnapshot previousEndToEndLatency = Metrics.getEndToEndLatency().snapshot();
+    private HistogramSnapshot previousConnectLatency = Metrics.getConnectLatency().snapshot();
+    private HistogramSnapshot previousSendCallDuration = Metrics.getSendCallDuration().snapshot();
+    private HistogramSnapshot previousReadCallDuration = Metrics.getReadCallDuration().snapshot();
+
+    public MetricsHttpServer(int port, long refreshMillis) throws IOException {
+        this.refreshMillis = refreshMillis;
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.httpServer.createContext("/metrics", this::serve);
+        this.httpServer.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * This method starts serving. Dispatcher thread of the http
+     * server takes daemon flag of the thread which starts it, so
+     * it is started from the daemon refresher thread and does not
+     * keep the JVM alive once the run is over
+     *
+     * @throws IOException if server could not be started
+     */
+
+    public void start() throws IOException {
+        refresh();
+        try {
+            refresher.submit(httpServer::start).get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting metrics server", exception);
+        } catch (ExecutionException exception) {
+            throw new IOException("Could not start metrics server", exception.getCause());
+        }
+        refresher.scheduleAtFixedRate(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        log.info("Serving metrics on port {}", httpServer.getAddress().getPort());
+    }
+
+    public void stop() {
+        refresher.shutdownNow();
+        httpServer.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] page = renderedPage.get();
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(page);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * This method renders page out of fresh snapshots. Rates
+     * and quantiles are taken over time since last refresh
+     */
+
+    private void refresh() {
+        try {
+            long nowNanos = System.nanoTime();
+            double windowSeconds = Math.max(1, nowNanos - previousNanos) / NANOS_PER_SECOND;
+            CounterSnapshot counters = Metrics.snapshotCounters();
+            CounterSnapshot window = counters.minus(previousCounters);
+
+            StringBuilder page = new StringBuilder(4096);
+            counter(page, "simulator_messages_sent_total", "DATA messages sent by simulated users",
+                    counters.getMessagesSent());
+            counter(page, "simulator_messages_received_total", "DATA messages received by simulated users",
+                    counters.getMessagesReceived());
+            counter(page, "simulator_bytes_sent_total", "Bytes written to the server", counters.getBytesSent());
+            counter(page, "simulator_bytes_received_total", "Bytes read from the server", counters.getBytesReceived());
+            counter(page, "simulator_connects_total", "Connections established", counters.getConnectsEstablished());
+            counter(page, "simulator_connects_failed_total", "Connections which could not be established",
+                    counters.getConnectsFailed());
+            counter(page, "simulator_logins_total", "Logins completed", counters.getLoginsCompleted());
+            counter(page, "simulator_errors_total", "Errors on connections", counters.getErrors());
+            counter(page, "simulator_messages_duplicated_total", "DATA messages received more than once",
+                    counters.getMessagesDuplicated());
+            counter(page, "simulator_messages_reordered_total", "DATA messages received after a later one",
+                    counters.getMessagesReordered());
+            counter(page, "simulator_messages_late_total", "DATA messages too old to be checked by the receiver",
+                    counters.getMessagesLate());
+
+            gauge(page, "simulator_messages_sent_per_second", "Messages sent per second over the last refresh",
+                    window.getMessagesSent() / windowSeconds);
+            gauge(page, "simulator_messages_received_per_second", "Messages received per second over the last refresh",
+                    window.getMessagesReceived() / windowSeconds);
+            gauge(page, "simulator_bytes_sent_per_second", "Bytes sent per second over the last refresh",
+                    window.getBytesSent() / windowSeconds);
+            gauge(page, "simulator_bytes_received_per_second", "Bytes received per second over the last refresh",
+                    window.getBytesReceived() / windowSeconds);
+            gauge(page, "simulator_messages_missing", "Sequences skipped by receivers and not received since",
+                    counters.getMessagesMissing());
+            gauge(page, "simulator_write_queue_bytes", "Bytes queued for the server but not written yet",
+                    Metrics.getQueuedBytes().sum());
+            gauge(page, "simulator_buffer_pool_bytes", "Direct memory allocated by buffer pools",
+                    Metrics.getPooledBufferBytes().sum());
+
+            page.append("# HELP simulator_connections Simulated users per connection state\n");
+            page.append("# TYPE simulator_connections gauge\n");
+            for (ConnectionState connectionState : ConnectionState.values()) {
+                if (connectionState.isCounted()) {
+                    page.append("simulator_connections{state=\"").append(connectionState.name().toLowerCase(Locale.ROOT))
+                            .append("\"} ").append(Metrics.getConnectionStates().getUsers(connectionState)).append('\n');
+                }
+            }
+
+            HistogramSnapshot endToEndLatency = Metrics.getEndToEndLatency().snapshot();
+            summary(page, "simulator_end_to_end_latency_seconds", "Latency from intended send until receive",
+                    endToEndLatency, previousEndToEndLatency);
+            HistogramSnapshot connectLatency = Metrics.getConnectLatency().snapshot();
+            summary(page, "simulator_connect_latency_seconds", "Time until server accepted a connection",
+                    connectLatency, previousConnectLatency);
+            HistogramSnapshot sendCallDuration = Metrics.getSendCallDuration().snapshot();
+            summary(page, "simulator_send_call_duration_seconds", "Time spent in one send to the socket",
+                    sendCallDuration, previousSendCallDuration);
+            HistogramSnapshot readCallDuration = Metrics.getReadCallDuration().snapshot();
+            summary(page, "simulator_read_call_duration_seconds", "Time spent in one read and decode of frames",
+                    readCallDuration, previousReadCallDuration);
+
+            renderedPage.set(page.toString().getBytes(StandardCharsets.UTF_8));
+
+            previousNanos = nowNanos;
+            previousCounters = counters;
+            previousEndToEndLatency = endToEndLatency;
+            previousConnectLatency = connectLatency;
+            previousSendCallDuration = sendCallDuration;
+            previousReadCallDuration = readCallDuration;
+        } catch (RuntimeException exception) {
+            log.error("Could not refresh metrics ", exception);
+        }
+    }
+
+    private static void counter(StringBuilder page, String name, String help, long value) {
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        page.append("# TYPE ").append(name).append(" counter\n");
+        page.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder page, String name, String help, double value) {
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        page.append("# TYPE ").append(name).append(" gauge\n");
+        page.append(name).append(' ').append(String.format(Locale.ROOT, "%.3f", value)).append('\n');
+    }
+
+    private static void summary(StringBuilder page, String name, String help,
+                                HistogramSnapshot current, HistogramSnapshot previous) {
+        HistogramSnapshot window = current.minus(previous);
+        page.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        page.append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : QUANTILES) {
+            page.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(String.format(Locale.ROOT, "%.9f",
+                            window.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND)).append('\n');
+        }
+        page.append(name).append("_sum ")
+                .append(String.format(Locale.ROOT, "%.9f", current.getSum() / NANOS_PER_SECOND)).append('\n');
+        page.append(name).append("_count ").append(current.getTotalCount()).append('\n');
+    }
+}
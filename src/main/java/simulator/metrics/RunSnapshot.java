@@ -0,0 +1,40 @@
+package simulator.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * This class is an immutable copy of everything the final
+ * report is made of, taken at one point in time. Difference
+ * of two snapshots is what happened in between them, so a
+ * report can cover only part of a run without ever resetting
+ * counters or histograms which other threads write to.
+ */
+
+@Getter
+@AllArgsConstructor
+public class RunSnapshot {
+    //time the snapshot was taken, or time in between both snapshots of a difference
+    private final long nanos;
+    private final CounterSnapshot counters;
+    private final HistogramSnapshot endToEndLatency;
+    private final HistogramSnapshot connectLatency;
+    private final HistogramSnapshot loginLatency;
+    private final HistogramSnapshot logoutLatency;
+    private final HistogramSnapshot sessionLifetime;
+
+    /**
+     * This method returns what has been counted and recorded
+     * after the earlier snapshot has been taken
+     *
+     * @param earlier snapshot of the same run
+     * @return difference of both snapshots
+     */
+
+    public RunSnapshot minus(RunSnapshot earlier) {
+        return new RunSnapshot(nanos - earlier.nanos, counters.minus(earlier.counters),
+                endToEndLatency.minus(earlier.endToEndLatency), connectLatency.minus(earlier.connectLatency),
+                loginLatency.minus(earlier.loginLatency), logoutLatency.minus(earlier.logoutLatency),
+                sessionLifetime.minus(earlier.sessionLifetime));
+    }
+}
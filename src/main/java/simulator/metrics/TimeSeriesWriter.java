@@ -0,0 +1,129 @@
+package simulator.metrics;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * This class writes one record per reporting interval to a
+ * file so runs can be plotted and compared. File ending in
+ * .json or .jsonl gets one JSON object per line, any other
+ * file gets CSV with a header line.
+ * <p>
+ * Latencies are written in microseconds, rates per second.
+ */
+
+public abstract class TimeSeriesWriter implements Closeable {
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    protected final BufferedWriter writer;
+
+    protected TimeSeriesWriter(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method creates writer whose format
+     * fits the extension of the file
+     *
+     * @param file to write to, existing file is replaced
+     * @return writer
+     * @throws IOException if file can not be created
+     */
+
+    public static TimeSeriesWriter forFile(Path file) throws IOException {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (fileName.endsWith(".json") || fileName.endsWith(".jsonl")) {
+            return new JsonLines(file);
+        }
+        return new Csv(file);
+    }
+
+    /**
+     * This method writes the sample and flushes it so the
+     * file can be followed while the run is going
+     *
+     * @param sample of one interval
+     * @throws IOException if write failed
+     */
+
+    public abstract void write(IntervalSample sample) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    protected static double micros(long nanos) {
+        return nanos / NANOS_PER_MICRO;
+    }
+
+    private static final class Csv extends TimeSeriesWriter {
+
+        private Csv(Path file) throws IOException {
+            super(file);
+            writer.write("timestamp_ms,elapsed_s,sent_per_s,received_per_s,bytes_sent_per_s,bytes_received_per_s,"
+                    + "connects,connects_failed,logins,errors,total_sent,total_received,"
+                    + "latency_count,latency_p50_us,latency_p99_us,latency_p999_us,latency_max_us,"
+                    + "duplicated,reordered,late,total_missing");
+            writer.newLine();
+        }
+
+        @Override
+        public void write(IntervalSample sample) throws IOException {
+            CounterSnapshot interval = sample.getInterval();
+            HistogramSnapshot latency = sample.getIntervalLatency();
+            writer.write(String.format(Locale.ROOT,
+                    "%d,%.3f,%.1f,%.1f,%.1f,%.1f,%d,%d,%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%d,%d,%d,%d",
+                    sample.getTimestampMillis(), sample.getElapsedSeconds(),
+                    sample.perSecond(interval.getMessagesSent()), sample.perSecond(interval.getMessagesReceived()),
+                    sample.perSecond(interval.getBytesSent()), sample.perSecond(interval.getBytesReceived()),
+                    interval.getConnectsEstablished(), interval.getConnectsFailed(),
+                    interval.getLoginsCompleted(), interval.getErrors(),
+                    sample.getTotal().getMessagesSent(), sample.getTotal().getMessagesReceived(),
+                    latency.getTotalCount(), micros(latency.getValueAtPercentile(50)),
+                    micros(latency.getValueAtPercentile(99)), micros(latency.getValueAtPercentile(99.9)),
+                    micros(latency.getMaxValue()), interval.getMessagesDuplicated(),
+                    interval.getMessagesReordered(), interval.getMessagesLate(),
+                    sample.getTotal().getMessagesMissing()));
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    private static final class JsonLines extends TimeSeriesWriter {
+
+        private JsonLines(Path file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public void write(IntervalSample sample) throws IOException {
+            CounterSnapshot interval = sample.getInterval();
+            HistogramSnapshot latency = sample.getIntervalLatency();
+            writer.write(String.format(Locale.ROOT, "{\"timestampMs\":%d,\"elapsedS\":%.3f,"
+                            + "\"sentPerS\":%.1f,\"receivedPerS\":%.1f,\"bytesSentPerS\":%.1f,\"bytesReceivedPerS\":%.1f,"
+                            + "\"connects\":%d,\"connectsFailed\":%d,\"logins\":%d,\"errors\":%d,"
+                            + "\"totalSent\":%d,\"totalReceived\":%d,"
+                            + "\"latency\":{\"count\":%d,\"p50Us\":%.1f,\"p99Us\":%.1f,\"p999Us\":%.1f,\"maxUs\":%.1f},"
+                            + "\"delivery\":{\"duplicated\":%d,\"reordered\":%d,\"late\":%d,\"totalMissing\":%d}}",
+                    sample.getTimestampMillis(), sample.getElapsedSeconds(),
+                    sample.perSecond(interval.getMessagesSent()), sample.perSecond(interval.getMessagesReceived()),
+                    sample.perSecond(interval.getBytesSent()), sample.perSecond(interval.getBytesReceived()),
+                    interval.getConnectsEstablished(), interval.getConnectsFailed(),
+                    interval.getLoginsCompleted(), interval.getErrors(),
+                    sample.getTotal().getMessagesSent(), sample.getTotal().getMessagesReceived(),
+                    latency.getTotalCount(), micros(latency.getValueAtPercentile(50)),
+                    micros(latency.getValueAtPercentile(99)), micros(latency.getValueAtPercentile(99.9)),
+                    micros(latency.getMaxValue()), interval.getMessagesDuplicated(),
+                    interval.getMessagesReordered(), interval.getMessagesLate(),
+                    sample.getTotal().getMessagesMissing()));
+            writer.newLine();
+            writer.flush();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package simulator.properties;
 public class Constants {
 
     public static final int SERVER_SOURCE_ID = 0;
+    public static final int NO_MAGIC_NUMBER = 0;
     public static final int NO_MASSAGE_LENGTH_DEFINED = 0;
     public static final String LOGIN_MESSAGE = "";
     public static final String LOGOUT_MESSAGE = "";
@@ -20,8 +21,23 @@ public class Constants {
     public static final int END_OF_MESSAGE_LENGTH_EXCLUSIVE = 18;
     public static final int START_OF_MESSAGE_INCLUSIVE = 18;
 
+    //offsets inside message of DATA packets sent in latency mode
+    public static final int START_OF_SEND_TIMESTAMP_INCLUSIVE = 0;
+    public static final int END_OF_SEND_TIMESTAMP_EXCLUSIVE = 8;
+    public static final int START_OF_SEQUENCE_NUMBER_INCLUSIVE = 8;
+    public static final int END_OF_SEQUENCE_NUMBER_EXCLUSIVE = 16;
+    public static final int LATENCY_PREFIX_LENGTH = 16;
+
+    //frames longer than this are treated as a corrupt stream
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
     public static final int EXIT_PROGRAM_VALUE  = 0;
     public static final int LOGIN_PROGRAM_VALUE = 1;
 
+    public static final String DEFAULT_SERVER_HOST = "localhost";
+    public static final int DEFAULT_SERVER_PORT = 5000;
+    public static final int DEFAULT_CONTROL_PORT = 5100;
+    public static final String DEFAULT_JOURNAL_FILE = "simulator-journal.bin";
+
 
 }
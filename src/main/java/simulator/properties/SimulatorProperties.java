@@ -0,0 +1,321 @@
+package simulator.properties;
+
+import simulator.engine.SourceAddresses;
+import simulator.load.ExecutionMode;
+import simulator.schedule.ArrivalProcess;
+import simulator.schedule.DestinationTarget;
+import simulator.schedule.MessageContent;
+import simulator.schedule.PayloadSizes;
+import simulator.schedule.SessionLength;
+
+import java.util.Optional;
+
+/**
+ * This class contains all the tunable settings of the
+ * simulator. Every value can be overridden from the
+ * command line with -Dsimulator.*=value
+ */
+
+public class SimulatorProperties {
+
+    public static final String EXECUTION_MODE = "simulator.mode";
+    public static final String EVENT_LOOPS = "simulator.eventLoops";
+    public static final String SERVER_HOST = "simulator.host";
+    public static final String SERVER_PORT = "simulator.port";
+    public static final String RATE_PER_CLIENT = "simulator.rate.perClient";
+    public static final String RATE_GLOBAL = "simulator.rate.global";
+    public static final String ARRIVAL_PROCESS = "simulator.arrival";
+    public static final String LATENCY_MODE = "simulator.latency";
+    public static final String RAMP_RATE = "simulator.ramp.rate";
+    public static final String OUTBOUND_HIGH_WATERMARK = "simulator.outbound.highWatermark";
+    public static final String RAMP_MAX_PENDING = "simulator.ramp.maxPending";
+    public static final String RUN_DURATION_SECONDS = "simulator.duration";
+    public static final String SERVER_WORKERS = "simulator.server.workers";
+    public static final String SERVER_BACKLOG = "simulator.server.backlog";
+    public static final String MESSAGE_SIZE = "simulator.message.size";
+    public static final String MESSAGE_SIZES = "simulator.message.sizes";
+    public static final String MESSAGE_TARGET = "simulator.message.target";
+    public static final String REPORT_INTERVAL_MILLIS = "simulator.report.interval";
+    public static final String METRICS_FILE = "simulator.metrics.file";
+    public static final String PRINT_MESSAGES = "simulator.printMessages";
+    public static final String HTTP_PORT = "simulator.http.port";
+    public static final String CONTROL_PORT = "simulator.control.port";
+    public static final String JOURNAL_RECORDS = "simulator.journal.records";
+    public static final String JOURNAL_FILE = "simulator.journal.file";
+    public static final String CAPTURE_FILE = "simulator.capture.file";
+    public static final String REPLAY_SPEED = "simulator.replay.speed";
+    public static final String CHURN_RATE = "simulator.churn.rate";
+    public static final String CHURN_SESSION_SECONDS = "simulator.churn.session";
+    public static final String CHURN_SESSION_LENGTH = "simulator.churn.sessionLength";
+    public static final String SOURCE_ADDRESSES = "simulator.sourceAddresses";
+    public static final String IDLE_KEEPALIVE_SECONDS = "simulator.idle.keepalive";
+    public static final String WARMUP_SECONDS = "simulator.warmup";
+    public static final String WARMUP_MESSAGES = "simulator.warmup.messages";
+    public static final String COOLDOWN_SECONDS = "simulator.cooldown";
+
+    public static ExecutionMode getExecutionMode() {
+        String executionMode = System.getProperty(EXECUTION_MODE, ExecutionMode.EVENT_LOOP.name());
+        return ExecutionMode.fromText(executionMode)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown execution mode " + executionMode));
+    }
+
+    public static int getEventLoops() {
+        return Integer.getInteger(EVENT_LOOPS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static String getServerHost() {
+        return System.getProperty(SERVER_HOST, Constants.DEFAULT_SERVER_HOST);
+    }
+
+    public static int getServerPort() {
+        return Integer.getInteger(SERVER_PORT, Constants.DEFAULT_SERVER_PORT);
+    }
+
+    public static double getMessagesPerSecondPerClient() {
+        return getDouble(RATE_PER_CLIENT, 0);
+    }
+
+    public static double getGlobalMessagesPerSecond() {
+        return getDouble(RATE_GLOBAL, 0);
+    }
+
+    public static ArrivalProcess getArrivalProcess() {
+        String arrivalProcess = System.getProperty(ARRIVAL_PROCESS, ArrivalProcess.CONSTANT.name());
+        return ArrivalProcess.fromText(arrivalProcess)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown arrival process " + arrivalProcess));
+    }
+
+    /**
+     * @return bytes of message text, 0 keeps the default text
+     */
+
+    public static int getMessageSize() {
+        return Integer.getInteger(MESSAGE_SIZE, MessageContent.DEFAULT_SIZE);
+    }
+
+    /**
+     * @return distribution message sizes are drawn from, it
+     * replaces the fixed message size when it is set
+     */
+
+    public static Optional<PayloadSizes> getPayloadSizes() {
+        return Optional.ofNullable(System.getProperty(MESSAGE_SIZES)).map(PayloadSizes::parse);
+    }
+
+    public static DestinationTarget getDestinationTarget() {
+        String destinationTarget = System.getProperty(MESSAGE_TARGET, DestinationTarget.RANDOM.name());
+        return DestinationTarget.fromText(destinationTarget)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown message target " + destinationTarget));
+    }
+
+    /**
+     * @return connections opened per second, 0 means no limit
+     */
+
+    public static double getRampConnectionsPerSecond() {
+        return getDouble(RAMP_RATE, 0);
+    }
+
+    public static int getRampMaxPendingConnects() {
+        return Integer.getInteger(RAMP_MAX_PENDING, 1000);
+    }
+
+    /**
+     * @return bytes a connection may have queued before it stops sending
+     */
+
+    public static long getOutboundHighWatermarkBytes() {
+        return Long.getLong(OUTBOUND_HIGH_WATERMARK, 64 * 1024);
+    }
+
+    /**
+     * @return true if DATA packets carry send timestamp and sequence number
+     */
+
+    public static boolean isLatencyMode() {
+        return Boolean.getBoolean(LATENCY_MODE);
+    }
+
+    /**
+     * @return duration of the run in seconds, 0 means run until stopped
+     */
+
+    public static long getRunDurationSeconds() {
+        return Long.getLong(RUN_DURATION_SECONDS, 0);
+    }
+
+    /**
+     * @return number of selector loops of the bundled chat server
+     */
+
+    public static int getServerWorkers() {
+        return Integer.getInteger(SERVER_WORKERS, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return accept backlog of the bundled chat server, large enough
+     * for connection storms of a ramp
+     */
+
+    public static int getServerBacklog() {
+        return Integer.getInteger(SERVER_BACKLOG, 4096);
+    }
+
+    /**
+     * @return milliseconds between two report lines, 0 disables them
+     */
+
+    public static long getReportIntervalMillis() {
+        return Long.getLong(REPORT_INTERVAL_MILLIS, 1000);
+    }
+
+    /**
+     * @return file for the time series of the run or null, .json
+     * and .jsonl files get JSON lines, other files CSV
+     */
+
+    public static String getMetricsFile() {
+        return System.getProperty(METRICS_FILE);
+    }
+
+    /**
+     * @return true if every received message and assigned id
+     * is printed on console
+     */
+
+    public static boolean isPrintMessages() {
+        return Boolean.getBoolean(PRINT_MESSAGES);
+    }
+
+    /**
+     * @return port of the Prometheus metrics endpoint, 0 disables it
+     */
+
+    public static int getHttpPort() {
+        return Integer.getInteger(HTTP_PORT, 0);
+    }
+
+    /**
+     * @return port coordinator listens on and agents connect to
+     */
+
+    public static int getControlPort() {
+        return Integer.getInteger(CONTROL_PORT, Constants.DEFAULT_CONTROL_PORT);
+    }
+
+    /**
+     * @return records kept per thread by the event journal, 0
+     * disables it. Event loops keep a long history, platform threads
+     * a short one as they run two threads per client. Virtual threads
+     * have no journal by default, two rings per client would cost more
+     * memory than the clients themselves
+     */
+
+    public static int getJournalRecordsPerThread() {
+        ExecutionMode executionMode = getExecutionMode();
+        int defaultRecords = executionMode == ExecutionMode.VIRTUAL_THREADS ? 0
+                : executionMode.isThreadPerClient() ? 256 : 16384;
+        return Integer.getInteger(JOURNAL_RECORDS, defaultRecords);
+    }
+
+    /**
+     * @return file the event journal is always dumped to at the end
+     * of a run or null, in which case it is only dumped to
+     * {@link Constants#DEFAULT_JOURNAL_FILE} when the run had errors
+     */
+
+    public static String getJournalFile() {
+        return System.getProperty(JOURNAL_FILE);
+    }
+
+    /**
+     * @return file every frame sent and received is captured to
+     * or null if traffic is not captured
+     */
+
+    public static String getCaptureFile() {
+        return System.getProperty(CAPTURE_FILE);
+    }
+
+    /**
+     * @return factor a replayed capture is sped up by, 1 replays
+     * frames at their original times
+     */
+
+    public static double getReplaySpeed() {
+        return getDouble(REPLAY_SPEED, 1);
+    }
+
+    /**
+     * @return sessions of churning users started per second on top
+     * of the clients, 0 disables churn
+     */
+
+    public static double getChurnSessionsPerSecond() {
+        return getDouble(CHURN_RATE, 0);
+    }
+
+    /**
+     * @return mean time a churning user stays logged in
+     */
+
+    public static double getChurnSessionSeconds() {
+        return getDouble(CHURN_SESSION_SECONDS, 30);
+    }
+
+    public static SessionLength getChurnSessionLength() {
+        String sessionLength = System.getProperty(CHURN_SESSION_LENGTH, SessionLength.EXPONENTIAL.name());
+        return SessionLength.fromText(sessionLength)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown session length " + sessionLength));
+    }
+
+    /**
+     * @return local addresses outgoing connections are spread over,
+     * for example 127.0.0.1-127.0.0.8, none by default
+     */
+
+    public static SourceAddresses getSourceAddresses() {
+        return SourceAddresses.parse(System.getProperty(SOURCE_ADDRESSES));
+    }
+
+    /**
+     * @return seconds between two keepalive messages of an idle
+     * user, 0 keeps idle users silent
+     */
+
+    public static double getIdleKeepaliveSeconds() {
+        return getDouble(IDLE_KEEPALIVE_SECONDS, 0);
+    }
+
+    /**
+     * @return seconds at the start of the run left out of the
+     * final report, 0 for no warmup
+     */
+
+    public static double getWarmupSeconds() {
+        return getDouble(WARMUP_SECONDS, 0);
+    }
+
+    /**
+     * @return messages received before warmup ends, 0 ends
+     * warmup on time alone
+     */
+
+    public static long getWarmupMessages() {
+        return Long.getLong(WARMUP_MESSAGES, 0);
+    }
+
+    /**
+     * @return seconds at the end of the run left out of the
+     * final report, part of the run duration
+     */
+
+    public static double getCooldownSeconds() {
+        return getDouble(COOLDOWN_SECONDS, 0);
+    }
+
+    private static double getDouble(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
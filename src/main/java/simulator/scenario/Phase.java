@@ -0,0 +1,98 @@
+package simulator.scenario;
+
+import lombok.Builder;
+import lombok.Getter;
+import simulator.schedule.DestinationTarget;
+import simulator.schedule.PayloadSizes;
+import simulator.schedule.SessionLength;
+
+import java.time.Duration;
+
+/**
+ * This class represents one phase of a scenario. Rate, message
+ * size and target are optional, a phase which does not set them
+ * keeps what the phase before it has set.
+ */
+
+@Getter
+@Builder(toBuilder = true)
+public class Phase {
+    public static final int ALL_USERS = -1;
+
+    private final PhaseType phaseType;
+    private final Duration duration;
+
+    @Builder.Default
+    private final int users = ALL_USERS;
+
+    //messages per second of all users, 0 sends as fast as possible
+    private final Double globalMessagesPerSecond;
+    private final Double messagesPerSecondPerClient;
+    private final Integer messageSize;
+    //replaces message size when both are set
+    private final PayloadSizes payloadSizes;
+    private final DestinationTarget destinationTarget;
+
+    //sessions started per second and their lengths, churn phase only
+    private final Double sessionsPerSecond;
+    private final Duration meanSessionLength;
+    @Builder.Default
+    private final SessionLength sessionLength = SessionLength.EXPONENTIAL;
+
+    /**
+     * This method returns the part of this phase one of several
+     * processes runs. Users and rate of all users are split as
+     * evenly as possible, rate per user is kept as it is
+     *
+     * @param share  index of the process, starting at 0
+     * @param shares number of processes
+     * @return phase for the process
+     */
+
+    public Phase shareOf(int share, int shares) {
+        PhaseBuilder phase = toBuilder();
+        if (users != ALL_USERS) {
+            phase.users(users / shares + (share < users % shares ? 1 : 0));
+        }
+        if (globalMessagesPerSecond != null && globalMessagesPerSecond > 0) {
+            phase.globalMessagesPerSecond(globalMessagesPerSecond / shares);
+        }
+        if (sessionsPerSecond != null) {
+            phase.sessionsPerSecond(sessionsPerSecond / shares);
+        }
+        return phase.build();
+    }
+
+    /**
+     * @return short description used in progress output
+     */
+
+    public String describe() {
+        StringBuilder description = new StringBuilder(phaseType.getKeyword())
+                .append(" for ").append(duration.getSeconds()).append("s");
+        if (users != ALL_USERS) {
+            description.append(", users=").append(users);
+        }
+        if (globalMessagesPerSecond != null && globalMessagesPerSecond > 0) {
+            description.append(", rate=").append(globalMessagesPerSecond).append("/s");
+        } else if (messagesPerSecondPerClient != null && messagesPerSecondPerClient > 0) {
+            description.append(", rate=").append(messagesPerSecondPerClient).append("/client");
+        } else if (globalMessagesPerSecond != null) {
+            description.append(", rate=max");
+        }
+        if (messageSize != null) {
+            description.append(", size=").append(messageSize);
+        }
+        if (payloadSizes != null) {
+            description.append(", sizes=").append(payloadSizes);
+        }
+        if (destinationTarget != null) {
+            description.append(", target=").append(destinationTarget.name().toLowerCase());
+        }
+        if (sessionsPerSecond != null) {
+            description.append(", churn=").append(sessionsPerSecond).append("/s, session=")
+                    .append(meanSessionLength.toMillis()).append("ms ").append(sessionLength.name().toLowerCase());
+        }
+        return description.toString();
+    }
+}
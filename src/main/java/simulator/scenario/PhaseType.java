@@ -0,0 +1,46 @@
+package simulator.scenario;
+
+import java.util.Optional;
+
+/**
+ * This enum represents shapes of traffic a phase can have.
+ * <p>
+ * RAMP opens its users evenly spread over the phase.
+ * STEADY keeps users as they are and sends at the phase rate.
+ * SPIKE opens its users at once and logs them out again when
+ * the phase is over.
+ * RAMP_DOWN logs out its users, or everybody if no users are
+ * given, evenly spread over the phase.
+ * SOAK is a steady phase meant to run for hours.
+ * CHURN starts sessions at the phase churn rate on top of the
+ * users which are connected. Every session logs in, chats for its
+ * session length, logs out and waits for the server to close it.
+ */
+
+public enum PhaseType {
+    RAMP("ramp"),
+    STEADY("steady"),
+    SPIKE("spike"),
+    RAMP_DOWN("rampdown"),
+    SOAK("soak"),
+    CHURN("churn");
+
+    private final String keyword;
+
+    PhaseType(String keyword) {
+        this.keyword = keyword;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public static Optional<PhaseType> fromText(String text) {
+        for (PhaseType phaseType : values()) {
+            if (phaseType.keyword.equalsIgnoreCase(text) || phaseType.name().equalsIgnoreCase(text)) {
+                return Optional.of(phaseType);
+            }
+        }
+        return Optional.empty();
+    }
+}
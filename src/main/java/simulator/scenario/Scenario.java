@@ -0,0 +1,46 @@
+package simulator.scenario;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import simulator.schedule.ArrivalProcess;
+
+import java.util.List;
+
+/**
+ * This class represents a whole workload: which server to
+ * load and the phases which are run one after another
+ */
+
+@Getter
+@Builder(toBuilder = true)
+public class Scenario {
+    private final String host;
+    private final int port;
+    private final ArrivalProcess arrivalProcess;
+    private final int eventLoops;
+    private final int maxPendingConnects;
+    //phases of the measurement window counted from 1, 0 reports the whole run
+    private final int firstMeasuredPhase;
+    private final int lastMeasuredPhase;
+
+    @Singular
+    private final List<Phase> phases;
+
+    /**
+     * This method returns the part of this scenario one of several
+     * processes runs, see {@link Phase#shareOf(int, int)}
+     *
+     * @param share  index of the process, starting at 0
+     * @param shares number of processes
+     * @return scenario for the process
+     */
+
+    public Scenario shareOf(int share, int shares) {
+        ScenarioBuilder scenario = toBuilder().clearPhases();
+        for (Phase phase : phases) {
+            scenario.phase(phase.shareOf(share, shares));
+        }
+        return scenario.build();
+    }
+}
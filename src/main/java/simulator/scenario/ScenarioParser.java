@@ -0,0 +1,287 @@
+package simulator.scenario;
+
+import simulator.properties.SimulatorProperties;
+import simulator.schedule.ArrivalProcess;
+import simulator.schedule.DestinationTarget;
+import simulator.schedule.PayloadSizes;
+import simulator.schedule.SessionLength;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * This class reads a scenario file. Every line is either a
+ * setting of the run or a phase, empty lines and lines starting
+ * with # are ignored:
+ * <pre>
+ * host = localhost
+ * port = 5000
+ * arrival = poisson
+ * eventLoops = 4
+ * maxPendingConnects = 1000
+ * measure = 2-4
+ *
+ * phase ramp     users=10000 duration=2m  rate=1/client size=64
+ * phase steady   duration=10m rate=20000 target=random
+ * phase spike    users=5000 duration=30s rate=60000 size=512
+ * phase rampdown users=5000 duration=1m
+ * phase soak     duration=4h  rate=10000 sizes=lognormal:1024,1.5
+ * phase churn    duration=10m churn=50 session=2m sessionLength=exponential
+ * </pre>
+ * Rate is messages per second of all users, or of every single
+ * user when it ends with /client, and max sends as fast as
+ * possible. Duration takes ms, s, m and h, a plain number is
+ * seconds. Sizes draw the size of every message from one of the
+ * distributions of {@link PayloadSizes}. Churn is sessions started
+ * per second, session their mean length and sessionLength either
+ * fixed or exponential, which is the default. Measure limits the
+ * final report to a range of phases, counted from 1, so warmup
+ * and cooldown phases are left out. Settings which are not in the
+ * file are taken from the -Dsimulator.* properties.
+ */
+
+public class ScenarioParser {
+    private static final String PHASE_KEYWORD = "phase";
+    private static final String PER_CLIENT_SUFFIX = "/client";
+    private static final String MAX_RATE = "max";
+
+    /**
+     * This method reads scenario from a file
+     *
+     * @param scenarioFile path of the file
+     * @return scenario with at least one phase
+     * @throws IOException              if file can not be read
+     * @throws IllegalArgumentException if file is not a valid scenario
+     */
+
+    public static Scenario parse(Path scenarioFile) throws IOException {
+        return parse(Files.readAllLines(scenarioFile, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This method reads scenario from lines of a file
+     *
+     * @param lines of the scenario file
+     * @return scenario with at least one phase
+     * @throws IllegalArgumentException if lines are not a valid scenario
+     */
+
+    public static Scenario parse(List<String> lines) {
+        Scenario.ScenarioBuilder scenario = Scenario.builder()
+                .host(SimulatorProperties.getServerHost())
+                .port(SimulatorProperties.getServerPort())
+                .arrivalProcess(SimulatorProperties.getArrivalProcess())
+                .eventLoops(SimulatorProperties.getEventLoops())
+                .maxPendingConnects(SimulatorProperties.getRampMaxPendingConnects());
+
+        int numberOfPhases = 0;
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            try {
+                if (line.startsWith(PHASE_KEYWORD + " ")) {
+                    scenario.phase(parsePhase(line.substring(PHASE_KEYWORD.length()).trim()));
+                    numberOfPhases++;
+                } else {
+                    parseSetting(line, scenario);
+                }
+            } catch (IllegalArgumentException exception) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + exception.getMessage(), exception);
+            }
+        }
+
+        if (numberOfPhases == 0) {
+            throw new IllegalArgumentException("Scenario has no phase");
+        }
+        Scenario builtScenario = scenario.build();
+        if (builtScenario.getLastMeasuredPhase() > numberOfPhases) {
+            throw new IllegalArgumentException("Measured phase " + builtScenario.getLastMeasuredPhase()
+                    + " does not exist, scenario has " + numberOfPhases + " phases");
+        }
+        return builtScenario;
+    }
+
+    private static void parseSetting(String line, Scenario.ScenarioBuilder scenario) {
+        int separator = line.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected key = value or phase but found " + line);
+        }
+
+        String key = line.substring(0, separator).trim();
+        String value = line.substring(separator + 1).trim();
+        switch (key) {
+            case "host":
+                scenario.host(value);
+                break;
+            case "port":
+                scenario.port(parsePositiveInt(key, value));
+                break;
+            case "arrival":
+                scenario.arrivalProcess(ArrivalProcess.fromText(value)
+                        .orElseThrow(() -> new IllegalArgumentException("Unknown arrival process " + value)));
+                break;
+            case "eventLoops":
+                scenario.eventLoops(parsePositiveInt(key, value));
+                break;
+            case "maxPendingConnects":
+                scenario.maxPendingConnects(parsePositiveInt(key, value));
+                break;
+            case "measure":
+                parseMeasuredPhases(key, value, scenario);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown setting " + key);
+        }
+    }
+
+    /**
+     * Measured phases are a range like 2-4 or a single phase
+     */
+
+    private static void parseMeasuredPhases(String key, String value, Scenario.ScenarioBuilder scenario) {
+        int separator = value.indexOf('-');
+        int first = parsePositiveInt(key, separator < 0 ? value : value.substring(0, separator).trim());
+        int last = separator < 0 ? first : parsePositiveInt(key, value.substring(separator + 1).trim());
+        if (last < first) {
+            throw new IllegalArgumentException("Invalid " + key + " " + value);
+        }
+        scenario.firstMeasuredPhase(first).lastMeasuredPhase(last);
+    }
+
+    private static Phase parsePhase(String definition) {
+        String[] tokens = definition.split("\\s+");
+        PhaseType phaseType = PhaseType.fromText(tokens[0])
+                .orElseThrow(() -> new IllegalArgumentException("Unknown phase " + tokens[0]));
+        Phase.PhaseBuilder phase = Phase.builder().phaseType(phaseType);
+
+        boolean hasDuration = false;
+        for (int i = 1; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value but found " + tokens[i]);
+            }
+
+            String key = tokens[i].substring(0, separator);
+            String value = tokens[i].substring(separator + 1);
+            switch (key) {
+                case "users":
+                    phase.users(parsePositiveInt(key, value));
+                    break;
+                case "duration":
+                    phase.duration(parseDuration(value));
+                    hasDuration = true;
+                    break;
+                case "rate":
+                    parseRate(value, phase);
+                    break;
+                case "size":
+                    phase.messageSize(parseNonNegativeInt(key, value));
+                    break;
+                case "sizes":
+                    phase.payloadSizes(PayloadSizes.parse(value));
+                    break;
+                case "churn":
+                    phase.sessionsPerSecond(parsePositiveDouble(value));
+                    break;
+                case "session":
+                    phase.meanSessionLength(parseDuration(value));
+                    break;
+                case "sessionLength":
+                    phase.sessionLength(SessionLength.fromText(value)
+                            .orElseThrow(() -> new IllegalArgumentException("Unknown session length " + value)));
+                    break;
+                case "target":
+                    phase.destinationTarget(DestinationTarget.fromText(value)
+                            .orElseThrow(() -> new IllegalArgumentException("Unknown target " + value)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown phase setting " + key);
+            }
+        }
+
+        if (!hasDuration) {
+            throw new IllegalArgumentException("Phase " + phaseType.getKeyword() + " has no duration");
+        }
+        Phase builtPhase = phase.build();
+        if ((phaseType == PhaseType.RAMP || phaseType == PhaseType.SPIKE) && builtPhase.getUsers() == Phase.ALL_USERS) {
+            throw new IllegalArgumentException("Phase " + phaseType.getKeyword() + " needs users");
+        }
+        if (phaseType == PhaseType.CHURN
+                && (builtPhase.getSessionsPerSecond() == null || builtPhase.getMeanSessionLength() == null)) {
+            throw new IllegalArgumentException("Phase " + phaseType.getKeyword() + " needs churn and session");
+        }
+        return builtPhase;
+    }
+
+    /**
+     * A rate replaces the rate of the phase before completely,
+     * so setting one kind of rate clears the other one
+     */
+
+    private static void parseRate(String value, Phase.PhaseBuilder phase) {
+        if (MAX_RATE.equalsIgnoreCase(value)) {
+            phase.globalMessagesPerSecond(0.0).messagesPerSecondPerClient(0.0);
+        } else if (value.endsWith(PER_CLIENT_SUFFIX)) {
+            String rate = value.substring(0, value.length() - PER_CLIENT_SUFFIX.length());
+            phase.messagesPerSecondPerClient(parsePositiveDouble(rate)).globalMessagesPerSecond(0.0);
+        } else {
+            phase.globalMessagesPerSecond(parsePositiveDouble(value)).messagesPerSecondPerClient(0.0);
+        }
+    }
+
+    private static Duration parseDuration(String value) {
+        try {
+            if (value.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+            } else if (value.endsWith("s")) {
+                return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+            } else if (value.endsWith("m")) {
+                return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+            } else if (value.endsWith("h")) {
+                return Duration.ofHours(Long.parseLong(value.substring(0, value.length() - 1)));
+            }
+            return Duration.ofSeconds(Long.parseLong(value));
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid duration " + value);
+        }
+    }
+
+    private static double parsePositiveDouble(String value) {
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            //reported below
+        }
+        throw new IllegalArgumentException("Invalid rate " + value);
+    }
+
+    private static int parsePositiveInt(String key, String value) {
+        int parsed = parseNonNegativeInt(key, value);
+        if (parsed == 0) {
+            throw new IllegalArgumentException("Invalid " + key + " " + value);
+        }
+        return parsed;
+    }
+
+    private static int parseNonNegativeInt(String key, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            //reported below
+        }
+        throw new IllegalArgumentException("Invalid " + key + " " + value);
+    }
+}
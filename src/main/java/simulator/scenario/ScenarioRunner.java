@@ -0,0 +1,151 @@
+package simulator.scenario;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import simulator.engine.ChurnEngine;
+import simulator.engine.ConnectionRamp;
+import simulator.engine.EventLoopGroup;
+import simulator.load.LoadSimulator;
+import simulator.metrics.Metrics;
+import simulator.schedule.MessageContent;
+import simulator.schedule.SendSchedule;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs the phases of a scenario one after another
+ * on a pool of event loops. Every phase takes exactly its
+ * duration: opening or logging out users is spread over the
+ * phase and whatever time is left is spent sending.
+ * <p>
+ * Rate, message size and target of a phase are applied to the
+ * shared send schedule and message content when the phase
+ * starts, so all connected users switch to them at once.
+ * <p>
+ * If the scenario measures a range of phases, the final report
+ * covers only the time from start of its first to end of its
+ * last phase.
+ */
+
+@Slf4j
+@RequiredArgsConstructor
+public class ScenarioRunner {
+    private final Scenario scenario;
+
+    /**
+     * This method runs the whole scenario and stops all
+     * event loops once the last phase is over
+     *
+     * @throws IOException          if event loops could not be started
+     * @throws InterruptedException if run is interrupted
+     */
+
+    public void run() throws IOException, InterruptedException {
+        EventLoopGroup eventLoopGroup = new EventLoopGroup(scenario.getEventLoops());
+        InetSocketAddress serverAddress = new InetSocketAddress(scenario.getHost(), scenario.getPort());
+        ConnectionRamp connectionRamp = new ConnectionRamp(eventLoopGroup, serverAddress, 0,
+                scenario.getMaxPendingConnects());
+        ChurnEngine churnEngine = new ChurnEngine(eventLoopGroup, serverAddress, scenario.getMaxPendingConnects());
+        LoadSimulator.getSendSchedule().setArrivalProcess(scenario.getArrivalProcess());
+
+        try {
+            List<Phase> phases = scenario.getPhases();
+            for (int i = 0; i < phases.size(); i++) {
+                Phase phase = phases.get(i);
+                if (i + 1 == scenario.getFirstMeasuredPhase()) {
+                    Metrics.startMeasurement();
+                    System.out.println("Measurement started");
+                }
+                System.out.printf("Phase %d/%d started: %s%n", i + 1, phases.size(), phase.describe());
+                runPhase(phase, connectionRamp, churnEngine);
+                System.out.printf("Phase %d/%d ended with %d open connections%n", i + 1, phases.size(),
+                        connectionRamp.getOpenConnections());
+                if (i + 1 == scenario.getLastMeasuredPhase()) {
+                    Metrics.endMeasurement();
+                    System.out.println("Measurement ended");
+                }
+                if (phase.getPhaseType() == PhaseType.CHURN) {
+                    System.out.println("Churn: " + churnEngine.describe());
+                }
+            }
+        } finally {
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    private void runPhase(Phase phase, ConnectionRamp connectionRamp, ChurnEngine churnEngine)
+            throws InterruptedException {
+        long phaseEndNanos = System.nanoTime() + phase.getDuration().toNanos();
+        applySettings(phase);
+
+        switch (phase.getPhaseType()) {
+            case RAMP:
+                connectionRamp.open(phase.getUsers(), perSecondOverPhase(phase.getUsers(), phase));
+                break;
+            case SPIKE:
+                connectionRamp.open(phase.getUsers(), 0);
+                waitUntil(phaseEndNanos);
+                connectionRamp.close(phase.getUsers(), 0);
+                return;
+            case RAMP_DOWN:
+                int users = phase.getUsers() == Phase.ALL_USERS ? connectionRamp.getOpenConnections() : phase.getUsers();
+                connectionRamp.close(users, perSecondOverPhase(users, phase));
+                break;
+            case CHURN:
+                long churnNanos = phaseEndNanos - System.nanoTime();
+                if (churnNanos > 0) {
+                    churnEngine.run(phase.getSessionsPerSecond(), scenario.getArrivalProcess(),
+                            phase.getMeanSessionLength().toNanos(), phase.getSessionLength(), churnNanos);
+                }
+                break;
+            case STEADY:
+            case SOAK:
+            default:
+                break;
+        }
+        waitUntil(phaseEndNanos);
+    }
+
+    /**
+     * Settings a phase does not have are left as they are
+     */
+
+    private static void applySettings(Phase phase) {
+        SendSchedule sendSchedule = LoadSimulator.getSendSchedule();
+        if (phase.getGlobalMessagesPerSecond() != null) {
+            sendSchedule.setGlobalMessagesPerSecond(phase.getGlobalMessagesPerSecond());
+        }
+        if (phase.getMessagesPerSecondPerClient() != null) {
+            sendSchedule.setMessagesPerSecondPerClient(phase.getMessagesPerSecondPerClient());
+        }
+
+        MessageContent messageContent = LoadSimulator.getMessageContent();
+        if (phase.getMessageSize() != null) {
+            messageContent.setMessageSize(phase.getMessageSize());
+        }
+        if (phase.getPayloadSizes() != null) {
+            messageContent.setPayloadSizes(phase.getPayloadSizes());
+        }
+        if (phase.getDestinationTarget() != null) {
+            messageContent.setDestinationTarget(phase.getDestinationTarget());
+        }
+    }
+
+    private static double perSecondOverPhase(int users, Phase phase) {
+        double seconds = phase.getDuration().toNanos() / 1_000_000_000.0;
+        return seconds > 0 ? users / seconds : 0;
+    }
+
+    private static void waitUntil(long intendedNanos) throws InterruptedException {
+        long nanosToWait;
+        while ((nanosToWait = intendedNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(nanosToWait);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package simulator.schedule;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This enum represents how sends of a client are spread
+ * over time for a given rate.
+ * <p>
+ * CONSTANT sends exactly every 1/rate seconds.
+ * POISSON draws exponentially distributed gaps with mean
+ * 1/rate which is how independent chat users behave.
+ */
+
+public enum ArrivalProcess {
+    CONSTANT {
+        @Override
+        public long nextIntervalNanos(double messagesPerSecond) {
+            return (long) (NANOS_PER_SECOND / messagesPerSecond);
+        }
+    },
+    POISSON {
+        @Override
+        public long nextIntervalNanos(double messagesPerSecond) {
+            double uniform = ThreadLocalRandom.current().nextDouble();
+            return (long) (-Math.log(1.0 - uniform) * NANOS_PER_SECOND / messagesPerSecond);
+        }
+    };
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * This method returns gap between two intended sends
+     *
+     * @param messagesPerSecond rate which must be greater than zero
+     * @return gap in nanoseconds
+     */
+
+    public abstract long nextIntervalNanos(double messagesPerSecond);
+
+    public static Optional<ArrivalProcess> fromText(String text) {
+        for (ArrivalProcess arrivalProcess : values()) {
+            if (arrivalProcess.name().equalsIgnoreCase(text)) {
+                return Optional.of(arrivalProcess);
+            }
+        }
+        return Optional.empty();
+    }
+}
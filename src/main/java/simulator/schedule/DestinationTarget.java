@@ -0,0 +1,25 @@
+package simulator.schedule;
+
+import java.util.Optional;
+
+/**
+ * This enum represents whom a client sends its messages to.
+ * <p>
+ * RANDOM picks any logged in peer for every message.
+ * SELF sends every message back to the sender itself, which
+ * keeps load on the server without any fan out between loops.
+ */
+
+public enum DestinationTarget {
+    RANDOM,
+    SELF;
+
+    public static Optional<DestinationTarget> fromText(String text) {
+        for (DestinationTarget destinationTarget : values()) {
+            if (destinationTarget.name().equalsIgnoreCase(text)) {
+                return Optional.of(destinationTarget);
+            }
+        }
+        return Optional.empty();
+    }
+}
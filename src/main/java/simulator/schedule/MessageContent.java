@@ -0,0 +1,123 @@
+package simulator.schedule;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import simulator.core.FrameTemplate;
+import simulator.properties.SimulatorProperties;
+
+/**
+ * This class holds what clients put into their messages:
+ * size of the message text and whom it is sent to. Same as
+ * the send schedule it can be changed while the run is going
+ * and every client picks it up on its next message.
+ * <p>
+ * A size of zero keeps the default text which names the
+ * destination of the message. Every other size is a fixed
+ * payload which is encoded once into a frame template.
+ * <p>
+ * Sizes can also be drawn per message from a {@link PayloadSizes}
+ * distribution. One template of the largest size of the
+ * distribution is encoded and every message is cut from it.
+ */
+
+public class MessageContent {
+    public static final int DEFAULT_SIZE = 0;
+    private static final boolean LATENCY_MODE = SimulatorProperties.isLatencyMode();
+
+    @Getter
+    @Setter
+    private volatile DestinationTarget destinationTarget;
+
+    //null for the default text
+    @Getter
+    private volatile PayloadSizes payloadSizes;
+
+    //text of the largest size, built once per size change
+    private volatile String fixedSizeMessage;
+
+    //frame of fixedSizeMessage, null for the default text
+    @Getter
+    private volatile FrameTemplate frameTemplate;
+
+    public MessageContent(DestinationTarget destinationTarget, int messageSize) {
+        this.destinationTarget = destinationTarget;
+        setMessageSize(messageSize);
+    }
+
+    public MessageContent(DestinationTarget destinationTarget, PayloadSizes payloadSizes) {
+        this.destinationTarget = destinationTarget;
+        setPayloadSizes(payloadSizes);
+    }
+
+    /**
+     * This method creates content from -Dsimulator.* settings
+     *
+     * @return content
+     */
+
+    public static MessageContent fromProperties() {
+        return SimulatorProperties.getPayloadSizes()
+                .map(payloadSizes -> new MessageContent(SimulatorProperties.getDestinationTarget(), payloadSizes))
+                .orElseGet(() -> new MessageContent(SimulatorProperties.getDestinationTarget(),
+                        SimulatorProperties.getMessageSize()));
+    }
+
+    public void setMessageSize(int messageSize) {
+        if (messageSize < 0) {
+            throw new IllegalArgumentException("Message size can not be negative " + messageSize);
+        }
+        if (messageSize == DEFAULT_SIZE) {
+            this.frameTemplate = null;
+            this.payloadSizes = null;
+            return;
+        }
+        setPayloadSizes(PayloadSizes.fixed(messageSize));
+    }
+
+    /**
+     * This method lets every message draw its size from the
+     * distribution. Template is replaced before the distribution,
+     * sizes are cut to the template a sender has picked up, so a
+     * sender which sees one of them changed early stays correct
+     *
+     * @param payloadSizes distribution of message sizes
+     */
+
+    public void setPayloadSizes(PayloadSizes payloadSizes) {
+        String message = StringUtils.repeat('x', payloadSizes.getMaxSize());
+        this.frameTemplate = new FrameTemplate(message, LATENCY_MODE);
+        this.fixedSizeMessage = message;
+        this.payloadSizes = payloadSizes;
+    }
+
+    /**
+     * This method draws bytes of text of the next message sent
+     * from the template
+     *
+     * @param frameTemplate template the sender has picked up
+     * @return bytes of text, at most the text of the template
+     */
+
+    public int nextTextLength(FrameTemplate frameTemplate) {
+        PayloadSizes sizes = payloadSizes;
+        int textLength = sizes == null ? frameTemplate.getMaxTextLength() : sizes.nextSize();
+        return Math.min(textLength, frameTemplate.getMaxTextLength());
+    }
+
+    /**
+     * This method returns text of the next message
+     *
+     * @param destinationId id message is sent to
+     * @return message text
+     */
+
+    public String messageFor(int destinationId) {
+        PayloadSizes sizes = payloadSizes;
+        if (sizes == null) {
+            return " This is message from source with Id " + destinationId;
+        }
+        String message = fixedSizeMessage;
+        return message.substring(0, Math.min(sizes.nextSize(), message.length()));
+    }
+}
@@ -0,0 +1,314 @@
+package simulator.schedule;
+
+import simulator.properties.Constants;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class is the distribution bytes of message text are drawn
+ * from. Distributions are given as text, which is the same for
+ * the -Dsimulator.message.sizes property and for scenario files:
+ * <pre>
+ * fixed:512                 every message has 512 bytes
+ * uniform:64-4096           equally likely between 64 and 4096 bytes
+ * lognormal:1024,1.5        median 1024 bytes, sigma 1.5, at most 1 MB
+ * lognormal:1024,1.5,8388608  same with at most 8 MB
+ * histogram:sizes.txt       empirical histogram read from a file
+ * </pre>
+ * Every line of a histogram file is a size or a range of sizes
+ * followed by its weight, sizes of a range are equally likely.
+ * Empty lines and lines starting with # are ignored:
+ * <pre>
+ * 40          70
+ * 41-512      25
+ * 4096-65536  4.5
+ * 4194304     0.5
+ * </pre>
+ * Sizes are drawn by the sending thread itself, so a distribution
+ * is immutable and only uses {@link ThreadLocalRandom}.
+ */
+
+public abstract class PayloadSizes {
+    //bytes a frame may still carry after header and latency prefix
+    public static final int MAX_SIZE = Constants.MAX_FRAME_LENGTH - Constants.START_OF_MESSAGE_INCLUSIVE
+            - Constants.LATENCY_PREFIX_LENGTH;
+    private static final int DEFAULT_LOG_NORMAL_MAX = 1024 * 1024;
+
+    private final String description;
+
+    private PayloadSizes(String description) {
+        this.description = description;
+    }
+
+    /**
+     * This method draws the size of the next message
+     *
+     * @return bytes of message text, never more than {@link #getMaxSize()}
+     */
+
+    public abstract int nextSize();
+
+    /**
+     * @return largest size this distribution can draw
+     */
+
+    public abstract int getMaxSize();
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    public static PayloadSizes fixed(int size) {
+        checkSize(size);
+        return new Fixed(size);
+    }
+
+    public static PayloadSizes uniform(int minSize, int maxSize) {
+        checkSize(minSize);
+        checkSize(maxSize);
+        if (minSize > maxSize) {
+            throw new IllegalArgumentException("Uniform sizes need min <= max but were " + minSize + "-" + maxSize);
+        }
+        return new Uniform(minSize, maxSize);
+    }
+
+    /**
+     * @param medianSize size half of the messages are smaller than
+     * @param sigma      standard deviation of the logarithm of the size
+     * @param maxSize    larger draws are cut to this size
+     * @return log-normal distribution
+     */
+
+    public static PayloadSizes logNormal(int medianSize, double sigma, int maxSize) {
+        checkSize(medianSize);
+        checkSize(maxSize);
+        if (medianSize == 0 || !(sigma >= 0)) {
+            throw new IllegalArgumentException("Log-normal sizes need a positive median and sigma >= 0");
+        }
+        return new LogNormal(medianSize, sigma, maxSize);
+    }
+
+    /**
+     * This method reads an empirical histogram
+     *
+     * @param histogramFile file in the format described above
+     * @return distribution of the histogram
+     * @throws IOException              if file can not be read
+     * @throws IllegalArgumentException if file is not a valid histogram
+     */
+
+    public static PayloadSizes histogram(Path histogramFile) throws IOException {
+        List<String> lines = Files.readAllLines(histogramFile, StandardCharsets.UTF_8);
+        int[] lowSizes = new int[lines.size()];
+        int[] highSizes = new int[lines.size()];
+        double[] cumulativeWeights = new double[lines.size()];
+        int buckets = 0;
+        double totalWeight = 0;
+
+        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
+            String line = lines.get(lineNumber - 1).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            try {
+                if (tokens.length != 2) {
+                    throw new IllegalArgumentException("Expected size and weight");
+                }
+                int[] range = parseRange(tokens[0]);
+                double weight = Double.parseDouble(tokens[1]);
+                if (!(weight >= 0) || Double.isInfinite(weight)) {
+                    throw new IllegalArgumentException("Invalid weight " + tokens[1]);
+                }
+                if (weight == 0) {
+                    continue;
+                }
+                totalWeight += weight;
+                lowSizes[buckets] = range[0];
+                highSizes[buckets] = range[1];
+                cumulativeWeights[buckets] = totalWeight;
+                buckets++;
+            } catch (IllegalArgumentException exception) {
+                throw new IllegalArgumentException(histogramFile + " line " + lineNumber + ": "
+                        + exception.getMessage(), exception);
+            }
+        }
+
+        if (!(totalWeight > 0)) {
+            throw new IllegalArgumentException("Histogram " + histogramFile + " has no weight");
+        }
+        return new Histogram("histogram:" + histogramFile, Arrays.copyOf(lowSizes, buckets),
+                Arrays.copyOf(highSizes, buckets), Arrays.copyOf(cumulativeWeights, buckets));
+    }
+
+    /**
+     * This method reads a distribution from its text
+     *
+     * @param text distribution as described above
+     * @return distribution
+     * @throws IllegalArgumentException if text is not a valid distribution
+     *                                  or histogram file can not be read
+     */
+
+    public static PayloadSizes parse(String text) {
+        int separator = text.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected kind:parameters but found " + text);
+        }
+        String kind = text.substring(0, separator).trim().toLowerCase();
+        String parameters = text.substring(separator + 1).trim();
+
+        try {
+            switch (kind) {
+                case "fixed":
+                    return fixed(Integer.parseInt(parameters));
+                case "uniform":
+                    int[] range = parseRange(parameters);
+                    return uniform(range[0], range[1]);
+                case "lognormal":
+                    String[] values = parameters.split(",");
+                    if (values.length != 2 && values.length != 3) {
+                        throw new IllegalArgumentException("Expected lognormal:median,sigma[,max] but found " + text);
+                    }
+                    int maxSize = values.length == 3 ? Integer.parseInt(values[2].trim()) : DEFAULT_LOG_NORMAL_MAX;
+                    return logNormal(Integer.parseInt(values[0].trim()), Double.parseDouble(values[1].trim()),
+                            maxSize);
+                case "histogram":
+                    return histogram(Paths.get(parameters));
+                default:
+                    throw new IllegalArgumentException("Unknown size distribution " + kind);
+            }
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("Could not read histogram " + parameters, exception);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid size distribution " + text, exception);
+        }
+    }
+
+    private static int[] parseRange(String text) {
+        int separator = text.indexOf('-');
+        int lowSize = Integer.parseInt(separator < 0 ? text : text.substring(0, separator));
+        int highSize = separator < 0 ? lowSize : Integer.parseInt(text.substring(separator + 1));
+        checkSize(lowSize);
+        checkSize(highSize);
+        if (lowSize > highSize) {
+            throw new IllegalArgumentException("Invalid size range " + text);
+        }
+        return new int[]{lowSize, highSize};
+    }
+
+    private static void checkSize(int size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Message size needs to be between 0 and " + MAX_SIZE + " but was " + size);
+        }
+    }
+
+    private static final class Fixed extends PayloadSizes {
+        private final int size;
+
+        private Fixed(int size) {
+            super("fixed:" + size);
+            this.size = size;
+        }
+
+        @Override
+        public int nextSize() {
+            return size;
+        }
+
+        @Override
+        public int getMaxSize() {
+            return size;
+        }
+    }
+
+    private static final class Uniform extends PayloadSizes {
+        private final int minSize;
+        private final int maxSize;
+
+        private Uniform(int minSize, int maxSize) {
+            super("uniform:" + minSize + "-" + maxSize);
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int nextSize() {
+            return ThreadLocalRandom.current().nextInt(minSize, maxSize + 1);
+        }
+
+        @Override
+        public int getMaxSize() {
+            return maxSize;
+        }
+    }
+
+    private static final class LogNormal extends PayloadSizes {
+        private final double mu;
+        private final double sigma;
+        private final int maxSize;
+
+        private LogNormal(int medianSize, double sigma, int maxSize) {
+            super("lognormal:" + medianSize + "," + sigma + "," + maxSize);
+            this.mu = Math.log(medianSize);
+            this.sigma = sigma;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int nextSize() {
+            double size = Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+            return (int) Math.min(size, maxSize);
+        }
+
+        @Override
+        public int getMaxSize() {
+            return maxSize;
+        }
+    }
+
+    /**
+     * Bucket is found with a binary search over the cumulative
+     * weights, size inside the bucket is drawn uniformly
+     */
+
+    private static final class Histogram extends PayloadSizes {
+        private final int[] lowSizes;
+        private final int[] highSizes;
+        private final double[] cumulativeWeights;
+        private final int maxSize;
+
+        private Histogram(String description, int[] lowSizes, int[] highSizes, double[] cumulativeWeights) {
+            super(description);
+            this.lowSizes = lowSizes;
+            this.highSizes = highSizes;
+            this.cumulativeWeights = cumulativeWeights;
+            this.maxSize = Arrays.stream(highSizes).max().orElse(0);
+        }
+
+        @Override
+        public int nextSize() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double weight = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+            int bucket = Arrays.binarySearch(cumulativeWeights, weight);
+            bucket = bucket < 0 ? -bucket - 1 : bucket + 1;
+            bucket = Math.min(bucket, cumulativeWeights.length - 1);
+            return lowSizes[bucket] == highSizes[bucket]
+                    ? lowSizes[bucket] : random.nextInt(lowSizes[bucket], highSizes[bucket] + 1);
+        }
+
+        @Override
+        public int getMaxSize() {
+            return maxSize;
+        }
+    }
+}
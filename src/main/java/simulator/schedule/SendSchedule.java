@@ -0,0 +1,103 @@
+package simulator.schedule;
+
+import lombok.Getter;
+import lombok.Setter;
+import simulator.properties.SimulatorProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the target send rate of the whole run.
+ * Rate can either be given per client or as a global rate
+ * which is then divided among all clients which are
+ * currently sending. Rate can be changed while the run is
+ * going and every client picks it up on its next send.
+ * <p>
+ * A rate of zero means clients are not paced and send as
+ * fast as their socket accepts messages.
+ */
+
+public class SendSchedule {
+
+    @Getter
+    @Setter
+    private volatile ArrivalProcess arrivalProcess;
+
+    @Getter
+    @Setter
+    private volatile double messagesPerSecondPerClient;
+
+    @Getter
+    @Setter
+    private volatile double globalMessagesPerSecond;
+
+    private final AtomicInteger activeSenders = new AtomicInteger();
+
+    public SendSchedule(ArrivalProcess arrivalProcess, double messagesPerSecondPerClient, double globalMessagesPerSecond) {
+        this.arrivalProcess = arrivalProcess;
+        this.messagesPerSecondPerClient = messagesPerSecondPerClient;
+        this.globalMessagesPerSecond = globalMessagesPerSecond;
+    }
+
+    /**
+     * This method creates schedule from -Dsimulator.* settings
+     *
+     * @return schedule
+     */
+
+    public static SendSchedule fromProperties() {
+        return new SendSchedule(SimulatorProperties.getArrivalProcess(),
+                SimulatorProperties.getMessagesPerSecondPerClient(), SimulatorProperties.getGlobalMessagesPerSecond());
+    }
+
+    public void senderStarted() {
+        activeSenders.incrementAndGet();
+    }
+
+    public void senderStopped() {
+        activeSenders.decrementAndGet();
+    }
+
+    /**
+     * This method tells if sends are paced at all
+     *
+     * @return true if a rate has been configured
+     */
+
+    public boolean isRateControlled() {
+        return globalMessagesPerSecond > 0 || messagesPerSecondPerClient > 0;
+    }
+
+    /**
+     * This method returns rate one client has to send with.
+     * Global rate wins over per client rate
+     *
+     * @return messages per second of a single client
+     */
+
+    public double currentRatePerClient() {
+        double globalRate = globalMessagesPerSecond;
+        if (globalRate > 0) {
+            return globalRate / Math.max(1, activeSenders.get());
+        }
+        return messagesPerSecondPerClient;
+    }
+
+    /**
+     * This method calculates next intended send time out of
+     * previous intended send time. Next send is never based on
+     * the time the previous send actually happened so that a slow
+     * server does not silently lower the offered load
+     *
+     * @param previousIntendedSendNanos intended time of previous send
+     * @return intended time of next send
+     */
+
+    public long nextIntendedSendNanos(long previousIntendedSendNanos) {
+        double ratePerClient = currentRatePerClient();
+        if (ratePerClient <= 0) {
+            return previousIntendedSendNanos;
+        }
+        return previousIntendedSendNanos + arrivalProcess.nextIntervalNanos(ratePerClient);
+    }
+}
@@ -0,0 +1,177 @@
+package simulator.schedule;
+
+import java.util.Arrays;
+
+/**
+ * This class is the timer of one event loop. It keeps every
+ * paced client of the loop ordered by its next intended send
+ * time so the loop only has to look at clients which are due.
+ * <p>
+ * Clients are kept in a binary heap and every client remembers its
+ * index in the heap, so a client which is closed is taken out in
+ * logarithmic time instead of searching the whole heap for it.
+ * <p>
+ * It is not thread safe and must only be used by its loop.
+ *
+ * @param <T> type of scheduled client
+ */
+
+public class SendScheduler<T extends SendScheduler.ScheduledSender> {
+    public static final long NOTHING_SCHEDULED = Long.MAX_VALUE;
+    public static final int NOT_SCHEDULED = -1;
+    private static final int MAX_SENDS_PER_RUN = 4096;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private ScheduledSender[] heap = new ScheduledSender[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Every client which wants to be paced implements this
+     */
+
+    public interface ScheduledSender {
+
+        long getIntendedSendNanos();
+
+        /**
+         * @return index in the heap of the scheduler, {@link #NOT_SCHEDULED}
+         * while client is not scheduled
+         */
+
+        int getSchedulerIndex();
+
+        void setSchedulerIndex(int schedulerIndex);
+
+        /**
+         * This method is called once intended send time of client
+         * has passed. Client sends and reschedules itself if it
+         * wants to send again
+         */
+
+        void onSendDue(long nowNanos);
+    }
+
+    /**
+     * This method adds client to the timer. Client must not change
+     * its intended send time while it is scheduled, a client which
+     * is scheduled already is left where it is
+     *
+     * @param sender client whose intended send time is set
+     */
+
+    public void schedule(T sender) {
+        if (sender.getSchedulerIndex() != NOT_SCHEDULED) {
+            return;
+        }
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        siftUp(size++, sender);
+    }
+
+    /**
+     * This method takes client out of the timer, nothing
+     * happens if it is not scheduled
+     *
+     * @param sender client to take out
+     */
+
+    public void cancel(T sender) {
+        int index = sender.getSchedulerIndex();
+        if (index != NOT_SCHEDULED) {
+            removeAt(index);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param nowNanos current time
+     * @return nanos until next intended send, 0 if a send is already
+     * due or {@link #NOTHING_SCHEDULED}
+     */
+
+    public long nanosUntilNextSend(long nowNanos) {
+        if (size == 0) {
+            return NOTHING_SCHEDULED;
+        }
+        return Math.max(0, heap[0].getIntendedSendNanos() - nowNanos);
+    }
+
+    /**
+     * This method lets every due client send. Clients which fell
+     * behind stay due and are served again so they catch up with
+     * their schedule. Amount of sends per call is bounded so
+     * reads of the loop are not starved
+     *
+     * @param nowNanos current time
+     */
+
+    @SuppressWarnings("unchecked")
+    public void runDueSends(long nowNanos) {
+        int sends = 0;
+        while (sends++ < MAX_SENDS_PER_RUN && size > 0 && heap[0].getIntendedSendNanos() <= nowNanos) {
+            T next = (T) heap[0];
+            removeAt(0);
+            next.onSendDue(nowNanos);
+        }
+    }
+
+    /**
+     * Last client of the heap takes the place of the removed
+     * one and moves down or up to where it belongs
+     */
+
+    private void removeAt(int index) {
+        ScheduledSender removed = heap[index];
+        removed.setSchedulerIndex(NOT_SCHEDULED);
+        ScheduledSender last = heap[--size];
+        heap[size] = null;
+        if (index == size) {
+            return;
+        }
+
+        siftDown(index, last);
+        if (heap[index] == last) {
+            siftUp(index, last);
+        }
+    }
+
+    private void siftUp(int index, ScheduledSender sender) {
+        long intendedSendNanos = sender.getIntendedSendNanos();
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].getIntendedSendNanos() <= intendedSendNanos) {
+                break;
+            }
+            place(index, heap[parent]);
+            index = parent;
+        }
+        place(index, sender);
+    }
+
+    private void siftDown(int index, ScheduledSender sender) {
+        long intendedSendNanos = sender.getIntendedSendNanos();
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].getIntendedSendNanos() < heap[child].getIntendedSendNanos()) {
+                child = right;
+            }
+            if (intendedSendNanos <= heap[child].getIntendedSendNanos()) {
+                break;
+            }
+            place(index, heap[child]);
+            index = child;
+        }
+        place(index, sender);
+    }
+
+    private void place(int index, ScheduledSender sender) {
+        heap[index] = sender;
+        sender.setSchedulerIndex(index);
+    }
+}
@@ -0,0 +1,48 @@
+package simulator.schedule;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This enum represents how long churning users stay logged in
+ * for a given mean session length.
+ * <p>
+ * FIXED logs every user out exactly after the mean length, so
+ * sessions end on a schedule.
+ * EXPONENTIAL draws exponentially distributed lengths with the
+ * given mean, most sessions are short and a few last long.
+ */
+
+public enum SessionLength {
+    FIXED {
+        @Override
+        public long nextLengthNanos(long meanNanos) {
+            return meanNanos;
+        }
+    },
+    EXPONENTIAL {
+        @Override
+        public long nextLengthNanos(long meanNanos) {
+            double uniform = ThreadLocalRandom.current().nextDouble();
+            return (long) (-Math.log(1.0 - uniform) * meanNanos);
+        }
+    };
+
+    /**
+     * This method returns time the next session stays logged in
+     *
+     * @param meanNanos mean session length
+     * @return session length in nanoseconds
+     */
+
+    public abstract long nextLengthNanos(long meanNanos);
+
+    public static Optional<SessionLength> fromText(String text) {
+        for (SessionLength sessionLength : values()) {
+            if (sessionLength.name().equalsIgnoreCase(text)) {
+                return Optional.of(sessionLength);
+            }
+        }
+        return Optional.empty();
+    }
+}
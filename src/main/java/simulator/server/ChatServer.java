@@ -0,0 +1,135 @@
+package simulator.server;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import simulator.properties.SimulatorProperties;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a small stand-in for the real chat server. It
+ * speaks the same LI/LO/ID/DT protocol so the simulator can be
+ * run and benchmarked without any external process.
+ * <p>
+ * One acceptor thread accepts connections and hands them to a
+ * fixed set of selector loops in round robin fashion. Every loop
+ * owns its sessions, DATA frames are routed between loops through
+ * {@link ServerEventLoop}
+ */
+
+@Slf4j
+public class ChatServer {
+    @Getter
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
+    @Getter
+    private final ServerEventLoop[] eventLoops;
+    @Getter
+    private final LongAdder routedFrames = new LongAdder();
+    @Getter
+    private final LongAdder droppedFrames = new LongAdder();
+    private final ServerSocketChannel serverSocketChannel;
+    private final Thread acceptor;
+    private int nextEventLoop;
+
+    public ChatServer(int port, int numberOfEventLoops, int backlog) throws IOException {
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverSocketChannel.bind(new InetSocketAddress(port), backlog);
+
+        eventLoops = new ServerEventLoop[numberOfEventLoops];
+        for (int i = 0; i < numberOfEventLoops; i++) {
+            eventLoops[i] = new ServerEventLoop(this, i);
+        }
+        acceptor = new Thread(this::acceptConnections, "server-acceptor");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SimulatorProperties.getServerPort();
+        ChatServer chatServer = new ChatServer(port, SimulatorProperties.getServerWorkers(),
+                SimulatorProperties.getServerBacklog());
+        Runtime.getRuntime().addShutdownHook(new Thread(chatServer::shutdown));
+        chatServer.start();
+        chatServer.acceptor.join();
+    }
+
+    /**
+     * This method starts selector loops and the acceptor
+     */
+
+    public void start() {
+        for (ServerEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        acceptor.start();
+        log.info("Chat server listening on port {} with {} loops", getPort(), eventLoops.length);
+    }
+
+    /**
+     * @return port server is bound to, useful when started on port 0
+     */
+
+    public int getPort() {
+        return serverSocketChannel.socket().getLocalPort();
+    }
+
+    /**
+     * This method stops accepting connections and
+     * closes all sessions
+     */
+
+    public void shutdown() {
+        try {
+            serverSocketChannel.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing server socket", e);
+        }
+
+        for (ServerEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+        log.info("Chat server stopped, routed {} frames and dropped {} frames",
+                routedFrames.sum(), droppedFrames.sum());
+    }
+
+    /**
+     * This method accepts connections in blocking mode and
+     * hands every one of them to the next selector loop
+     */
+
+    private void acceptConnections() {
+        while (serverSocketChannel.isOpen()) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverSocketChannel.accept();
+            } catch (ClosedChannelException exception) {
+                return;
+            } catch (IOException exception) {
+                log.error("Could not accept connection ", exception);
+                continue;
+            }
+
+            try {
+                socketChannel.configureBlocking(false);
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException exception) {
+                log.error("Could not configure accepted connection ", exception);
+                try {
+                    socketChannel.close();
+                } catch (IOException e) {
+                    log.error("Error occurred while closing socket", e);
+                }
+                continue;
+            }
+
+            ServerSession session = new ServerSession(sessionRegistry.nextSessionId(), socketChannel);
+            eventLoops[nextEventLoop].register(session);
+            nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package simulator.server;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import simulator.core.FrameDecoder;
+import simulator.properties.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is a single selector loop of the chat server. It
+ * owns the sessions registered with it and is the only thread
+ * which reads from or writes to them.
+ * <p>
+ * DATA frames whose destination belongs to another loop are not
+ * handed over one by one. They are copied back to back into a
+ * batch per destination loop and every batch is published once per
+ * round, so the other loop is woken up at most once per round no
+ * matter how many frames are routed to it. Drained batches are
+ * given back to the loop which filled them.
+ */
+
+@Slf4j
+public class ServerEventLoop extends Thread {
+    @Getter(AccessLevel.PACKAGE)
+    private final Selector selector;
+    @Getter(AccessLevel.PACKAGE)
+    private final ChatServer server;
+    private final int loopIndex;
+    private final Queue<ServerSession> pendingSessions = new ConcurrentLinkedQueue<>();
+    private final Queue<FrameBatch> inbox = new ConcurrentLinkedQueue<>();
+    private final Queue<FrameBatch> freeBatches = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ArrayDeque<ServerSession> sessionsToFlush = new ArrayDeque<>();
+    private FrameBatch[] outgoingBatches;
+    private volatile boolean running = true;
+
+    public ServerEventLoop(ChatServer server, int loopIndex) throws IOException {
+        super("server-loop-" + loopIndex);
+        this.server = server;
+        this.loopIndex = loopIndex;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * This method hands accepted session over to this loop.
+     * It can be called from any thread
+     *
+     * @param session which needs to be registered
+     */
+
+    void register(ServerSession session) {
+        pendingSessions.add(session);
+        wakeup();
+    }
+
+    /**
+     * This method remembers session which queued frames in
+     * this round so it is flushed once the round is over.
+     * It must only be called from this loop
+     *
+     * @param session which needs to be flushed
+     */
+
+    void requestFlush(ServerSession session) {
+        sessionsToFlush.add(session);
+    }
+
+    /**
+     * This method routes a DATA frame to the session of its
+     * destination id. It must only be called from this loop
+     *
+     * @param destinationId id of receiving session
+     * @param source        buffer holding the frame
+     * @param frameOffset   absolute index of first byte of the frame
+     * @param frameLength   length of the frame including header
+     */
+
+    void route(int destinationId, ByteBuffer source, int frameOffset, int frameLength) {
+        ServerSession destination = server.getSessionRegistry().find(destinationId);
+        if (destination == null || destination.getEventLoop() == null) {
+            server.getDroppedFrames().increment();
+            return;
+        }
+
+        ServerEventLoop destinationLoop = destination.getEventLoop();
+        if (destinationLoop == this) {
+            destination.deliver(source, frameOffset, frameLength);
+            return;
+        }
+
+        FrameBatch batch = outgoingBatches[destinationLoop.loopIndex];
+        if (batch != null && batch.buffer.remaining() < frameLength) {
+            destinationLoop.publish(batch);
+            batch = null;
+            outgoingBatches[destinationLoop.loopIndex] = null;
+        }
+        if (frameLength > ServerSession.READ_BUFFER_SIZE) {
+            //large frame travels alone in a batch of its own length
+            FrameBatch largeBatch = new FrameBatch(this, frameLength);
+            FrameDecoder.copyFrame(source, frameOffset, frameLength, largeBatch.buffer);
+            destinationLoop.publish(largeBatch);
+            return;
+        }
+        if (batch == null) {
+            batch = takeFreeBatch();
+            outgoingBatches[destinationLoop.loopIndex] = batch;
+        }
+        FrameDecoder.copyFrame(source, frameOffset, frameLength, batch.buffer);
+    }
+
+    /**
+     * This method stops the loop. All sessions of
+     * this loop are closed by loop thread itself
+     */
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        outgoingBatches = new FrameBatch[server.getEventLoops().length];
+        log.info("Server loop {} started", getName());
+
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                registerPendingSessions();
+                drainInbox();
+                processSelectedKeys();
+                publishOutgoingBatches();
+                flushRequestedSessions();
+            }
+        } catch (Exception exception) {
+            log.error("Server loop {} stopped because of error ", getName(), exception);
+        } finally {
+            finallyBlockExecutionForGraceFulShutdown();
+            log.info("Server loop {} ended", getName());
+        }
+    }
+
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void publish(FrameBatch batch) {
+        batch.buffer.flip();
+        inbox.add(batch);
+        wakeup();
+    }
+
+    private FrameBatch takeFreeBatch() {
+        FrameBatch batch = freeBatches.poll();
+        return batch != null ? batch : new FrameBatch(this, ServerSession.READ_BUFFER_SIZE);
+    }
+
+    private void registerPendingSessions() {
+        ServerSession session;
+        while ((session = pendingSessions.poll()) != null) {
+            try {
+                session.register(this);
+            } catch (IOException | CancelledKeyException exception) {
+                log.error("Could not register session ", exception);
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * This method delivers frames other loops have routed
+     * to sessions of this loop. Session can have gone
+     * meanwhile, in which case frame is dropped
+     */
+
+    private void drainInbox() {
+        FrameBatch batch;
+        while ((batch = inbox.poll()) != null) {
+            ByteBuffer buffer = batch.buffer;
+            while (buffer.hasRemaining()) {
+                int frameOffset = buffer.position();
+                int frameLength = Constants.START_OF_MESSAGE_INCLUSIVE
+                        + buffer.getInt(frameOffset + Constants.START_OF_MESSAGE_LENGTH_INCLUSIVE);
+                ServerSession destination = server.getSessionRegistry()
+                        .find(buffer.getInt(frameOffset + Constants.START_OF_DEST_ID_INCLUSIVE));
+
+                if (destination != null && destination.getEventLoop() == this) {
+                    destination.deliver(buffer, frameOffset, frameLength);
+                } else {
+                    server.getDroppedFrames().increment();
+                }
+                buffer.position(frameOffset + frameLength);
+            }
+
+            if (buffer.capacity() == ServerSession.READ_BUFFER_SIZE) {
+                buffer.clear();
+                batch.owner.freeBatches.add(batch);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey selectionKey = iterator.next();
+            iterator.remove();
+
+            ServerSession session = (ServerSession) selectionKey.attachment();
+            try {
+                if (selectionKey.isValid() && selectionKey.isReadable()) {
+                    session.onReadable();
+                }
+                if (selectionKey.isValid() && selectionKey.isWritable()) {
+                    session.onWritable();
+                }
+            } catch (IOException | CancelledKeyException exception) {
+                log.debug("Closing session because of error ", exception);
+                session.close();
+            } catch (RuntimeException exception) {
+                //a bug in handling one session must not stop the loop and all its other sessions
+                log.error("Closing session because of unexpected error ", exception);
+                session.close();
+            }
+        }
+    }
+
+    private void publishOutgoingBatches() {
+        for (int i = 0; i < outgoingBatches.length; i++) {
+            FrameBatch batch = outgoingBatches[i];
+            if (batch != null && batch.buffer.position() > 0) {
+                server.getEventLoops()[i].publish(batch);
+                outgoingBatches[i] = null;
+            }
+        }
+    }
+
+    private void flushRequestedSessions() {
+        ServerSession session;
+        while ((session = sessionsToFlush.poll()) != null) {
+            session.onFlushRequested();
+        }
+    }
+
+    /**
+     * Graceful shutdown of all sessions and selector
+     */
+
+    private void finallyBlockExecutionForGraceFulShutdown() {
+        for (SelectionKey selectionKey : selector.keys()) {
+            ((ServerSession) selectionKey.attachment()).close();
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing selector");
+        }
+    }
+
+    /**
+     * Frames routed from one loop to another. Pooled batches
+     * have the size of the read buffer of a session, a larger
+     * frame gets a batch of its own which is not pooled
+     */
+
+    private static final class FrameBatch {
+        private final ServerEventLoop owner;
+        private final ByteBuffer buffer;
+
+        private FrameBatch(ServerEventLoop owner, int capacity) {
+            this.owner = owner;
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package simulator.server;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import simulator.core.FrameDecoder;
+import simulator.core.PacketEncoder;
+import simulator.domain.MessageType;
+import simulator.domain.PacketView;
+import simulator.engine.OutboundQueue;
+import simulator.properties.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class is one client connected to the chat server. Server
+ * side of the login flow is
+ * <p>
+ * accept -> GENERATED_ID with the new id as destination
+ * LOGIN  -> LOGIN with magic number and the id as destination
+ * DATA   -> routed to session of its destination id
+ * LOGOUT -> session is closed once queued frames are written
+ * <p>
+ * All methods of this class are called from the owning
+ * server loop thread only
+ */
+
+@Slf4j
+public class ServerSession {
+    static final int READ_BUFFER_SIZE = 256 * 256;
+    private static final long MAX_QUEUED_BYTES = 8 * 1024 * 1024;
+
+    @Getter
+    private final int sessionId;
+    private final SocketChannel socketChannel;
+    private final FrameDecoder frameDecoder = new FrameDecoder(READ_BUFFER_SIZE);
+    private final OutboundQueue outboundQueue = new OutboundQueue();
+    private final PacketView packetView = new PacketView();
+
+    @Getter
+    private ServerEventLoop eventLoop;
+    private SelectionKey selectionKey;
+    private int magicNumber;
+    private boolean loggedIn;
+    private boolean loggingOut;
+    private boolean flushRequested;
+
+    public ServerSession(int sessionId, SocketChannel socketChannel) {
+        this.sessionId = sessionId;
+        this.socketChannel = socketChannel;
+    }
+
+    /**
+     * This method registers channel with the selector of the loop
+     * and hands out the id of the session to the client
+     *
+     * @param eventLoop which owns this session from now on
+     * @throws IOException dealt by server loop
+     */
+
+    void register(ServerEventLoop eventLoop) throws IOException {
+        this.eventLoop = eventLoop;
+        selectionKey = socketChannel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+        writeFrame(Constants.NO_MAGIC_NUMBER, MessageType.GENERATED_ID, sessionId);
+        flush();
+    }
+
+    /**
+     * This method reads whatever client has sent and
+     * handles every complete frame of it
+     *
+     * @throws IOException in case read failed
+     */
+
+    void onReadable() throws IOException {
+        if (frameDecoder.readFrom(socketChannel) == -1) {
+            close();
+            return;
+        }
+
+        ByteBuffer buffer = frameDecoder.beginDecoding();
+        try {
+            int frameLength;
+            while ((frameLength = frameDecoder.nextFrameLength()) != FrameDecoder.NO_COMPLETE_FRAME) {
+                int frameOffset = buffer.position();
+                handleFrame(packetView.wrap(buffer, frameOffset));
+                buffer.position(frameOffset + frameLength);
+            }
+        } finally {
+            frameDecoder.endDecoding();
+        }
+
+        if (loggingOut && outboundQueue.isEmpty()) {
+            close();
+        }
+    }
+
+    void onWritable() throws IOException {
+        flush();
+        if (loggingOut && outboundQueue.isEmpty()) {
+            close();
+        }
+    }
+
+    void onFlushRequested() {
+        flushRequested = false;
+        if (!socketChannel.isOpen()) {
+            return;
+        }
+
+        try {
+            flush();
+        } catch (IOException exception) {
+            log.debug("Closing session {} because of error ", sessionId, exception);
+            close();
+            return;
+        }
+
+        if (loggingOut && outboundQueue.isEmpty()) {
+            close();
+        }
+    }
+
+    private void handleFrame(PacketView packet) {
+        MessageType messageType = packet.getMessageType();
+
+        if (messageType == MessageType.DATA) {
+            if (loggedIn && !loggingOut) {
+                //source id is always the id of the sending session
+                packet.getBuffer().putInt(packet.getFrameOffset() + Constants.START_OF_SOURCE_ID_INCLUSIVE, sessionId);
+                eventLoop.route(packet.getMessageDestinationId(), packet.getBuffer(), packet.getFrameOffset(),
+                        packet.getFrameLength());
+            } else {
+                eventLoop.getServer().getDroppedFrames().increment();
+            }
+
+        } else if (messageType == MessageType.LOGIN) {
+            if (!loggedIn) {
+                magicNumber = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+                loggedIn = true;
+                eventLoop.getServer().getSessionRegistry().register(this);
+            }
+            writeFrame(magicNumber, MessageType.LOGIN, sessionId);
+            requestFlush();
+
+        } else if (messageType == MessageType.LOGOUT) {
+            log.debug("Session {} logged out", sessionId);
+            loggingOut = true;
+            eventLoop.getServer().getSessionRegistry().remove(this);
+
+        } else {
+            log.debug("Session {} sent unknown message type", sessionId);
+            eventLoop.getServer().getDroppedFrames().increment();
+        }
+    }
+
+    /**
+     * This method appends a frame routed to this session. A client
+     * which does not read its messages only gets frames until its
+     * queue has reached the limit, later frames are dropped
+     *
+     * @param source      buffer holding the frame
+     * @param frameOffset absolute index of first byte of the frame
+     * @param frameLength length of the frame including header
+     */
+
+    void deliver(ByteBuffer source, int frameOffset, int frameLength) {
+        if (!socketChannel.isOpen() || outboundQueue.getQueuedBytes() > MAX_QUEUED_BYTES) {
+            eventLoop.getServer().getDroppedFrames().increment();
+            return;
+        }
+
+        ByteBuffer frame = outboundQueue.beginFrame(frameLength);
+        FrameDecoder.copyFrame(source, frameOffset, frameLength, frame);
+        outboundQueue.endFrame();
+        eventLoop.getServer().getRoutedFrames().increment();
+        requestFlush();
+    }
+
+    private void writeFrame(int magicBytes, MessageType messageType, int destinationId) {
+        ByteBuffer frame = outboundQueue.beginFrame(Constants.START_OF_MESSAGE_INCLUSIVE);
+        PacketEncoder.writeHeader(magicBytes, messageType, Constants.SERVER_SOURCE_ID, destinationId,
+                Constants.NO_MASSAGE_LENGTH_DEFINED, frame);
+        outboundQueue.endFrame();
+    }
+
+    private void requestFlush() {
+        if (!flushRequested) {
+            flushRequested = true;
+            eventLoop.requestFlush(this);
+        }
+    }
+
+    /**
+     * OP_WRITE is only registered while queue has bytes
+     * the socket did not take
+     */
+
+    private void flush() throws IOException {
+        boolean flushed = outboundQueue.flush(socketChannel);
+        int interestOps = flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (selectionKey.isValid() && selectionKey.interestOps() != interestOps) {
+            selectionKey.interestOps(interestOps);
+        }
+    }
+
+    /**
+     * Graceful shutdown of this session
+     */
+
+    void close() {
+        if (loggedIn) {
+            eventLoop.getServer().getSessionRegistry().remove(this);
+        }
+
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            log.error("Error occurred while closing session {}", sessionId, e);
+        }
+    }
+
+    boolean isOpen() {
+        return socketChannel.isOpen();
+    }
+}
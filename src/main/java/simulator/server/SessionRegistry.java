@@ -0,0 +1,62 @@
+package simulator.server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class assigns ids to sessions and finds session of
+ * a destination id. Ids are handed out in increasing order
+ * starting at 1, so sessions are kept in an array indexed
+ * by id which is read without any lock. Only adding and
+ * removing sessions is synchronized.
+ */
+
+public class SessionRegistry {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final AtomicInteger lastAssignedId = new AtomicInteger();
+    private volatile ServerSession[] sessionsById = new ServerSession[INITIAL_CAPACITY];
+
+    /**
+     * @return id for a new session
+     */
+
+    public int nextSessionId() {
+        return lastAssignedId.incrementAndGet();
+    }
+
+    /**
+     * This method makes session reachable under its id
+     *
+     * @param session which has logged in
+     */
+
+    public synchronized void register(ServerSession session) {
+        int id = session.getSessionId();
+        ServerSession[] sessions = sessionsById;
+        if (id >= sessions.length) {
+            sessions = Arrays.copyOf(sessions, Math.max(id + 1, sessions.length * 2));
+        }
+        sessions[id] = session;
+        sessionsById = sessions;
+    }
+
+    public synchronized void remove(ServerSession session) {
+        int id = session.getSessionId();
+        ServerSession[] sessions = sessionsById;
+        if (id < sessions.length && sessions[id] == session) {
+            sessions[id] = null;
+            sessionsById = sessions;
+        }
+    }
+
+    /**
+     * @param id of the session
+     * @return session or null if no session is logged in with this id
+     */
+
+    public ServerSession find(int id) {
+        ServerSession[] sessions = sessionsById;
+        return id > 0 && id < sessions.length ? sessions[id] : null;
+    }
+}
@@ -22,7 +22,7 @@ public class UtilityClass {
      * @return String
      */
 
-    public synchronized static String getStringFromByteArray(byte[] message, int start, int end) {
+    public static String getStringFromByteArray(byte[] message, int start, int end) {
         return new String(Arrays.copyOfRange(message, start, end));
     }
 
@@ -36,7 +36,7 @@ public class UtilityClass {
      * @return integer
      */
 
-    public synchronized static int getIntFromByteArray(byte[] message, int start, int end) {
+    public static int getIntFromByteArray(byte[] message, int start, int end) {
         return ByteBuffer.wrap(Arrays.copyOfRange(message, start, end)).getInt();
     }
 
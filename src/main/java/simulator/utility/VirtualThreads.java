@@ -0,0 +1,36 @@
+package simulator.utility;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class creates virtual threads when simulator runs on a
+ * JDK which has them. It goes through reflection so the code
+ * still compiles for older targets, see the jdk21 profile in
+ * pom.xml for a build that targets a modern JDK.
+ */
+
+public class VirtualThreads {
+
+    /**
+     * This method creates factory of virtual threads which
+     * are named prefix0, prefix1 and so on
+     *
+     * @param namePrefix prefix of thread names
+     * @return thread factory
+     * @throws IllegalStateException if JVM has no virtual threads
+     */
+
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException("Virtual threads need JDK 21 or newer, running on "
+                    + System.getProperty("java.version"), exception);
+        }
+    }
+}